@@ -11,6 +11,8 @@ public class ChessApp {
 
 		switch (args[0]) {
 		case "perf" : PerfTest.main(args); break;
+		case "perft" : PerftCommand.main(args); break;
+		case "pperft" : PerftCommand.main(args); break;
 		case "show" : ShowTest.main(args); break;
 		default:
 			System.err.println("Unknown option: " + args[0]);
@@ -0,0 +1,39 @@
+package com.tomgibara.chess.app;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import com.tomgibara.chess.Notation;
+import com.tomgibara.chess.Perft;
+import com.tomgibara.chess.Position;
+import com.tomgibara.chess.TranspositionTable;
+
+public class PerftCommand {
+
+	// perft <depth> <fen>
+	// pperft <parallelism> <depth> <fen>
+	// counts are cached in a table of com.tomgibara.chess.perft.hash megabytes, if specified
+	public static void main(String... args) {
+		boolean parallel = args[0].equals("pperft");
+		int parallelism = parallel ? Integer.parseInt(args[1]) : 1;
+		int offset = parallel ? 2 : 1;
+		int depth = Integer.parseInt(args[offset]);
+		Position position = Notation.parseFENPosition(Arrays.copyOfRange(args, offset + 1, args.length));
+
+		System.out.println("PERFT:");
+		System.out.println(position.pieces().newBoard());
+		int megabytes = Integer.getInteger("com.tomgibara.chess.perft.hash", 0);
+		Perft perft = new Perft(position, megabytes == 0 ? null : new TranspositionTable(megabytes));
+		if (parallel) {
+			ForkJoinPool pool = Perft.newPool(parallelism);
+			try {
+				System.out.println(depth == 0 ? perft.run(depth, pool) : perft.divide(depth, pool));
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			System.out.println(depth == 0 ? perft.run(depth) : perft.divide(depth));
+		}
+	}
+
+}
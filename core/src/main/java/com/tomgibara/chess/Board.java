@@ -50,12 +50,10 @@ public final class Board {
 
 	public final Pieces pieces;
 	
-	private int[] colPieceCounts = null;
-	private int pieceCount = -1;
+	// views of the occupancy masks, built once per piece when first requested
 	private Squares[] pieceSquares = null;
 	private ColouredBoardInfo whiteInfo;
 	private ColouredBoardInfo blackInfo;
-	private Squares[] colourOccupiedSquares = null;
 	
 	Board(Pieces pieces) {
 		this.pieces = pieces;
@@ -80,13 +78,12 @@ public final class Board {
 	
 	public int count(Piece piece) {
 		if (piece == null) throw new IllegalArgumentException("null piece");
-		return getColPieceCounts()[piece.ordinal()];
+		return Long.bitCount(pieces.mask(piece));
 	}
 	
 	public int count(PieceType type) {
 		if (type == null) throw new IllegalArgumentException("null type");
-		int[] counts = getColPieceCounts();
-		return counts[type.white().ordinal()] + counts[type.black().ordinal()];
+		return Long.bitCount(pieces.mask(type.white()) | pieces.mask(type.black()));
 	}
 	
 	//makes assumptions
@@ -95,26 +92,41 @@ public final class Board {
 		if (types.isEmpty()) return 0;
 		if (types.size() == PieceType.COUNT) return countPieces();
 		
-		int[] counts = getColPieceCounts();
 		int count = 0;
 		for (int ord = 0; ord < PieceType.COUNT; ord++) {
 			PieceType type = PieceType.valueOf(ord);
 			if (types.contains(type)) {
-				count += counts[type.white().ordinal()] + counts[type.black().ordinal()];
+				count += count(type);
 			}
 		}
 		return count;
 	}
 
 	public int countPieces() {
-		return pieceCount < 0 ? pieceCount = pieces.keySet().size() : pieceCount;
+		return pieces.size();
 	}
 	
 	// squares
 	
 	public Squares squaresOccupiedBy(Piece piece) {
 		if (piece == null) throw new IllegalArgumentException("null piece");
-		return getPieceSquares()[piece.ordinal()];
+		if (pieceSquares == null) pieceSquares = new Squares[Piece.COUNT];
+		Squares squares = pieceSquares[piece.ordinal()];
+		return squares == null ? pieceSquares[piece.ordinal()] = new Squares(pieces.mask(piece)) : squares;
+	}
+
+	// exchanges
+
+	// the material, in centipawns, that the side moving wins from the exchange the move starts on its target square
+	// each side captures with its least valuable attacker, including sliders revealed behind others, and may stop when behind
+	// the move is not made and its legality is not checked; a pawn reaching the last rank is assumed to promote to a queen
+	public int see(Move move) {
+		if (move == null) throw new IllegalArgumentException("null move");
+		Piece moved = pieces.get(move.from.ordinal);
+		if (moved == null) throw new IllegalArgumentException("no piece to move");
+		Piece captured = pieces.get(move.to.ordinal);
+		if (captured != null && captured.colour == moved.colour) throw new IllegalArgumentException("move captures own piece");
+		return MoveGenerator.see(pieces, move.from.ordinal, move.to.ordinal, null);
 	}
 
 	// object methods
@@ -124,12 +136,14 @@ public final class Board {
 		if (this == obj) return true;
 		if (!(obj instanceof Board)) return false;
 		Board that = (Board) obj;
+		if (this.pieces.key() != that.pieces.key()) return false;
 		return this.pieces.equals( that.pieces );
 	}
 	
 	@Override
 	public int hashCode() {
-		return pieces.hashCode();
+		long key = pieces.key();
+		return (int) (key ^ key >>> 32);
 	}
 
 	@Override
@@ -154,30 +168,13 @@ public final class Board {
 		return sb.toString();
 	}
 	
-	// private utility methods
-
-	private Squares[] colourOccupiedSquares() {
-		return colourOccupiedSquares == null ? colourOccupiedSquares = pieces.colourPartition() : colourOccupiedSquares;
-	}
-	
-
-	private int[] getColPieceCounts() {
-		return colPieceCounts == null ? colPieceCounts = pieces.partitionSizes() : colPieceCounts;
-	}
-	
-	//TODO consider switching to Squares array as board representation
-	private Squares[] getPieceSquares() {
-		return pieceSquares == null ? pieceSquares = pieces.partition() : pieceSquares;
-	}
-
 	// inner classes
 	
 	public class ColouredBoardInfo {
 		
 		public final Colour colour;
 
-		private int pieceCount = -1;
-		private Square kingsSquare = null;
+		private Squares occupiedSquares = null;
 		private SquareMap<Interposition> pinsToKing = null;
 		private SquareMap<Interposition> pinnedToKing = null;
 		private SquareMap<Move> checks = null;
@@ -188,19 +185,17 @@ public final class Board {
 		}
 		
 		public Squares occupiedSquares() {
-			return colourOccupiedSquares()[colour.ordinal()];
+			return occupiedSquares == null ? occupiedSquares = new Squares(pieces.mask(colour)) : occupiedSquares;
 		}
 
 		public int countPieces() {
-			return pieceCount == -1 ? pieceCount = occupiedSquares().size() : pieceCount;
+			return Long.bitCount(pieces.mask(colour));
 		}
 		
 		public Square kingsSquare() {
-			if (kingsSquare == null) {
-				//NOTE may exceptionally remain null
-				kingsSquare = getPieceSquares()[PieceType.KING.coloured(colour).ordinal()].only();
-			}
-			return kingsSquare;
+			long mask = pieces.mask(PieceType.KING.coloured(colour));
+			//NOTE may exceptionally be null
+			return mask != 0L && (mask & mask - 1) == 0L ? Square.at(Long.numberOfTrailingZeros(mask)) : null;
 		}
 		
 		public SquareMap<Interposition> pinsToKing() {
@@ -219,24 +214,28 @@ public final class Board {
 				checks = Move.emptyMap();
 			} else {
 				SquareMap<Move> map = Move.newSquareMap();
-				//TODO want to be able to intersect with occupied squares of opposing colour
-				// would remove first two if clauses
-				Move.possibleMovesTo(square).forEach(m -> {
-					Square s = m.from;
+				// the squares from which a slider could reach the king
+				long rays = SlidingAttacks.selected.queen(square.ordinal, pieces.keySet().mask());
+				long bits = pieces.mask(colour.opposite());
+				for (; bits != 0L; bits &= bits - 1) {
+					Square s = Square.at(Long.numberOfTrailingZeros(bits));
+					Move m = Move.between(s, square);
 					Piece p = pieces.get(s);
-					if (p == null || p.colour == this.colour || !m.isPossibleFor(p)) return;
+					if (!m.isPossibleFor(p)) continue;
 					switch (p.type) {
 					case PAWN:
-						if (!m.isPawnCapture()) return;
+						if (!m.isPawnCapture()) continue;
 						break;
 					case KING:
-						if (m.isCastling()) return;
+						if (m.isCastling()) continue;
+						break;
+					case KNIGHT:
 						break;
 					default:
-						if (m.intermediateSquares.intersects(pieces.keySet())) return;
+						if ((rays & s.mask) == 0L) continue;
 					}
 					map.put(s, m);
-				});
+				}
 				checks = map.immutable();
 			}
 			return checks;
@@ -272,9 +271,9 @@ public final class Board {
 				Colour targetColour = targetPiece.colour;
 				attackColour = targetColour.opposite();
 				possibleSquares = withColour(targetColour).occupiedSquares();
-				analyzePins(PieceType.BISHOP.coloured(attackColour));
-				analyzePins(PieceType.ROOK.coloured(attackColour));
-				analyzePins(PieceType.QUEEN.coloured(attackColour));
+				long queens = pieces.mask(PieceType.QUEEN.coloured(attackColour));
+				analyzePins(false, pieces.mask(PieceType.BISHOP.coloured(attackColour)) | queens);
+				analyzePins(true, pieces.mask(PieceType.ROOK.coloured(attackColour)) | queens);
 			}
 		}
 		
@@ -286,17 +285,21 @@ public final class Board {
 			return pinsThrough.immutable();
 		}
 
-		private void analyzePins(Piece attackPiece ) {
-			for (Square square : squaresOccupiedBy(attackPiece)) {
-				Move move = Move.between(square, targetSquare);
-				if (move.isPossibleFor(attackPiece)) {
-					Square only = move.intermediateSquares.intersect(pieces.keySet()).only();
-					if (only != null && possibleSquares.contains(only)) {
-						Interposition inter = new Interposition(move, only);
-						pinsFrom.put(move.from, inter);
-						pinsThrough.put(only, inter);
-					}
-				}
+		private void analyzePins(boolean orthogonal, long attackers) {
+			if (attackers == 0L) return;
+			SlidingAttacks attacks = SlidingAttacks.selected;
+			int ordinal = targetSquare.ordinal;
+			long occupied = pieces.keySet().mask();
+			// look through the nearest defending pieces to find attackers behind them
+			long rays = orthogonal ? attacks.rook(ordinal, occupied) : attacks.bishop(ordinal, occupied);
+			long defenders = rays & possibleSquares.mask();
+			long xrays = orthogonal ? attacks.rook(ordinal, occupied ^ defenders) : attacks.bishop(ordinal, occupied ^ defenders);
+			for (long bits = xrays & ~rays & attackers; bits != 0L; bits &= bits - 1) {
+				Move move = Move.between(Square.at(Long.numberOfTrailingZeros(bits)), targetSquare);
+				Square only = move.intermediateSquares.intersect(possibleSquares).only();
+				Interposition inter = new Interposition(move, only);
+				pinsFrom.put(move.from, inter);
+				pinsThrough.put(only, inter);
 			}
 		}
 
@@ -34,6 +34,14 @@ public enum CastlingRights {
 		return Squares.immutable(squares);
 	}
 
+	public static CastlingRights valueOf(int ordinal) {
+		try {
+			return VALUES[ordinal];
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
 	public static CastlingRights with(
 			boolean whiteMayCastleC,
 			boolean whiteMayCastleG,
@@ -77,28 +85,23 @@ public enum CastlingRights {
 	}
 	
 	//TODO should introduce BoardMove?
-	public CastlingRights after(Piece piece, Move move) {
+	public CastlingRights after(Move move) {
 		if (this == ___________) return this;
 		final int ordinal = ordinal();
-		final int nextOrdinal;
-		switch (piece.type) {
-		case KING: {
-			nextOrdinal = ordinal & (piece.colour.white ? BG_BC______.ordinal() : ______WG_WC.ordinal());
-			break;
-		}
-		case ROOK: {
-			Square from = move.from;
-			boolean white = piece.colour.white;
-			Rank rank = white ? Rank.RK_1 : Rank.RK_8;
-			if (from.rank != rank) return this;
-			switch (from.file) {
-			case FL_C : nextOrdinal = ordinal & (white ?  BG_BC_WG___.ordinal() : BG____WG_WC.ordinal()); break;
-			case FL_G : nextOrdinal = ordinal & (white ?  BG_BC____WC.ordinal() : ___BC_WG_WC.ordinal()); break;
-				default : return this;
-			}
-		}
-			default : return this;
-		}
+		// rights are lost by moving the king or rook, or by capturing the rook
+		final int nextOrdinal = ordinal & retained(move.from) & retained(move.to);
 		return nextOrdinal == ordinal ? this : VALUES[nextOrdinal];
 	}
+
+	private static int retained(Square square) {
+		switch (square.ordinal) {
+		case  0 : return ~WC;       // a1
+		case  4 : return ~(WC|WG);  // e1
+		case  7 : return ~WG;       // h1
+		case 56 : return ~BC;       // a8
+		case 60 : return ~(BC|BG);  // e8
+		case 63 : return ~BG;       // h8
+		default : return ~0;
+		}
+	}
 }
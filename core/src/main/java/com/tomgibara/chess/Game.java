@@ -9,6 +9,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -61,7 +62,11 @@ public class Game {
 	}
 	
 	public final Map<String, String> tags;
-	public final Sequence sequence;
+	// volatile so that a sequence replayed on one thread is safely published to others
+	private volatile Sequence sequence;
+	// retained until the sequence is first requested, when the movetext is replayed
+	private String movetext;
+	private BiConsumer<Sequence, String> replay;
 	private Date date = null;
 	private Site site;
 	private List<Integer> round;
@@ -74,6 +79,37 @@ public class Game {
 		this.sequence = sequence.immutable();
 	}
 
+	// the moves are only made when the sequence is requested
+	Game(Map<String, String> tags, String movetext, BiConsumer<Sequence, String> replay) {
+		this.tags = Collections.unmodifiableMap(tags);
+		this.movetext = movetext;
+		this.replay = replay;
+	}
+
+	// for lazily parsed games, an invalid setup or movetext is reported here with an IllegalArgumentException
+	public Sequence sequence() {
+		Sequence sequence = this.sequence;
+		return sequence == null ? replay() : sequence;
+	}
+
+	// whether the sequence has been replayed from the movetext
+	public boolean isReplayed() {
+		return sequence != null;
+	}
+
+	// games may be shared between threads, so only one replays the movetext and the others wait for it
+	private synchronized Sequence replay() {
+		if (sequence == null) {
+			// replayed afresh on every attempt, so a failure leaves the game unchanged
+			Sequence sequence = Notation.newSequence(tags);
+			replay.accept(sequence, movetext);
+			movetext = null;
+			replay = null;
+			this.sequence = sequence.immutable();
+		}
+		return sequence;
+	}
+
 	public String event() {
 		return tags.get(TAG_EVENT);
 	}
@@ -0,0 +1,218 @@
+package com.tomgibara.chess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+// the binary format shared by the archive reader and writer
+// a header is followed by one record per game, each prefixed by its length in bytes
+// a record holds the tags, each string either a reference into a dictionary shared by the whole archive or a new entry,
+// the number of plies, and the index of each move among the legal moves of its position (see Position.moveIndex)
+// moves are stored as bytes or, if the archive was written with move index frequencies, as canonical Huffman codes
+final class GameArchive {
+
+	static final int MAGIC = 0x43484741; // CHGA
+	// version 2 has a code length for each of MoveGenerator.MAX_MOVES indices, of which version 1 had 218
+	static final int VERSION = 2;
+	// the greatest number of distinct strings retained in the dictionary, others are always written in full
+	static final int DICTIONARY_SIZE = 1 << 16;
+
+	private static final int MAX_CODE_LENGTH = 24;
+	private static final int SYMBOLS = MoveGenerator.MAX_MOVES;
+
+	// variable length unsigned integers, seven bits per byte
+
+	static void writeInt(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.write(value & 0x7f | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static int readInt(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b < 0) throw new EOFException();
+			value |= (b & 0x7f) << shift;
+			if (b < 0x80) return value;
+		}
+		throw new IOException("invalid integer");
+	}
+
+	// a code assigning a bit string to each move index
+	static final class Code {
+
+		// builds code lengths from frequencies, scaling them down until no code exceeds the maximum length
+		static Code fromFrequencies(int[] frequencies) {
+			if (frequencies.length != SYMBOLS) throw new IllegalArgumentException("invalid frequencies length");
+			long[] weights = new long[SYMBOLS];
+			for (int i = 0; i < SYMBOLS; i++) {
+				if (frequencies[i] < 0) throw new IllegalArgumentException("negative frequency");
+				// every index must remain encodable
+				weights[i] = frequencies[i] + 1L;
+			}
+			while (true) {
+				byte[] lengths = lengths(weights);
+				int max = 0;
+				for (byte length : lengths) max = Math.max(max, length);
+				if (max <= MAX_CODE_LENGTH) return new Code(lengths);
+				for (int i = 0; i < SYMBOLS; i++) weights[i] = (weights[i] + 1) >> 1;
+			}
+		}
+
+		static Code read(InputStream in) throws IOException {
+			byte[] lengths = new byte[SYMBOLS];
+			for (int i = 0; i < SYMBOLS; i++) {
+				int length = in.read();
+				if (length < 1 || length > MAX_CODE_LENGTH) throw new IOException("invalid code length");
+				lengths[i] = (byte) length;
+			}
+			return new Code(lengths);
+		}
+
+		private static byte[] lengths(long[] weights) {
+			// nodes are leaves below SYMBOLS, internal nodes above
+			int[] parents = new int[SYMBOLS * 2];
+			long[] nodeWeights = Arrays.copyOf(weights, SYMBOLS * 2);
+			PriorityQueue<Integer> queue = new PriorityQueue<>(SYMBOLS, (a, b) -> {
+				int c = Long.compare(nodeWeights[a], nodeWeights[b]);
+				return c == 0 ? Integer.compare(a, b) : c;
+			});
+			for (int i = 0; i < SYMBOLS; i++) queue.add(i);
+			int next = SYMBOLS;
+			while (queue.size() > 1) {
+				int a = queue.remove();
+				int b = queue.remove();
+				nodeWeights[next] = nodeWeights[a] + nodeWeights[b];
+				parents[a] = next;
+				parents[b] = next;
+				queue.add(next++);
+			}
+			int root = next - 1;
+			byte[] lengths = new byte[SYMBOLS];
+			for (int i = 0; i < SYMBOLS; i++) {
+				int length = 0;
+				for (int node = i; node != root; node = parents[node]) length++;
+				lengths[i] = (byte) Math.min(length, 127);
+			}
+			return lengths;
+		}
+
+		private final byte[] lengths;
+		private final int[] codes = new int[SYMBOLS];
+		// canonical decoding: the number of codes of each length and the symbols ordered by code
+		private final int[] counts = new int[MAX_CODE_LENGTH + 1];
+		private final int[] symbols = new int[SYMBOLS];
+
+		private Code(byte[] lengths) {
+			this.lengths = lengths;
+			for (byte length : lengths) counts[length]++;
+			int[] offsets = new int[MAX_CODE_LENGTH + 2];
+			for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+				offsets[length + 1] = offsets[length] + counts[length];
+			}
+			for (int i = 0; i < SYMBOLS; i++) {
+				symbols[offsets[lengths[i]]++] = i;
+			}
+			int code = 0;
+			int index = 0;
+			for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+				for (int i = 0; i < counts[length]; i++) {
+					codes[symbols[index++]] = code++;
+				}
+				code <<= 1;
+			}
+		}
+
+		void write(OutputStream out) throws IOException {
+			out.write(lengths);
+		}
+
+		void encode(BitWriter writer, int symbol) {
+			writer.write(codes[symbol], lengths[symbol]);
+		}
+
+		int decode(BitReader reader) throws IOException {
+			int code = 0;
+			int first = 0;
+			int index = 0;
+			for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+				code |= reader.read();
+				int count = counts[length];
+				if (code - first < count) return symbols[index + code - first];
+				index += count;
+				first = first + count << 1;
+				code <<= 1;
+			}
+			throw new IOException("invalid code");
+		}
+
+	}
+
+	// accumulates bits, most significant first, into a byte stream
+	static final class BitWriter {
+
+		private final ByteArrayOutputStream out;
+		private int bits = 0;
+		private int count = 0;
+
+		BitWriter(ByteArrayOutputStream out) {
+			this.out = out;
+		}
+
+		void write(int value, int length) {
+			for (int i = length - 1; i >= 0; i--) {
+				bits = bits << 1 | value >> i & 1;
+				if (++count == 8) {
+					out.write(bits);
+					bits = 0;
+					count = 0;
+				}
+			}
+		}
+
+		// pads the final byte with zeros
+		void flush() {
+			if (count > 0) {
+				out.write(bits << 8 - count);
+				bits = 0;
+				count = 0;
+			}
+		}
+
+	}
+
+	static final class BitReader {
+
+		private final byte[] bytes;
+		private int position;
+		private final int limit;
+		private int bits = 0;
+		private int count = 0;
+
+		BitReader(byte[] bytes, int position, int limit) {
+			this.bytes = bytes;
+			this.position = position;
+			this.limit = limit;
+		}
+
+		int read() throws IOException {
+			if (count == 0) {
+				if (position == limit) throw new EOFException();
+				bits = bytes[position++] & 0xff;
+				count = 8;
+			}
+			return bits >> --count & 1;
+		}
+
+	}
+
+	private GameArchive() { }
+
+}
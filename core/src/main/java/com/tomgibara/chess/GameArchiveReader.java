@@ -0,0 +1,182 @@
+package com.tomgibara.chess;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.tomgibara.chess.GameArchive.BitReader;
+import com.tomgibara.chess.GameArchive.Code;
+
+// reads the games written by a GameArchiveWriter one at a time, replaying moves by index without notation
+// the games may be iterated or streamed once; IO failures and invalid data are reported as UncheckedIOException
+public final class GameArchiveReader implements Iterable<Game>, Closeable {
+
+	private final DataInputStream in;
+	private final Code code;
+	private final List<String> dictionary = new ArrayList<>();
+	// the record being read and the extent of its bytes
+	private byte[] record = new byte[256];
+	private int offset;
+	private int limit;
+	private boolean iterated = false;
+	private int gameCount = 0;
+	private Game next = null;
+	private boolean done = false;
+
+	public GameArchiveReader(InputStream in) throws IOException {
+		if (in == null) throw new IllegalArgumentException("null in");
+		this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+		if (this.in.readInt() != GameArchive.MAGIC) throw new IOException("not a game archive");
+		int version = this.in.readUnsignedByte();
+		if (version != GameArchive.VERSION) throw new IOException("unsupported version " + version);
+		code = this.in.readBoolean() ? Code.read(this.in) : null;
+	}
+
+	// the number of games read so far
+	public int gameCount() {
+		return gameCount;
+	}
+
+	@Override
+	public Iterator<Game> iterator() {
+		if (iterated) throw new IllegalStateException("already iterated");
+		iterated = true;
+		return new Iterator<Game>() {
+
+			@Override
+			public boolean hasNext() {
+				return advance();
+			}
+
+			@Override
+			public Game next() {
+				if (!advance()) throw new NoSuchElementException();
+				Game game = next;
+				next = null;
+				return game;
+			}
+
+		};
+	}
+
+	// closing the stream closes the reader
+	public Stream<Game> stream() {
+		Spliterator<Game> spliterator = Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		done = true;
+		in.close();
+	}
+
+	private boolean advance() {
+		if (next != null) return true;
+		if (done) return false;
+		try {
+			// the archive may only end between records
+			in.mark(1);
+			if (in.read() < 0) {
+				done = true;
+				return false;
+			}
+			in.reset();
+			int length = GameArchive.readInt(in);
+			if (length > record.length) record = new byte[Math.max(length, record.length * 2)];
+			in.readFully(record, 0, length);
+			next = read(length);
+			gameCount++;
+			return true;
+		} catch (IOException e) {
+			done = true;
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Game read(int length) throws IOException {
+		offset = 0;
+		limit = length;
+		int tagCount = readInt();
+		Map<String, String> tags = new HashMap<>();
+		for (int i = 0; i < tagCount; i++) {
+			String name = readString();
+			tags.put(name, readString());
+		}
+		int plies = readInt();
+		Sequence sequence;
+		try {
+			sequence = Notation.newSequence(tags);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid setup", e);
+		}
+		Position position = sequence.position();
+		if (code == null) {
+			if (plies > limit - offset) throw new EOFException();
+			for (int i = 0; i < plies; i++) {
+				position = move(position, record[offset++] & 0xff);
+			}
+		} else {
+			BitReader reader = new BitReader(record, offset, limit);
+			for (int i = 0; i < plies; i++) {
+				position = move(position, code.decode(reader));
+			}
+		}
+		return new Game(tags, sequence);
+	}
+
+	// only the indexed move is formed, rather than generating every legal move
+	private Position move(Position position, int index) throws IOException {
+		int code = MoveGenerator.select(position.activePieces(), position.toMove, position.castlingRights, position.enPassantFile, index);
+		if (code == PositionMoves.NO_CODE) throw new IOException("invalid move index");
+		return position.makeMove(code);
+	}
+
+	private int readInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (offset == limit) throw new EOFException();
+			int b = record[offset++] & 0xff;
+			value |= (b & 0x7f) << shift;
+			if (b < 0x80) return value;
+		}
+		throw new IOException("invalid integer");
+	}
+
+	private String readString() throws IOException {
+		int value = readInt();
+		if ((value & 1) == 0) {
+			int index = value >>> 1;
+			if (index >= dictionary.size()) throw new IOException("invalid string reference");
+			return dictionary.get(index);
+		}
+		int length = value >>> 1;
+		if (length > limit - offset) throw new EOFException();
+		String str = new String(record, offset, length, StandardCharsets.UTF_8);
+		offset += length;
+		if (dictionary.size() < GameArchive.DICTIONARY_SIZE) dictionary.add(str);
+		return str;
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.tomgibara.chess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.tomgibara.chess.GameArchive.BitWriter;
+import com.tomgibara.chess.GameArchive.Code;
+
+// writes games in a compact binary format, see GameArchiveReader
+public final class GameArchiveWriter implements Closeable, Flushable {
+
+	// counts how often each move index is played in the games, for entropy coding moves
+	public static int[] frequencies(Iterable<Game> games) {
+		if (games == null) throw new IllegalArgumentException("null games");
+		int[] frequencies = new int[MoveGenerator.MAX_MOVES];
+		for (Game game : games) {
+			Sequence sequence = game.sequence();
+			for (int i = 0; i < sequence.length() - 1; i++) {
+				frequencies[sequence.position(i).moveIndex()]++;
+			}
+		}
+		return frequencies;
+	}
+
+	private final OutputStream out;
+	private final Code code;
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+	private int gameCount = 0;
+
+	// moves are written as one byte each
+	public GameArchiveWriter(OutputStream out) throws IOException {
+		this(out, null);
+	}
+
+	// moves are entropy coded according to the frequencies of their indices, if supplied
+	public GameArchiveWriter(OutputStream out, int[] frequencies) throws IOException {
+		if (out == null) throw new IllegalArgumentException("null out");
+		this.out = out;
+		code = frequencies == null ? null : Code.fromFrequencies(frequencies);
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(GameArchive.MAGIC);
+		data.writeByte(GameArchive.VERSION);
+		data.writeBoolean(code != null);
+		if (code != null) code.write(out);
+	}
+
+	public int gameCount() {
+		return gameCount;
+	}
+
+	public void write(Game game) throws IOException {
+		if (game == null) throw new IllegalArgumentException("null game");
+		Sequence sequence = game.sequence();
+		record.reset();
+		GameArchive.writeInt(record, game.tags.size());
+		for (Map.Entry<String, String> tag : game.tags.entrySet()) {
+			writeString(tag.getKey());
+			writeString(tag.getValue());
+		}
+		int plies = sequence.length() - 1;
+		GameArchive.writeInt(record, plies);
+		if (code == null) {
+			for (int i = 0; i < plies; i++) {
+				record.write(sequence.position(i).moveIndex());
+			}
+		} else {
+			BitWriter writer = new BitWriter(record);
+			for (int i = 0; i < plies; i++) {
+				code.encode(writer, sequence.position(i).moveIndex());
+			}
+			writer.flush();
+		}
+		GameArchive.writeInt(out, record.size());
+		record.writeTo(out);
+		gameCount++;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	// references are even, new strings are odd and followed by their UTF-8 bytes
+	private void writeString(String str) throws IOException {
+		Integer index = dictionary.get(str);
+		if (index != null) {
+			GameArchive.writeInt(record, index << 1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		GameArchive.writeInt(record, bytes.length << 1 | 1);
+		record.write(bytes);
+		if (dictionary.size() < GameArchive.DICTIONARY_SIZE) dictionary.put(str, dictionary.size());
+	}
+
+}
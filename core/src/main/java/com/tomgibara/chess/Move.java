@@ -89,20 +89,6 @@ public final class Move implements Comparable<Move> {
 		}
 	}
 	
-	private static int recordMove(int[] moves, int count, Move move, Piece moved, Piece captured) {
-		PieceType movedType = moved.type;
-		PieceType capturedType = captured == null ? null : captured.type;
-		if (movedType == PieceType.PAWN && move.isPromotion()) {
-			moves[count++] = PositionMoves.code(move, MovePieces.promotion(capturedType, PieceType.KNIGHT));
-			moves[count++] = PositionMoves.code(move, MovePieces.promotion(capturedType, PieceType.BISHOP));
-			moves[count++] = PositionMoves.code(move, MovePieces.promotion(capturedType, PieceType.ROOK));
-			moves[count++] = PositionMoves.code(move, MovePieces.promotion(capturedType, PieceType.QUEEN));
-		} else {
-			moves[count++] = PositionMoves.code(move, MovePieces.regular(movedType, capturedType));
-		}
-		return count;
-	}
-	
 	public static List<Move> allMoves() {
 		return allMoves;
 	}
@@ -337,7 +323,6 @@ public final class Move implements Comparable<Move> {
 		private final long bits;
 		private final int size;
 		private final SquareMap<Move> map;
-		private final long[] masks;
 		
 		
 		MoveList(int ordinal, boolean reverse) {
@@ -348,8 +333,6 @@ public final class Move implements Comparable<Move> {
 			long bits = 0L;
 			long bit = 1L;
 			int size = 0;
-			long[] masks = new long[Piece.COUNT];
-			Piece[] pieces = Piece.values();
 			for (int offset = 0; offset < 64; offset++) {
 				int p = ptr(offset);
 				Move move = moves[p];
@@ -357,16 +340,10 @@ public final class Move implements Comparable<Move> {
 					bits |= bit;
 					size ++;
 				}
-				for (int i = 0; i < pieces.length; i++) {
-					if (move.isPossibleFor(pieces[i])) {
-						masks[i] |= bit;
-					}
-				}
 				bit <<= 1;
 			}
 			this.bits = bits;
 			this.size = size;
-			this.masks = masks;
 
 			map = new SquareMap<Move>(new AbstractStore<Move>() {
 
@@ -462,115 +439,6 @@ public final class Move implements Comparable<Move> {
 			return reverse ? (ptr >> 6) & 0x3f : ptr & 0x3f;
 		}
 
-		int populateMoves(int[] moveCodes, int moveCount, Board board, MoveConstraint constraint, Squares checkers, Squares interpose) {
-			SquareMap<Piece> pieces = board.pieces;
-			Piece piece = pieces.get(square);
-			Squares occupied = pieces.keySet();
-			Colour colour = constraint.toMove;
-			Squares occupiedBySameColour = board.withColour(colour).occupiedSquares();
-
-			if (checkers.isEmpty() || piece.type == PieceType.KING) {
-				// ugly but localized and faster than regular iteration
-				long bits = masks[piece.ordinal()] & ~occupiedBySameColour.mask();
-				for (int offset = 0; offset < 64 && bits != 0L; offset++, bits >>>= 1) {
-					if ((bits & 1L) == 0L) continue; // invalid move
-					Move move = Move.moves[ptr(offset)];
-					if (!move.isPossibleFor(piece)) continue; // piece cannot move in that way
-					if (piece.type == PieceType.PAWN && move.isPawnCapture() == (move.to != constraint.enPassantSqr && !occupied.contains(move.to))) continue; // pawns must capture to move diagonally
-					if (occupied.intersects(move.intermediateSquares)) continue; // one or more pieces interposed
-					if (piece.type == PieceType.KING) {
-						Squares occupiedByOpposingColour = board.withColour(colour.opposite()).occupiedSquares();
-						if (possibleMovesTo(move.to).attacks(pieces, occupied, move.from, occupiedByOpposingColour)) continue; // king cannot move into check
-						if (move.isCastling()) {
-							if (!constraint.castlingSquares.contains(move.to)) continue; // cannot castle invalidly
-							if (!checkers.isEmpty()) continue; // cannot castle out of check
-							Move rookMove = move.inducedRookMove();
-							if (pieces.get(rookMove.from) != PieceType.ROOK.coloured(constraint.toMove)) continue; // rook must be present
-							if (occupied.intersects( rookMove.intermediateSquares )) continue; // path must be clear for rook
-							if (possibleMovesTo(move.intermediateSquares.only()).attacks(pieces, occupied, rookMove.from, occupiedByOpposingColour)) continue; // cannot pass through check
-						}
-					} else {
-						Interposition pin = board.withColour(piece.colour).pinnedToKing().get(square);
-						if (pin != null && !pin.move.spannedSquares.contains(move.to)) continue; // piece breaks pin on king
-					}
-					moveCount = recordMove(moveCodes, moveCount, move, piece, pieces.get(move.to));
-				}
-			} else { // check
-				// we can try to interpose
-				for (Square i : interpose) {
-					Move move = Move.between(square, i);
-					if (
-							move.isPossibleFor(piece) &&
-							!occupied.intersects(move.intermediateSquares) &&
-							(piece.type != PieceType.PAWN || !move.isPawnCapture() || move.to == constraint.enPassantSqr) && // extra check for en-passant
-							board.withColour(piece.colour).pinnedToKing().get(square) == null // extra check for breaking pin
-							) {
-						moveCount = recordMove(moveCodes, moveCount, move, piece, pieces.get(move.to));
-					}
-				}
-				// we can try to capture
-				Square c = checkers.only();
-				if (c != null) {
-					Move move;
-					Square ep = constraint.enPassantSqr;
-					boolean valid;
-					if (
-							ep != null &&
-							ep.file == c.file &&
-							pieces.get(c).type == PieceType.PAWN &&
-							enPassantPossible(piece, c)
-						)
-					{
-						move = Move.between(square, ep);
-						valid = true;
-					} else {
-						move = Move.between(square, c);
-						valid = move.isPossibleFor(piece) && !occupied.intersects(move.intermediateSquares);
-					}
-					if (valid) {
-						Interposition pin = board.withColour(piece.colour).pinnedToKing().get(square);
-						if (pin == null || pin.move.from == c) {
-							moveCount = recordMove(moveCodes, moveCount, move, piece, pieces.get(move.to));
-						}
-					}
-				}
-			}
-			
-			return moveCount;
-		}
-		
-		private boolean enPassantPossible(Piece piece, Square target) {
-			return
-					piece.type == PieceType.PAWN &&
-					target.rank == square.rank &&
-					square.rank == Rank.enPassantMoveRank(piece.colour) &&
-					File.distance(square.file, target.file) == 1;
-		}
-
-		// note only sufficient for determining attacks not by enemy king (ie sufficient for check tests)
-		// this is because an attack by a king could be a false positive if the king is moving into check
-		private boolean attacks(SquareMap<Piece> pieces, Squares occupied, Square vacated, Squares occupiedByOpposingColour) {
-			long bits = this.bits & occupiedByOpposingColour.mask();
-			for (int offset = 0; offset < 64 && bits != 0L; offset++, bits >>>= 1) {
-				if ((bits & 1L) == 0L) continue; // invalid move
-				Move move = moves[ptr(offset)];
-				if (!move.isPossible()) continue;
-				Piece piece = pieces.get(move.from);
-				if (!move.isPossibleFor(piece)) continue;
-				switch (piece.type) {
-				case PAWN:
-					if (move.isPawnCapture()) return true;
-					break;
-				case KING:
-					if (!move.isCastling()) return true;
-					break;
-				default:
-					if (occupied.disjoint(move.intermediateSquares, vacated)) return true;
-				}
-			}
-			return false;
-		}
-
 	}
 	
 }
@@ -0,0 +1,424 @@
+package com.tomgibara.chess;
+
+// generates legal move codes from bitboards without allocating
+// codes are written in ascending order: by origin square, then destination, then promotion
+final class MoveGenerator {
+
+	// the most codes written for one position; no position reachable from the start has more than 218 legal moves,
+	// but one set up from a FEN may have more (fifteen queens may have 221), so a position exceeding this is rejected
+	// rather than overrunning the buffers sized by it; 256 also keeps every move index within a byte
+	static final int MAX_MOVES = 256;
+
+	private static final int PROMOS = PieceType.COUNT * 4;
+	private static final int NO_CAPTURE = PieceType.KING.ordinal();
+
+	// piece values for exchanges, indexed by type; the king's is high enough that losing it outweighs any exchange
+	private static final int[] seeValues = { 100, 300, 300, 500, 900, 30000 };
+
+	private static final long[] knightAttacks = new long[64];
+	private static final long[] kingAttacks = new long[64];
+	// indexed by colour and square, the squares attacked by a pawn of that colour
+	private static final long[] pawnAttacks = new long[128];
+	// squares strictly between two aligned squares
+	private static final long[] between = new long[4096];
+	// every square on the line through two aligned squares
+	private static final long[] lines = new long[4096];
+
+	static {
+		for (int s = 0; s < 64; s++) {
+			int file = s & 7;
+			int rank = s >> 3;
+			knightAttacks[s] = steps(file, rank, 1, 2, 2, 1, 2, -1, 1, -2, -1, -2, -2, -1, -2, 1, -1, 2);
+			kingAttacks[s] = steps(file, rank, 0, 1, 1, 1, 1, 0, 1, -1, 0, -1, -1, -1, -1, 0, -1, 1);
+			pawnAttacks[s] = steps(file, rank, -1, 1, 1, 1);
+			pawnAttacks[64 + s] = steps(file, rank, -1, -1, 1, -1);
+		}
+		SlidingAttacks attacks = SlidingAttacks.RAY;
+		for (int a = 0; a < 64; a++) {
+			for (int b = 0; b < 64; b++) {
+				if (a == b) continue;
+				long bitA = 1L << a;
+				long bitB = 1L << b;
+				if ((attacks.rook(a, 0L) & bitB) != 0L) {
+					between[a << 6 | b] = attacks.rook(a, bitB) & attacks.rook(b, bitA);
+					lines[a << 6 | b] = line(a, b);
+				} else if ((attacks.bishop(a, 0L) & bitB) != 0L) {
+					between[a << 6 | b] = attacks.bishop(a, bitB) & attacks.bishop(b, bitA);
+					lines[a << 6 | b] = line(a, b);
+				}
+			}
+		}
+	}
+
+	private static long steps(int file, int rank, int... deltas) {
+		long bits = 0L;
+		for (int i = 0; i < deltas.length; i += 2) {
+			int f = file + deltas[i];
+			int r = rank + deltas[i + 1];
+			if (f >= 0 && f < 8 && r >= 0 && r < 8) bits |= 1L << (r << 3 | f);
+		}
+		return bits;
+	}
+
+	// the full rank, file or diagonal that contains both squares
+	private static long line(int a, int b) {
+		int df = Integer.signum((b & 7) - (a & 7));
+		int dr = Integer.signum((b >> 3) - (a >> 3));
+		long bits = 0L;
+		for (int sign = -1; sign <= 1; sign += 2) {
+			int f = a & 7;
+			int r = a >> 3;
+			while (f >= 0 && f < 8 && r >= 0 && r < 8) {
+				bits |= 1L << (r << 3 | f);
+				f += df * sign;
+				r += dr * sign;
+			}
+		}
+		return bits;
+	}
+
+	static long pawnAttacks(boolean white, int ordinal) {
+		return pawnAttacks[(white ? 0 : 64) + ordinal];
+	}
+
+	static long knightAttacks(int ordinal) {
+		return knightAttacks[ordinal];
+	}
+
+	static long kingAttacks(int ordinal) {
+		return kingAttacks[ordinal];
+	}
+
+	static long between(int from, int to) {
+		return between[from << 6 | to];
+	}
+
+	// writes the legal moves from the masked squares into the array and returns the number written
+	static int generate(Pieces pieces, Colour toMove, CastlingRights castlingRights, File enPassantFile, long fromMask, int[] codes, int offset) {
+		return generate(pieces, toMove, castlingRights, enPassantFile, fromMask, false, -1, codes, offset);
+	}
+
+	// the code that generate would write at the index, or PositionMoves.NO_CODE if fewer moves are legal
+	// moves are counted a square at a time, so only the squares up to the one moved from are examined and no other codes are formed
+	static int select(Pieces pieces, Colour toMove, CastlingRights castlingRights, File enPassantFile, int index) {
+		if (index < 0) return PositionMoves.NO_CODE;
+		return generate(pieces, toMove, castlingRights, enPassantFile, -1L, false, index, null, 0);
+	}
+
+	// writes only the legal captures (including en passant) and promotions, without generating quiet moves, and returns the number written
+	// codes are written most valuable victim first, then by promotion, then least valuable attacker first
+	static int generateCaptures(Pieces pieces, Colour toMove, File enPassantFile, int[] codes, int offset) {
+		int count = generate(pieces, toMove, CastlingRights.___________, enPassantFile, -1L, true, -1, codes, offset);
+		// captures are few, so an insertion sort suffices; ties remain in ascending order of code
+		for (int i = offset + 1; i < offset + count; i++) {
+			int code = codes[i];
+			int order = captureOrder(code);
+			int j = i - 1;
+			for (; j >= offset && captureOrder(codes[j]) < order; j--) codes[j + 1] = codes[j];
+			codes[j + 1] = code;
+		}
+		return count;
+	}
+
+	private static int captureOrder(int code) {
+		int ordinal = code & 63;
+		int moved;
+		int captured;
+		int promotion;
+		if (ordinal < PROMOS) {
+			moved = 0;
+			captured = ordinal >> 2;
+			promotion = (ordinal & 3) + 1;
+		} else {
+			ordinal -= PROMOS;
+			moved = ordinal / 6;
+			captured = ordinal % 6;
+			promotion = 0;
+		}
+		// en passant captures are coded without a captured piece, but are the only diagonal pawn moves to empty squares
+		if (moved == 0 && captured == NO_CAPTURE && ((code >> 12 ^ code >> 6) & 7) != 0) captured = 0;
+		int victim = captured == NO_CAPTURE ? 0 : captured + 1;
+		return victim << 6 | promotion << 3 | 7 - moved;
+	}
+
+	// with a non-negative select, nothing is written and the code at that index is returned instead of the count
+	private static int generate(Pieces pieces, Colour toMove, CastlingRights castlingRights, File enPassantFile, long fromMask, boolean captures, int select, int[] codes, int offset) {
+		SlidingAttacks attacks = SlidingAttacks.selected;
+		boolean white = toMove.white;
+		int us = white ? 0 : 1;
+
+		// the bitboards are maintained by the pieces
+		Colour them = toMove.opposite();
+		long occupied = pieces.occupied();
+		long own = pieces.mask(toMove);
+		long theirPawns = pieces.mask(PieceType.PAWN.coloured(them));
+		long theirKnights = pieces.mask(PieceType.KNIGHT.coloured(them));
+		long theirQueens = pieces.mask(PieceType.QUEEN.coloured(them));
+		long theirDiagonals = pieces.mask(PieceType.BISHOP.coloured(them)) | theirQueens;
+		long theirOrthogonals = pieces.mask(PieceType.ROOK.coloured(them)) | theirQueens;
+		long theirKing = pieces.mask(PieceType.KING.coloured(them));
+		long kings = pieces.mask(PieceType.KING.coloured(toMove));
+		int king = kings == 0L ? -1 : Long.numberOfTrailingZeros(kings);
+		long theirs = occupied & ~own;
+
+		// checks and pins
+		long checkers = 0L;
+		long pinned = 0L;
+		if (king >= 0) {
+			checkers =
+					pawnAttacks[(us << 6) + king] & theirPawns |
+					knightAttacks[king] & theirKnights |
+					attacks.bishop(king, occupied) & theirDiagonals |
+					attacks.rook(king, occupied) & theirOrthogonals;
+			long snipers = attacks.bishop(king, theirs) & theirDiagonals | attacks.rook(king, theirs) & theirOrthogonals;
+			for (; snipers != 0L; snipers &= snipers - 1) {
+				long blockers = between[king << 6 | Long.numberOfTrailingZeros(snipers)] & occupied;
+				if ((blockers & blockers - 1) == 0L && (blockers & own) != 0L) pinned |= blockers;
+			}
+		}
+		boolean doubleCheck = (checkers & checkers - 1) != 0L;
+		// non-king moves must capture the checker or interpose
+		long targets = checkers == 0L ? -1L : checkers | between[king << 6 | Long.numberOfTrailingZeros(checkers)];
+		// when generating captures, only pawns may also move to empty squares, to promote
+		long pawnTargets = captures ? targets & (theirs | (white ? 0xff00000000000000L : 0xffL)) : targets;
+		if (captures) targets &= theirs;
+
+		int epSquare = enPassantFile == null ? -1 : enPassantFile.ordinal() + (white ? 40 : 16);
+		int count = offset;
+		for (long from = fromMask & own; from != 0L; from &= from - 1) {
+			int s = Long.numberOfTrailingZeros(from);
+			int type = pieces.get(s).ordinal() >> 1;
+			if (doubleCheck && type != 5) continue;
+			long moves;
+			switch (type) {
+			case 0: {
+				int forward = white ? s + 8 : s - 8;
+				moves = pawnAttacks[(us << 6) + s] & theirs;
+				if (forward >= 0 && forward < 64 && (occupied & 1L << forward) == 0L) {
+					moves |= 1L << forward;
+					int start = white ? 1 : 6;
+					int ahead = white ? s + 16 : s - 16;
+					if (s >> 3 == start && (occupied & 1L << ahead) == 0L) moves |= 1L << ahead;
+				}
+				moves &= pawnTargets;
+				if (epSquare >= 0 && (pawnAttacks[(us << 6) + s] & 1L << epSquare) != 0L) {
+					// the vacated squares may expose the king in ways that are simplest to test directly
+					int victim = white ? epSquare - 8 : epSquare + 8;
+					long after = occupied & ~(1L << s | 1L << victim) | 1L << epSquare;
+					if (king < 0 || !attacked(attacks, king, us, after, theirPawns & ~(1L << victim), theirKnights, theirDiagonals, theirOrthogonals, theirKing)) moves |= 1L << epSquare;
+				}
+				break;
+			}
+			case 1:
+				moves = knightAttacks[s] & ~own & targets;
+				break;
+			case 2:
+				moves = attacks.bishop(s, occupied) & ~own & targets;
+				break;
+			case 3:
+				moves = attacks.rook(s, occupied) & ~own & targets;
+				break;
+			case 4:
+				moves = attacks.queen(s, occupied) & ~own & targets;
+				break;
+			default: {
+				moves = 0L;
+				long occupiedWithout = occupied & ~(1L << s);
+				for (long bits = kingAttacks[s] & (captures ? theirs : ~own); bits != 0L; bits &= bits - 1) {
+					int t = Long.numberOfTrailingZeros(bits);
+					if (!attacked(attacks, t, us, occupiedWithout, theirPawns, theirKnights, theirDiagonals, theirOrthogonals, theirKing)) moves |= 1L << t;
+				}
+				if (!captures && checkers == 0L && s == (white ? 4 : 60)) {
+					moves |= castling(pieces, castlingRights, white, s, occupied, attacks, theirPawns, theirKnights, theirDiagonals, theirOrthogonals, theirKing);
+				}
+			}
+			}
+			if ((pinned & 1L << s) != 0L) moves &= lines[king << 6 | s];
+			// pawns about to promote have four codes per target square
+			boolean promoting = type == 0 && s >> 3 == (white ? 6 : 1);
+			int moveCount = Long.bitCount(moves) << (promoting ? 2 : 0);
+			if (count - offset + moveCount > MAX_MOVES) throw new IllegalArgumentException("more than " + MAX_MOVES + " moves");
+			count += moveCount;
+			if (select >= 0) {
+				if (select >= moveCount) {
+					select -= moveCount;
+					continue;
+				}
+				for (int i = promoting ? select >> 2 : select; i > 0; i--) moves &= moves - 1;
+				int t = Long.numberOfTrailingZeros(moves);
+				int move = (s << 6 | t) << 6;
+				Piece captured = pieces.get(t);
+				int capturedType = captured == null ? NO_CAPTURE : captured.ordinal() >> 1;
+				return promoting ? (move | capturedType << 2) + (select & 3) : move | PROMOS + type * 6 + capturedType;
+			}
+			for (int index = count - moveCount; moves != 0L; moves &= moves - 1) {
+				int t = Long.numberOfTrailingZeros(moves);
+				int move = (s << 6 | t) << 6;
+				Piece captured = pieces.get(t);
+				int capturedType = captured == null ? NO_CAPTURE : captured.ordinal() >> 1;
+				if (promoting) {
+					// knight, bishop, rook and queen promotions
+					int promo = move | capturedType << 2;
+					codes[index++] = promo;
+					codes[index++] = promo + 1;
+					codes[index++] = promo + 2;
+					codes[index++] = promo + 3;
+				} else {
+					codes[index++] = move | PROMOS + type * 6 + capturedType;
+				}
+			}
+		}
+		return select >= 0 ? PositionMoves.NO_CODE : count - offset;
+	}
+
+	// whether the king of the colour to move is attacked
+	static boolean isCheck(Pieces pieces, Colour toMove) {
+		long kings = pieces.mask(PieceType.KING.coloured(toMove));
+		if (kings == 0L) return false;
+		Colour them = toMove.opposite();
+		long theirQueens = pieces.mask(PieceType.QUEEN.coloured(them));
+		return attacked(SlidingAttacks.selected, Long.numberOfTrailingZeros(kings), toMove.white ? 0 : 1, pieces.occupied(),
+				pieces.mask(PieceType.PAWN.coloured(them)),
+				pieces.mask(PieceType.KNIGHT.coloured(them)),
+				pieces.mask(PieceType.BISHOP.coloured(them)) | theirQueens,
+				pieces.mask(PieceType.ROOK.coloured(them)) | theirQueens,
+				pieces.mask(PieceType.KING.coloured(them)));
+	}
+
+	// the file, if the side to move may legally capture en passant on it, otherwise null
+	// positions are only distinguished by the en passant file when the capture is available
+	static File enPassantFile(Pieces pieces, Colour toMove, File file) {
+		if (file == null) return null;
+		boolean white = toMove.white;
+		int us = white ? 0 : 1;
+		int epSquare = file.ordinal() + (white ? 40 : 16);
+		int victim = white ? epSquare - 8 : epSquare + 8;
+		Colour them = toMove.opposite();
+		long theirPawns = pieces.mask(PieceType.PAWN.coloured(them));
+		long occupied = pieces.occupied();
+		if ((theirPawns & 1L << victim) == 0L || (occupied & 1L << epSquare) != 0L) return null;
+		// our pawns beside the pawn that advanced
+		long capturers = pawnAttacks[(us ^ 1) << 6 | epSquare] & pieces.mask(PieceType.PAWN.coloured(toMove));
+		if (capturers == 0L) return null;
+		long kings = pieces.mask(PieceType.KING.coloured(toMove));
+		if (kings == 0L) return file;
+		int king = Long.numberOfTrailingZeros(kings);
+		long theirQueens = pieces.mask(PieceType.QUEEN.coloured(them));
+		long theirKnights = pieces.mask(PieceType.KNIGHT.coloured(them));
+		long theirDiagonals = pieces.mask(PieceType.BISHOP.coloured(them)) | theirQueens;
+		long theirOrthogonals = pieces.mask(PieceType.ROOK.coloured(them)) | theirQueens;
+		long theirKing = pieces.mask(PieceType.KING.coloured(them));
+		for (; capturers != 0L; capturers &= capturers - 1) {
+			int s = Long.numberOfTrailingZeros(capturers);
+			// as when generating, the capture is legal if it leaves the king unattacked
+			long after = occupied & ~(1L << s | 1L << victim) | 1L << epSquare;
+			if (!attacked(SlidingAttacks.selected, king, us, after, theirPawns & ~(1L << victim), theirKnights, theirDiagonals, theirOrthogonals, theirKing)) return file;
+		}
+		return null;
+	}
+
+	// the material gained by the side moving from the exchange that the move starts on its target square
+	// each side recaptures with its least valuable attacker, sliders revealed behind earlier attackers join in, and either side may stop
+	// a pawn moving diagonally to an empty square is taken to capture en passant; a pawn reaching the last rank promotes to the type given, or a queen
+	static int see(Pieces pieces, int from, int to, PieceType promotion) {
+		SlidingAttacks attacks = SlidingAttacks.selected;
+		Piece moved = pieces.get(from);
+		Piece victim = pieces.get(to);
+		long occupied = pieces.occupied() & ~(1L << from);
+		int balance = 0;
+		if (victim != null) {
+			balance = seeValues[victim.type.ordinal()];
+		} else if (moved.type == PieceType.PAWN && ((from ^ to) & 7) != 0) {
+			// the captured pawn is beside the capturing pawn's origin
+			balance = seeValues[0];
+			occupied &= ~(1L << (from & 56 | to & 7));
+		}
+		boolean lastRank = to < 8 || to >= 56;
+		// the value of the piece left on the target square, to be lost to the next capture
+		int value = seeValues[moved.type.ordinal()];
+		if (moved.type == PieceType.PAWN && lastRank) {
+			value = seeValues[promotion == null ? PieceType.QUEEN.ordinal() : promotion.ordinal()];
+			balance += value - seeValues[0];
+		}
+		long queens = pieces.mask(Piece.WHITE_QUEEN) | pieces.mask(Piece.BLACK_QUEEN);
+		long diagonals = pieces.mask(Piece.WHITE_BISHOP) | pieces.mask(Piece.BLACK_BISHOP) | queens;
+		long orthogonals = pieces.mask(Piece.WHITE_ROOK) | pieces.mask(Piece.BLACK_ROOK) | queens;
+		long attackers = occupied & (
+				pawnAttacks[64 + to] & pieces.mask(Piece.WHITE_PAWN) |
+				pawnAttacks[to] & pieces.mask(Piece.BLACK_PAWN) |
+				knightAttacks[to] & (pieces.mask(Piece.WHITE_KNIGHT) | pieces.mask(Piece.BLACK_KNIGHT)) |
+				kingAttacks[to] & (pieces.mask(Piece.WHITE_KING) | pieces.mask(Piece.BLACK_KING)) |
+				attacks.bishop(to, occupied) & diagonals |
+				attacks.rook(to, occupied) & orthogonals);
+		// rather than recording every balance, the result is kept within bounds that narrow as each side gains the option to stop
+		int lower = Integer.MIN_VALUE;
+		int upper = Integer.MAX_VALUE;
+		Colour side = moved.colour.opposite();
+		while (true) {
+			long mine = attackers & pieces.mask(side);
+			if (mine == 0L) break;
+			int type = 0;
+			long bits;
+			while ((bits = mine & pieces.mask(Piece.from(PieceType.valueOf(type), side))) == 0L) type++;
+			// the side to capture may instead stop at the current balance
+			// if that is already beyond what the other side could be held to earlier, the exchange never gets this far
+			if (side == moved.colour) {
+				if (balance >= upper) return upper;
+				lower = Math.max(lower, balance);
+			} else {
+				if (balance <= lower) return lower;
+				upper = Math.min(upper, balance);
+			}
+			int gain = value;
+			value = seeValues[type];
+			if (type == 0 && lastRank) {
+				value = seeValues[PieceType.QUEEN.ordinal()];
+				gain += value - seeValues[0];
+			}
+			balance += side == moved.colour ? gain : -gain;
+			long bit = bits & -bits;
+			occupied ^= bit;
+			// moving any piece but a knight off the line may uncover a slider behind it
+			if (type != PieceType.KNIGHT.ordinal()) {
+				attackers |= attacks.bishop(to, occupied) & diagonals | attacks.rook(to, occupied) & orthogonals;
+			}
+			attackers &= occupied;
+			side = side.opposite();
+		}
+		return Math.max(lower, Math.min(upper, balance));
+	}
+
+	private static long castling(Pieces pieces, CastlingRights rights, boolean white, int king, long occupied, SlidingAttacks attacks, long pawns, long knights, long diagonals, long orthogonals, long theirKing) {
+		int us = white ? 0 : 1;
+		Piece rook = white ? Piece.WHITE_ROOK : Piece.BLACK_ROOK;
+		long moves = 0L;
+		if (white ? rights.whiteMayCastleG : rights.blackMayCastleG) {
+			// rook travels over the king's destination and the king over the rook's
+			if (pieces.get(king + 3) == rook && (occupied & (3L << king + 1)) == 0L &&
+					!attacked(attacks, king + 1, us, occupied, pawns, knights, diagonals, orthogonals, theirKing) &&
+					!attacked(attacks, king + 2, us, occupied, pawns, knights, diagonals, orthogonals, theirKing)) {
+				moves |= 1L << king + 2;
+			}
+		}
+		if (white ? rights.whiteMayCastleC : rights.blackMayCastleC) {
+			if (pieces.get(king - 4) == rook && (occupied & (7L << king - 3)) == 0L &&
+					!attacked(attacks, king - 1, us, occupied, pawns, knights, diagonals, orthogonals, theirKing) &&
+					!attacked(attacks, king - 2, us, occupied, pawns, knights, diagonals, orthogonals, theirKing)) {
+				moves |= 1L << king - 2;
+			}
+		}
+		return moves;
+	}
+
+	private static boolean attacked(SlidingAttacks attacks, int s, int us, long occupied, long pawns, long knights, long diagonals, long orthogonals, long king) {
+		return
+				(pawnAttacks[(us << 6) + s] & pawns) != 0L ||
+				(knightAttacks[s] & knights) != 0L ||
+				(kingAttacks[s] & king) != 0L ||
+				(attacks.bishop(s, occupied) & diagonals) != 0L ||
+				(attacks.rook(s, occupied) & orthogonals) != 0L;
+	}
+
+	private MoveGenerator() { }
+
+}
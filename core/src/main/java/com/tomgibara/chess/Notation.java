@@ -16,6 +16,7 @@ public class Notation {
 	private static final Pattern WS = Pattern.compile("\\s+");
 	private static final Pattern TAG = Pattern.compile("\\[\\s*([a-zA-Z0-9][a-zA-Z0-9_]*)\\s*\\\"(([^\\\\\"]|\\\\\\\\|\\\\\\\")*)\\\"\\s*\\]");
 	private static final Pattern NUMBER = Pattern.compile("([1-9][0-9]*)\\.");
+	private static final int TERMINATED = -1;
 	
 	private static final String unescapeTag(String str) {
 		return str.replace("\\\"", "\"").replace("\\\\", "\\");
@@ -122,16 +123,34 @@ public class Notation {
 		return new Sequence(pieces, colour, castlingRights, enPassantFile, moveNumber, stalemateClock).position();
 	}
 	
+	// the sequence from which the movetext of a game with the given tags is played
+	static Sequence newSequence(Map<String, String> tags) {
+		String setup = tags.get("SetUp");
+		if (setup != null && setup.equals("1")) {
+			String fen = tags.get("FEN");
+			if (fen == null) throw new IllegalArgumentException("Setup = 1 with no FEN tag");
+			return parseFENPosition(fen).sequence;
+		}
+		return new Sequence();
+	}
+
 	public static Game parse(Reader reader) throws IOException {
+		return parse(reader, true);
+	}
+
+	// without replay, only the tags and the structure of the movetext are parsed
+	// the moves are then made when the sequence of the game is first requested
+	public static Game parse(Reader reader, boolean replay) throws IOException {
 		BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
-		return parse(br);
+		return parse(br, replay);
 	}
 	
 	//TODO doesn't process tags split over lines
-	private static Game parse(BufferedReader reader) throws IOException {
+	static Game parse(BufferedReader reader, boolean replay) throws IOException {
 		int phase = 0; // 0 - pre, 1 - tags, 2 - number, 3 white move, 4 - black move
 		Map<String, String> tags = null;
 		Sequence sequence = null;
+		StringBuilder movetext = null;
 		while (true) {
 			String line = reader.readLine();
 
@@ -141,7 +160,7 @@ public class Notation {
 				case 0 : throw new IllegalArgumentException("missing tags");
 				case 1 : throw new IllegalArgumentException("missing move text");
 				case 3 : throw new IllegalArgumentException("missing move");
-				default: return new Game(tags, sequence);
+				default: return game(tags, sequence, movetext);
 				}
 			}
 			if (line.isEmpty()) {
@@ -149,20 +168,17 @@ public class Notation {
 				case 0 :
 					continue;
 				case 1 :
-					String setup = tags.get("SetUp");
-					if (setup != null && setup.equals("1")) {
-						String fen = tags.get("FEN");
-						if (fen == null) throw new IllegalArgumentException("Setup = 1 with no FEN tag");
-						sequence = parseFENPosition(fen).sequence;
+					if (replay) {
+						sequence = newSequence(tags);
 					} else {
-						sequence = new Sequence();
+						movetext = new StringBuilder();
 					}
 					phase = 2;
 					continue;
 				case 3:
 					throw new IllegalStateException();
 				default:
-					return new Game(tags, sequence);
+					return game(tags, sequence, movetext);
 				}
 			}
 			if (line.charAt(0) == '%') continue;
@@ -195,41 +211,60 @@ public class Notation {
 				break;
 			}
 			default: {
-				//TODO accumulate sequence
-				String[] split = WS.split(line.trim());
-				for (int i = 0; i < split.length; i++) {
-					String str = split[i];
-					if (str.equals("0-1") || str.equals("1-0") || str.equals("1/2-1/2") || str.equals("*")) {
-						return new Game(tags, sequence);
-					}
-					switch (phase) {
-					case 2 : {
-						Matcher m = NUMBER.matcher(str);
-						if (!m.matches()) throw new IllegalArgumentException("expected move number");
-						//TODO how to use move number?
-						phase = 3;
-						continue;
-					}
-					case 3 : {
-						if (str.equals("...")) {
-							//TODO should verify
-						} else {
-							sequence.finalPosition().moves().make(str);
-						}
-						phase = 4;
-						continue;
-					}
-					case 4 : {
-						sequence.finalPosition().moves().make(str);
-						phase = 2;
-						continue;
-					}
-					default: throw new IllegalStateException("phase " + phase);
-					}
+				if (movetext != null) movetext.append(line).append('\n');
+				phase = movetext(line, phase, sequence);
+				if (phase == TERMINATED) return game(tags, sequence, movetext);
+			}
+			}
+		}
+	}
+
+	// makes the moves of movetext that was parsed without replay
+	static void replay(Sequence sequence, String movetext) {
+		movetext(movetext, 2, sequence);
+	}
+
+	private static Game game(Map<String, String> tags, Sequence sequence, StringBuilder movetext) {
+		return movetext == null ? new Game(tags, sequence) : new Game(tags, movetext.toString(), Notation::replay);
+	}
+
+	// processes movetext from the given phase, making moves only if a sequence is supplied
+	// returns the phase reached, or TERMINATED if a game termination marker was encountered
+	private static int movetext(String text, int phase, Sequence sequence) {
+		//TODO accumulate sequence
+		String[] split = WS.split(text.trim());
+		for (int i = 0; i < split.length; i++) {
+			String str = split[i];
+			if (str.isEmpty()) continue;
+			if (str.equals("0-1") || str.equals("1-0") || str.equals("1/2-1/2") || str.equals("*")) {
+				return TERMINATED;
+			}
+			switch (phase) {
+			case 2 : {
+				Matcher m = NUMBER.matcher(str);
+				if (!m.matches()) throw new IllegalArgumentException("expected move number");
+				//TODO how to use move number?
+				phase = 3;
+				continue;
+			}
+			case 3 : {
+				if (str.equals("...")) {
+					//TODO should verify
+				} else if (sequence != null) {
+					sequence.finalPosition().moves().make(str);
 				}
+				phase = 4;
+				continue;
+			}
+			case 4 : {
+				if (sequence != null) sequence.finalPosition().moves().make(str);
+				phase = 2;
+				continue;
 			}
+			default: throw new IllegalStateException("phase " + phase);
 			}
 		}
+		return phase;
 	}
 	
 }
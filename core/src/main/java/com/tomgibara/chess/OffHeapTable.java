@@ -0,0 +1,474 @@
+package com.tomgibara.chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.tomgibara.chess.PositionMap.EntryConsumer;
+
+// the open-addressing table that backs PositionSet and PositionMap
+// keys are a fixed number of longs, optionally followed by a value that is summed when a key is added again
+// the table is divided into stripes by the high bits of a key's hash, each stripe being a direct buffer guarded by its own lock
+// a stripe that reaches its share of the capacity is sorted and spilled to a run file, then emptied;
+// traversal merges the runs and sorted entries of every stripe together, so keys are visited in order across the whole table,
+// first merging the oldest runs into one until few enough remain that they may all be open at once
+final class OffHeapTable implements Closeable {
+
+	private static final int MAX_STRIPE_BYTES = 1 << 30;
+	private static final int MAX_STRIPES = 64;
+	private static final int MIN_STRIPE_SLOTS = 8;
+	// the most runs read at once, each through its own buffer
+	static final int MAX_FAN_IN = 32;
+
+	// compares keys as unsigned words, most significant first
+	static int compare(long[] a, long[] b, int words) {
+		for (int i = 0; i < words; i++) {
+			int c = Long.compareUnsigned(a[i], b[i]);
+			if (c != 0) return c;
+		}
+		return 0;
+	}
+
+	private final int keyWords;
+	private final boolean valued;
+	private final int slotBytes;
+	private final Path directory;
+	private final int stripeShift;
+	private final Stripe[] stripes;
+	// the runs spilled by every stripe, guarded by the list itself
+	private final List<Path> runs = new ArrayList<>();
+
+	OffHeapTable(int keyWords, boolean valued, long capacity, Path directory) {
+		if (keyWords < 1 || keyWords > 8) throw new IllegalArgumentException("invalid keyWords");
+		if (capacity < 1) throw new IllegalArgumentException("capacity not positive");
+		if (directory == null) throw new IllegalArgumentException("null directory");
+		this.keyWords = keyWords;
+		this.valued = valued;
+		this.directory = directory;
+		slotBytes = (keyWords + (valued ? 1 : 0)) * 8;
+		// slots are filled to at most three quarters
+		long slots = Math.max(Long.highestOneBit(capacity + (capacity + 2) / 3 - 1) << 1, MIN_STRIPE_SLOTS);
+		int count = (int) Math.min(MAX_STRIPES, slots / MIN_STRIPE_SLOTS);
+		while (slots / count * slotBytes > MAX_STRIPE_BYTES) count <<= 1;
+		stripeShift = 64 - Integer.numberOfTrailingZeros(count);
+		int stripeSlots = (int) (slots / count);
+		// capacity is shared between the stripes
+		int stripeCapacity = (int) Math.max(1L, Math.min((capacity + count - 1) / count, stripeSlots - stripeSlots / 4));
+		stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) stripes[i] = new Stripe(stripeSlots, stripeCapacity);
+	}
+
+	int keyWords() {
+		return keyWords;
+	}
+
+	// the number of entries held in memory, which may include keys also spilled to runs
+	long memorySize() {
+		long size = 0L;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.count;
+			}
+		}
+		return size;
+	}
+
+	// the number of runs spilled, less those since merged together
+	int runCount() {
+		synchronized (runs) {
+			return runs.size();
+		}
+	}
+
+	// the key identifying a position in this table
+	long[] key(Position position) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		switch (keyWords) {
+		case 1:
+			return new long[] { position.key() };
+		case PackedPosition.WORDS:
+			long[] key = new long[PackedPosition.WORDS];
+			PackedPosition.from(position).withoutClocks().writeTo(key, 0);
+			return key;
+		default:
+			throw new IllegalStateException("no position key of " + keyWords + " words");
+		}
+	}
+
+	// a key already held in memory is not stored again; one that was spilled is only combined on traversal
+	void add(long[] key, long value) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (key.length < keyWords) throw new IllegalArgumentException("key too short");
+		long hash = hash(key);
+		Stripe stripe = stripes[stripeShift == 64 ? 0 : (int) (hash >>> stripeShift)];
+		synchronized (stripe) {
+			stripe.add(key, (int) hash, value);
+		}
+	}
+
+	// visits the distinct keys in order, with their summed values; the key array is reused between calls
+	// not safe to call concurrently with additions
+	long forEach(EntryConsumer consumer) throws IOException {
+		if (consumer == null) throw new IllegalArgumentException("null consumer");
+		// stripes are chosen by the hash, not the key, so the entries of every stripe are merged with every run
+		List<Source> sources = new ArrayList<>();
+		try {
+			for (Stripe stripe : stripes) {
+				synchronized (stripe) {
+					sources.add(stripe.source());
+				}
+			}
+			synchronized (runs) {
+				compact();
+				for (Path run : runs) sources.add(new RunSource(run));
+			}
+			return merge(sources, consumer);
+		} finally {
+			close(sources);
+		}
+	}
+
+	// removes the run files; the table should not be used after it is closed
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		synchronized (runs) {
+			for (Path run : runs) {
+				try {
+					Files.deleteIfExists(run);
+				} catch (IOException e) {
+					if (failure == null) failure = e;
+				}
+			}
+			runs.clear();
+		}
+		if (failure != null) throw failure;
+	}
+
+	// merges the oldest runs into a single run until no more than MAX_FAN_IN remain; called with the runs locked
+	// a merged run is appended, so each pass over the runs reduces their number by the fan-in
+	private void compact() throws IOException {
+		while (runs.size() > MAX_FAN_IN) {
+			List<Path> merging = runs.subList(0, MAX_FAN_IN);
+			List<Source> sources = new ArrayList<>();
+			Path run = Files.createTempFile(directory, "positions", ".run");
+			try {
+				long count;
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+					// the count is only known once the runs are merged, so it is written in place afterwards
+					out.writeLong(0L);
+					for (Path path : merging) sources.add(new RunSource(path));
+					count = merge(sources, (key, value) -> {
+						try {
+							for (int i = 0; i < keyWords; i++) out.writeLong(key[i]);
+							if (valued) out.writeLong(value);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				}
+				try (FileChannel channel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+					ByteBuffer header = ByteBuffer.allocate(8).putLong(0, count);
+					while (header.hasRemaining()) channel.write(header, header.position());
+				}
+			} catch (IOException e) {
+				try {
+					Files.deleteIfExists(run);
+				} catch (IOException s) {
+					e.addSuppressed(s);
+				}
+				throw e;
+			} finally {
+				close(sources);
+			}
+			List<Path> merged = new ArrayList<>(merging);
+			merging.clear();
+			runs.add(run);
+			for (Path path : merged) Files.deleteIfExists(path);
+		}
+	}
+
+	// the entries of the sources in key order, the values of a key held by several sources being summed
+	private long merge(List<Source> sources, EntryConsumer consumer) throws IOException {
+		PriorityQueue<Source> queue = new PriorityQueue<>(Math.max(sources.size(), 1), (a, b) -> compare(a.key, b.key, keyWords));
+		for (Source source : sources) {
+			if (source.advance()) queue.add(source);
+		}
+		long[] key = new long[keyWords];
+		long visited = 0L;
+		while (!queue.isEmpty()) {
+			Source source = queue.remove();
+			System.arraycopy(source.key, 0, key, 0, keyWords);
+			long value = source.value;
+			if (source.advance()) queue.add(source);
+			// a stripe's memory and each run may hold the key once
+			while (!queue.isEmpty() && compare(queue.peek().key, key, keyWords) == 0) {
+				Source same = queue.remove();
+				value += same.value;
+				if (same.advance()) queue.add(same);
+			}
+			consumer.accept(key, value);
+			visited++;
+		}
+		return visited;
+	}
+
+	private static void close(List<Source> sources) throws IOException {
+		IOException failure = null;
+		for (Source source : sources) {
+			try {
+				source.close();
+			} catch (IOException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+	private long hash(long[] key) {
+		long h = 0L;
+		for (int i = 0; i < keyWords; i++) {
+			h = (h ^ key[i]) * 0x9e3779b97f4a7c15L;
+			h ^= h >>> 29;
+		}
+		return h ^ h >>> 32;
+	}
+
+	private final class Stripe {
+
+		private final ByteBuffer slots;
+		// one bit per slot, set when the slot is occupied
+		private final ByteBuffer used;
+		private final int mask;
+		private final int capacity;
+		private int count = 0;
+
+		Stripe(int slotCount, int capacity) {
+			slots = ByteBuffer.allocateDirect(slotCount * slotBytes).order(ByteOrder.nativeOrder());
+			used = ByteBuffer.allocateDirect(Math.max(slotCount >> 3, 8)).order(ByteOrder.nativeOrder());
+			mask = slotCount - 1;
+			this.capacity = capacity;
+		}
+
+		void add(long[] key, int hash, long value) {
+			for (int slot = hash & mask; ; slot = slot + 1 & mask) {
+				if (!isUsed(slot)) {
+					if (count == capacity) {
+						spill();
+						slot = hash & mask;
+					}
+					int offset = slot * slotBytes;
+					for (int i = 0; i < keyWords; i++) slots.putLong(offset + i * 8, key[i]);
+					if (valued) slots.putLong(offset + keyWords * 8, value);
+					markUsed(slot);
+					count++;
+					return;
+				}
+				if (matches(slot, key)) {
+					if (valued) {
+						int offset = slot * slotBytes + keyWords * 8;
+						slots.putLong(offset, slots.getLong(offset) + value);
+					}
+					return;
+				}
+			}
+		}
+
+		// the entries remaining in memory, in key order
+		Source source() {
+			return new MemorySource(sorted());
+		}
+
+		// writes the entries to a run in key order and empties the stripe
+		private void spill() {
+			int[] order = sorted();
+			Path run = null;
+			try {
+				run = Files.createTempFile(directory, "positions", ".run");
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+					out.writeLong(order.length);
+					for (int slot : order) {
+						int offset = slot * slotBytes;
+						for (int i = 0; i < slotBytes; i += 8) out.writeLong(slots.getLong(offset + i));
+					}
+				}
+			} catch (IOException e) {
+				if (run != null) {
+					try {
+						Files.deleteIfExists(run);
+					} catch (IOException s) {
+						e.addSuppressed(s);
+					}
+				}
+				throw new UncheckedIOException(e);
+			}
+			synchronized (runs) {
+				runs.add(run);
+			}
+			for (int i = 0; i < used.capacity(); i += 8) used.putLong(i, 0L);
+			count = 0;
+		}
+
+		// the occupied slots, ordered by key
+		private int[] sorted() {
+			int[] order = new int[count];
+			int index = 0;
+			for (int slot = 0; index < count; slot++) {
+				if (isUsed(slot)) order[index++] = slot;
+			}
+			sort(order, 0, count - 1);
+			return order;
+		}
+
+		private void sort(int[] order, int lo, int hi) {
+			while (hi - lo > 16) {
+				int p = pivot(order, lo, lo + hi >>> 1, hi);
+				int i = lo;
+				int j = hi;
+				while (i <= j) {
+					while (compareSlots(order[i], p) < 0) i++;
+					while (compareSlots(order[j], p) > 0) j--;
+					if (i <= j) {
+						int t = order[i]; order[i] = order[j]; order[j] = t;
+						i++;
+						j--;
+					}
+				}
+				// recurse into the smaller part
+				if (j - lo < hi - i) {
+					sort(order, lo, j);
+					lo = i;
+				} else {
+					sort(order, i, hi);
+					hi = j;
+				}
+			}
+			for (int i = lo + 1; i <= hi; i++) {
+				int slot = order[i];
+				int j = i - 1;
+				for (; j >= lo && compareSlots(order[j], slot) > 0; j--) order[j + 1] = order[j];
+				order[j + 1] = slot;
+			}
+		}
+
+		private int pivot(int[] order, int a, int b, int c) {
+			int x = order[a];
+			int y = order[b];
+			int z = order[c];
+			if (compareSlots(x, y) < 0) {
+				if (compareSlots(y, z) < 0) return y;
+				return compareSlots(x, z) < 0 ? z : x;
+			}
+			if (compareSlots(x, z) < 0) return x;
+			return compareSlots(y, z) < 0 ? z : y;
+		}
+
+		private int compareSlots(int a, int b) {
+			int offsetA = a * slotBytes;
+			int offsetB = b * slotBytes;
+			for (int i = 0; i < keyWords * 8; i += 8) {
+				int c = Long.compareUnsigned(slots.getLong(offsetA + i), slots.getLong(offsetB + i));
+				if (c != 0) return c;
+			}
+			return 0;
+		}
+
+		private boolean matches(int slot, long[] key) {
+			int offset = slot * slotBytes;
+			for (int i = 0; i < keyWords; i++) {
+				if (slots.getLong(offset + i * 8) != key[i]) return false;
+			}
+			return true;
+		}
+
+		private boolean isUsed(int slot) {
+			return (used.getLong(slot >>> 6 << 3) & 1L << slot) != 0L;
+		}
+
+		private void markUsed(int slot) {
+			int offset = slot >>> 6 << 3;
+			used.putLong(offset, used.getLong(offset) | 1L << slot);
+		}
+
+		private final class MemorySource extends Source {
+
+			private final int[] order;
+			private int index = 0;
+
+			MemorySource(int[] order) {
+				this.order = order;
+			}
+
+			@Override
+			boolean advance() {
+				if (index == order.length) return false;
+				int offset = order[index++] * slotBytes;
+				for (int i = 0; i < keyWords; i++) key[i] = slots.getLong(offset + i * 8);
+				value = valued ? slots.getLong(offset + keyWords * 8) : 0L;
+				return true;
+			}
+
+		}
+
+	}
+
+	private abstract class Source {
+
+		final long[] key = new long[keyWords];
+		long value;
+
+		abstract boolean advance() throws IOException;
+
+		void close() throws IOException { }
+
+	}
+
+	private final class RunSource extends Source {
+
+		private final DataInputStream in;
+		private long remaining;
+
+		RunSource(Path run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+			try {
+				remaining = in.readLong();
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			if (remaining == 0) return false;
+			if (remaining < 0) throw new EOFException();
+			for (int i = 0; i < keyWords; i++) key[i] = in.readLong();
+			value = valued ? in.readLong() : 0L;
+			remaining--;
+			return true;
+		}
+
+		@Override
+		void close() throws IOException {
+			in.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,296 @@
+package com.tomgibara.chess;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+// records, for every position reached within the first plies of a corpus, the moves played from it and their results
+// built by a parallel reduction over the games into rows held in sorted primitive arrays
+// rows are ordered by position key (unsigned) and then by move code (see PositionMoves.code)
+// keys may collide (see Position.key); lookups do not modify the explorer and may be made concurrently
+public final class OpeningExplorer {
+
+	// the least number of moves accumulated before they are sorted into rows
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private static final int WHITE_WON = 0;
+	private static final int DRAW = 1;
+	private static final int BLACK_WON = 2;
+
+	private static final Continuations NO_CONTINUATIONS = new Continuations(null, 0, 0);
+
+	// the stream is made parallel; games without a decisive or drawn result, or with an unrecognized one, are passed over
+	// lazily parsed games are replayed by the reduction and any that are invalid fail it with an IllegalArgumentException
+	public static OpeningExplorer build(Stream<Game> games, int plies) {
+		return build(games, plies, DEFAULT_BUFFER_SIZE);
+	}
+
+	static OpeningExplorer build(Stream<Game> games, int plies, int bufferSize) {
+		if (games == null) throw new IllegalArgumentException("null games");
+		if (plies < 0) throw new IllegalArgumentException("negative plies");
+		Rows rows = games.parallel().collect(() -> new Rows(plies, bufferSize), Rows::add, Rows::combine);
+		rows.flush();
+		return new OpeningExplorer(rows);
+	}
+
+	private static int result(Game game) {
+		Game.Result result;
+		try {
+			result = game.result();
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+		if (result == null) return -1;
+		switch (result) {
+		case WHITE_WON: return WHITE_WON;
+		case DRAW: return DRAW;
+		case BLACK_WON: return BLACK_WON;
+		default: return -1;
+		}
+	}
+
+	// distinct keys, and the index of the first row for each key, with a final entry for the row count
+	private final long[] keys;
+	private final int[] starts;
+	private final int[] codes;
+	private final int[][] counts;
+
+	private OpeningExplorer(Rows rows) {
+		int size = rows.size;
+		codes = Arrays.copyOf(rows.codes, size);
+		counts = new int[3][];
+		for (int i = 0; i < 3; i++) counts[i] = Arrays.copyOf(rows.counts[i], size);
+		int keyCount = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || rows.keys[i] != rows.keys[i - 1]) keyCount++;
+		}
+		keys = new long[keyCount];
+		starts = new int[keyCount + 1];
+		int k = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || rows.keys[i] != rows.keys[i - 1]) {
+				keys[k] = rows.keys[i];
+				starts[k++] = i;
+			}
+		}
+		starts[keyCount] = size;
+	}
+
+	// the number of distinct positions recorded
+	public int positionCount() {
+		return keys.length;
+	}
+
+	// the number of distinct moves recorded over all positions
+	public int continuationCount() {
+		return codes.length;
+	}
+
+	// the moves played from the position, possibly none
+	public Continuations continuations(Position position) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		return continuations(position.key());
+	}
+
+	public Continuations continuations(long key) {
+		int lo = 0;
+		int hi = keys.length - 1;
+		while (lo <= hi) {
+			int mid = lo + hi >>> 1;
+			int c = Long.compareUnsigned(keys[mid], key);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return new Continuations(this, starts[mid], starts[mid + 1]);
+			}
+		}
+		return NO_CONTINUATIONS;
+	}
+
+	// a view of the moves played from a position, ordered by code
+	public static final class Continuations {
+
+		private final OpeningExplorer explorer;
+		private final int from;
+		private final int to;
+
+		private Continuations(OpeningExplorer explorer, int from, int to) {
+			this.explorer = explorer;
+			this.from = from;
+			this.to = to;
+		}
+
+		public int size() {
+			return to - from;
+		}
+
+		public int code(int index) {
+			return explorer.codes[row(index)];
+		}
+
+		public Move move(int index) {
+			return PositionMoves.codeMove(code(index));
+		}
+
+		public int whiteWins(int index) {
+			return explorer.counts[WHITE_WON][row(index)];
+		}
+
+		public int draws(int index) {
+			return explorer.counts[DRAW][row(index)];
+		}
+
+		public int blackWins(int index) {
+			return explorer.counts[BLACK_WON][row(index)];
+		}
+
+		public int games(int index) {
+			int row = row(index);
+			return explorer.counts[WHITE_WON][row] + explorer.counts[DRAW][row] + explorer.counts[BLACK_WON][row];
+		}
+
+		// the number of games in which the position was followed by any move
+		public int games() {
+			int games = 0;
+			for (int i = 0; i < size(); i++) games += games(i);
+			return games;
+		}
+
+		private int row(int index) {
+			if (index < 0 || index >= to - from) throw new IndexOutOfBoundsException();
+			return from + index;
+		}
+
+	}
+
+	// the accumulation of a reduction: moves are buffered as keys and values (code << 2 | result) and then sorted into rows
+	private static final class Rows {
+
+		private final int plies;
+		private long[] bufferKeys;
+		private int[] bufferValues;
+		private int bufferSize = 0;
+
+		long[] keys = new long[0];
+		int[] codes = new int[0];
+		int[][] counts = new int[3][0];
+		int size = 0;
+
+		Rows(int plies, int bufferSize) {
+			this.plies = plies;
+			bufferKeys = new long[bufferSize];
+			bufferValues = new int[bufferSize];
+		}
+
+		void add(Game game) {
+			int result = result(game);
+			if (result < 0) return;
+			Sequence sequence = game.sequence();
+			int count = Math.min(plies, sequence.length() - 1);
+			Position position = sequence.position(0);
+			for (int i = 0; i < count; i++) {
+				Position next = sequence.position(i + 1);
+				if (bufferSize == bufferKeys.length) grow();
+				bufferKeys[bufferSize] = position.key();
+				bufferValues[bufferSize] = next.code << 2 | result;
+				bufferSize++;
+				position = next;
+			}
+		}
+
+		void combine(Rows that) {
+			flush();
+			that.flush();
+			merge(that.keys, that.codes, that.counts, that.size);
+		}
+
+		// the buffer grows with the rows so that the cost of merging them is amortized
+		private void grow() {
+			if (bufferSize >= size) {
+				flush();
+				return;
+			}
+			int length = (int) Math.min(bufferSize * 2L, Integer.MAX_VALUE - 8);
+			bufferKeys = Arrays.copyOf(bufferKeys, length);
+			bufferValues = Arrays.copyOf(bufferValues, length);
+		}
+
+		// sorts the buffer into rows and merges them
+		void flush() {
+			if (bufferSize == 0) return;
+			Radix.sort(bufferKeys, bufferValues, bufferSize);
+			long[] keys = new long[bufferSize];
+			int[] codes = new int[bufferSize];
+			int[][] counts = new int[3][bufferSize];
+			int size = 0;
+			for (int from = 0; from < bufferSize; ) {
+				long key = bufferKeys[from];
+				int to = from + 1;
+				while (to < bufferSize && bufferKeys[to] == key) to++;
+				// orders the moves from the position by code
+				Arrays.sort(bufferValues, from, to);
+				for (int i = from; i < to; i++) {
+					int code = bufferValues[i] >> 2;
+					if (i == from || code != codes[size - 1]) {
+						keys[size] = key;
+						codes[size] = code;
+						size++;
+					}
+					counts[bufferValues[i] & 3][size - 1]++;
+				}
+				from = to;
+			}
+			bufferSize = 0;
+			merge(keys, codes, counts, size);
+		}
+
+		private void merge(long[] thatKeys, int[] thatCodes, int[][] thatCounts, int thatSize) {
+			if (thatSize == 0) return;
+			if (size == 0) {
+				keys = thatKeys;
+				codes = thatCodes;
+				counts = thatCounts;
+				size = thatSize;
+				return;
+			}
+			int capacity = size + thatSize;
+			long[] keys = new long[capacity];
+			int[] codes = new int[capacity];
+			int[][] counts = new int[3][capacity];
+			int i = 0;
+			int j = 0;
+			int k = 0;
+			while (i < size || j < thatSize) {
+				int c;
+				if (i == size) {
+					c = 1;
+				} else if (j == thatSize) {
+					c = -1;
+				} else {
+					c = Long.compareUnsigned(this.keys[i], thatKeys[j]);
+					if (c == 0) c = Integer.compare(this.codes[i], thatCodes[j]);
+				}
+				if (c <= 0) {
+					keys[k] = this.keys[i];
+					codes[k] = this.codes[i];
+				} else {
+					keys[k] = thatKeys[j];
+					codes[k] = thatCodes[j];
+				}
+				for (int r = 0; r < 3; r++) {
+					counts[r][k] = (c <= 0 ? this.counts[r][i] : 0) + (c >= 0 ? thatCounts[r][j] : 0);
+				}
+				if (c <= 0) i++;
+				if (c >= 0) j++;
+				k++;
+			}
+			this.keys = keys;
+			this.codes = codes;
+			this.counts = counts;
+			size = k;
+		}
+
+	}
+
+}
@@ -0,0 +1,186 @@
+package com.tomgibara.chess;
+
+import java.nio.ByteBuffer;
+
+// an immutable position packed into four longs (32 bytes), for storing very many positions in flat arrays or buffers
+// the first word is the occupancy of the squares, the next two hold a 4-bit piece ordinal for each occupied square,
+// in square order, and the last holds the side to move, castling rights, en-passant file and clocks
+// positions with more than 32 pieces, or with a move number or stalemate clock out of range, cannot be packed
+public final class PackedPosition {
+
+	public static final int WORDS = 4;
+	public static final int BYTES = WORDS * 8;
+
+	public static final int MAX_PIECES = 32;
+	public static final int MAX_MOVE_NUMBER = (1 << 30) - 1;
+	public static final int MAX_STALEMATE_CLOCK = (1 << 16) - 1;
+
+	// the layout of the state word
+	private static final int CASTLING_SHIFT = 1;
+	private static final int EN_PASSANT_SHIFT = 5;
+	private static final int CLOCK_SHIFT = 9;
+	private static final int MOVE_NUMBER_SHIFT = 25;
+	private static final long CLOCKS_MASK = -1L << CLOCK_SHIFT;
+
+	public static PackedPosition from(Position position) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		return pack(position.activePieces(), position.toMove, position.castlingRights, position.enPassantFile, position.moveNumber, position.stalemateClock);
+	}
+
+	public static PackedPosition from(Pieces pieces, Colour toMove, CastlingRights castlingRights, File enPassantFile, int moveNumber, int stalemateClock) {
+		if (pieces == null) throw new IllegalArgumentException("null pieces");
+		if (toMove == null) throw new IllegalArgumentException("null toMove");
+		if (castlingRights == null) throw new IllegalArgumentException("null castlingRights");
+		return pack(pieces, toMove, castlingRights, enPassantFile, moveNumber, stalemateClock);
+	}
+
+	// the words are validated
+	public static PackedPosition from(long[] words, int offset) {
+		if (words == null) throw new IllegalArgumentException("null words");
+		if (offset < 0 || offset + WORDS > words.length) throw new IllegalArgumentException("invalid offset");
+		return validate(words[offset], words[offset + 1], words[offset + 2], words[offset + 3]);
+	}
+
+	// reads the words from the buffer at its position, which is advanced
+	public static PackedPosition from(ByteBuffer buffer) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		return validate(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+	}
+
+	private static PackedPosition pack(Pieces pieces, Colour toMove, CastlingRights castlingRights, File enPassantFile, int moveNumber, int stalemateClock) {
+		if (moveNumber < 0 || moveNumber > MAX_MOVE_NUMBER) throw new IllegalArgumentException("moveNumber out of range");
+		if (stalemateClock < 0 || stalemateClock > MAX_STALEMATE_CLOCK) throw new IllegalArgumentException("stalemateClock out of range");
+		long occupied = pieces.occupied();
+		if (Long.bitCount(occupied) > MAX_PIECES) throw new IllegalArgumentException("too many pieces");
+		long lo = 0L;
+		long hi = 0L;
+		int i = 0;
+		for (long bits = occupied; bits != 0L; bits &= bits - 1, i++) {
+			long code = pieces.get(Long.numberOfTrailingZeros(bits)).ordinal();
+			if (i < 16) {
+				lo |= code << (i << 2);
+			} else {
+				hi |= code << (i - 16 << 2);
+			}
+		}
+		long state = toMove.ordinal()
+				| (long) castlingRights.ordinal() << CASTLING_SHIFT
+				| (long) (enPassantFile == null ? 0 : enPassantFile.ordinal() + 1) << EN_PASSANT_SHIFT
+				| (long) stalemateClock << CLOCK_SHIFT
+				| (long) moveNumber << MOVE_NUMBER_SHIFT;
+		return new PackedPosition(occupied, lo, hi, state);
+	}
+
+	private static PackedPosition validate(long occupied, long lo, long hi, long state) {
+		int count = Long.bitCount(occupied);
+		if (count > MAX_PIECES) throw new IllegalArgumentException("too many pieces");
+		for (int i = 0; i < MAX_PIECES; i++) {
+			int code = (int) ((i < 16 ? lo >>> (i << 2) : hi >>> (i - 16 << 2)) & 0xf);
+			if (i < count ? code >= Piece.COUNT : code != 0) throw new IllegalArgumentException("invalid piece code");
+		}
+		if ((state >>> EN_PASSANT_SHIFT & 0xf) > 8) throw new IllegalArgumentException("invalid en passant file");
+		if (state >>> MOVE_NUMBER_SHIFT > MAX_MOVE_NUMBER) throw new IllegalArgumentException("invalid move number");
+		return new PackedPosition(occupied, lo, hi, state);
+	}
+
+	private final long occupied;
+	private final long lo;
+	private final long hi;
+	private final long state;
+
+	private PackedPosition(long occupied, long lo, long hi, long state) {
+		this.occupied = occupied;
+		this.lo = lo;
+		this.hi = hi;
+		this.state = state;
+	}
+
+	public long word(int index) {
+		switch (index) {
+		case 0: return occupied;
+		case 1: return lo;
+		case 2: return hi;
+		case 3: return state;
+		default: throw new IndexOutOfBoundsException();
+		}
+	}
+
+	public void writeTo(long[] words, int offset) {
+		if (words == null) throw new IllegalArgumentException("null words");
+		if (offset < 0 || offset + WORDS > words.length) throw new IllegalArgumentException("invalid offset");
+		words[offset] = occupied;
+		words[offset + 1] = lo;
+		words[offset + 2] = hi;
+		words[offset + 3] = state;
+	}
+
+	// writes the words to the buffer at its position, which is advanced
+	public void writeTo(ByteBuffer buffer) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		buffer.putLong(occupied).putLong(lo).putLong(hi).putLong(state);
+	}
+
+	public Pieces pieces() {
+		Pieces pieces = new Pieces();
+		int i = 0;
+		for (long bits = occupied; bits != 0L; bits &= bits - 1, i++) {
+			int code = (int) ((i < 16 ? lo >>> (i << 2) : hi >>> (i - 16 << 2)) & 0xf);
+			pieces.set(Square.at(Long.numberOfTrailingZeros(bits)), Piece.valueOf(code));
+		}
+		return pieces;
+	}
+
+	public Colour toMove() {
+		return Colour.valueOf((int) (state & 1));
+	}
+
+	public CastlingRights castlingRights() {
+		return CastlingRights.valueOf((int) (state >>> CASTLING_SHIFT & 0xf));
+	}
+
+	public File enPassantFile() {
+		int file = (int) (state >>> EN_PASSANT_SHIFT & 0xf);
+		return file == 0 ? null : File.valueOf(file - 1);
+	}
+
+	public int moveNumber() {
+		return (int) (state >>> MOVE_NUMBER_SHIFT);
+	}
+
+	public int stalemateClock() {
+		return (int) (state >>> CLOCK_SHIFT & MAX_STALEMATE_CLOCK);
+	}
+
+	// the same position with both clocks zeroed, identifying it for the purposes of repetition
+	public PackedPosition withoutClocks() {
+		return (state & CLOCKS_MASK) == 0L ? this : new PackedPosition(occupied, lo, hi, state & ~CLOCKS_MASK);
+	}
+
+	// a new position at the start of its own sequence
+	public Position toPosition() {
+		return new Sequence(pieces(), toMove(), castlingRights(), enPassantFile(), moveNumber(), stalemateClock()).position();
+	}
+
+	@Override
+	public int hashCode() {
+		long h = occupied * 0x9e3779b97f4a7c15L;
+		h = (h ^ lo) * 0x9e3779b97f4a7c15L;
+		h = (h ^ hi) * 0x9e3779b97f4a7c15L;
+		h = (h ^ state) * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ h >>> 32);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof PackedPosition)) return false;
+		PackedPosition that = (PackedPosition) obj;
+		return this.occupied == that.occupied && this.lo == that.lo && this.hi == that.hi && this.state == that.state;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x%016x%016x%016x", occupied, lo, hi, state);
+	}
+
+}
@@ -0,0 +1,237 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import com.tomgibara.chess.PgnReader.ErrorPolicy;
+import com.tomgibara.chess.PgnReader.GameError;
+
+// reads the games of a PGN file on a fork-join pool, producing the same games as a PgnReader over the file
+// the file is divided into chunks at empty lines followed by an Event tag; each chunk is mapped and parsed by a task
+// games are passed to the consumer on the calling thread, either in file order or in the order chunks complete
+public final class ParallelPgnReader {
+
+	public static final int DEFAULT_CHUNK_BYTES = 4 << 20;
+
+	private static final int MAP_BYTES = 1 << 30;
+	private static final byte[] BOUNDARY = "[Event".getBytes(StandardCharsets.ISO_8859_1);
+
+	private final Path path;
+	private final ErrorPolicy policy;
+	private final int chunkBytes;
+
+	public ParallelPgnReader(Path path, ErrorPolicy policy) {
+		this(path, policy, DEFAULT_CHUNK_BYTES);
+	}
+
+	private ParallelPgnReader(Path path, ErrorPolicy policy, int chunkBytes) {
+		if (path == null) throw new IllegalArgumentException("null path");
+		if (policy == null) throw new IllegalArgumentException("null policy");
+		this.path = path;
+		this.policy = policy;
+		this.chunkBytes = chunkBytes;
+	}
+
+	// the least number of bytes in a chunk, chunks only end at game boundaries
+	public ParallelPgnReader withChunkBytes(int chunkBytes) {
+		if (chunkBytes < 1) throw new IllegalArgumentException("chunkBytes not positive");
+		return chunkBytes == this.chunkBytes ? this : new ParallelPgnReader(path, policy, chunkBytes);
+	}
+
+	// returns the errors recorded under the collect policy, in file order
+	public List<GameError> read(ForkJoinPool pool, boolean ordered, Consumer<? super Game> consumer) throws IOException {
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		if (consumer == null) throw new IllegalArgumentException("null consumer");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			List<Chunk> chunks = split(channel);
+			// bounds the parsed games held in memory
+			int window = pool.getParallelism() * 2;
+			List<Future<Chunk>> futures = new ArrayList<>();
+			try {
+				if (ordered) {
+					Deque<Future<Chunk>> pending = new ArrayDeque<>();
+					for (int next = 0; next < chunks.size() || !pending.isEmpty(); ) {
+						while (next < chunks.size() && pending.size() < window) {
+							Future<Chunk> future = pool.submit(task(channel, chunks.get(next++)));
+							futures.add(future);
+							pending.add(future);
+						}
+						emit(await(pending.remove()), consumer);
+					}
+				} else {
+					CompletionService<Chunk> service = new ExecutorCompletionService<>(pool);
+					int running = 0;
+					for (int next = 0; next < chunks.size() || running > 0; running--) {
+						for (; next < chunks.size() && running < window; running++) {
+							futures.add(service.submit(task(channel, chunks.get(next++))));
+						}
+						emit(await(service.take()), consumer);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted", e);
+			} finally {
+				for (Future<Chunk> future : futures) future.cancel(false);
+			}
+			if (policy != ErrorPolicy.COLLECT) return Collections.emptyList();
+			List<GameError> errors = new ArrayList<>();
+			for (Chunk chunk : chunks) {
+				for (ChunkError error : chunk.errors) errors.add(error.error);
+			}
+			return errors;
+		}
+	}
+
+	private Callable<Chunk> task(FileChannel channel, Chunk chunk) {
+		return () -> {
+			chunk.parse(channel);
+			return chunk;
+		};
+	}
+
+	private Chunk await(Future<Chunk> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private void emit(Chunk chunk, Consumer<? super Game> consumer) {
+		List<Game> games = chunk.games;
+		int from = 0;
+		if (policy == ErrorPolicy.FAIL && !chunk.errors.isEmpty()) {
+			// as per the sequential reader, the games preceding the invalid game are supplied first
+			ChunkError error = chunk.errors.get(0);
+			for (; from < error.index; from++) consumer.accept(games.get(from));
+			throw new IllegalArgumentException("invalid game at line " + error.error.line, error.error.exception);
+		}
+		for (; from < games.size(); from++) consumer.accept(games.get(from));
+		// release the games for collection
+		chunk.games = null;
+	}
+
+	// divides the file into chunks by scanning it sequentially, also counting lines
+	private List<Chunk> split(FileChannel channel) throws IOException {
+		List<Chunk> chunks = new ArrayList<>();
+		long size = channel.size();
+		long start = 0L;
+		int startLine = 1;
+		int line = 1;
+		// the preceding line was empty, the current line may yet be empty
+		boolean previousEmpty = false;
+		boolean empty = true;
+		// the number of boundary bytes matched at the start of the line, or -1
+		int matched = 0;
+		long lineStart = 0L;
+		for (long offset = 0L; offset < size; offset += MAP_BYTES) {
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, offset, Math.min(MAP_BYTES, size - offset));
+			int limit = buffer.limit();
+			for (int i = 0; i < limit; i++) {
+				byte b = buffer.get(i);
+				if (b == '\n') {
+					previousEmpty = empty;
+					empty = true;
+					matched = 0;
+					line++;
+					lineStart = offset + i + 1;
+					continue;
+				}
+				if (b != '\r') empty = false;
+				if (matched < 0) continue;
+				if (b != BOUNDARY[matched]) {
+					matched = -1;
+					continue;
+				}
+				if (++matched < BOUNDARY.length) continue;
+				matched = -1;
+				if (previousEmpty && lineStart - start >= chunkBytes) {
+					chunks.add(new Chunk(start, lineStart, startLine));
+					start = lineStart;
+					startLine = line;
+				}
+			}
+		}
+		if (size > start) chunks.add(new Chunk(start, size, startLine));
+		return chunks;
+	}
+
+	private final class Chunk {
+
+		final long start;
+		final long end;
+		final int startLine;
+		List<Game> games;
+		List<ChunkError> errors;
+
+		Chunk(long start, long end, int startLine) {
+			if (end - start > Integer.MAX_VALUE) throw new IllegalArgumentException("no game boundary within 2GB at " + start);
+			this.start = start;
+			this.end = end;
+			this.startLine = startLine;
+		}
+
+		void parse(FileChannel channel) throws IOException {
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+			String text = StandardCharsets.ISO_8859_1.decode(buffer).toString();
+			List<Game> games = new ArrayList<>();
+			List<ChunkError> errors = new ArrayList<>();
+			// errors are always collected so that they can be positioned among the games
+			PgnReader reader = new PgnReader(new StringReader(text), ErrorPolicy.COLLECT);
+			for (Game game : reader) {
+				record(reader, errors, games.size());
+				games.add(game);
+				if (policy == ErrorPolicy.FAIL && !errors.isEmpty()) break;
+			}
+			record(reader, errors, games.size());
+			this.games = games;
+			this.errors = errors;
+		}
+
+		private void record(PgnReader reader, List<ChunkError> errors, int index) {
+			for (GameError error : reader.takeErrors()) {
+				errors.add(new ChunkError(index, new GameError(startLine + error.line - 1, error.exception)));
+			}
+		}
+
+	}
+
+	// an error and the number of games in the chunk that precede it
+	private static final class ChunkError {
+
+		final int index;
+		final GameError error;
+
+		ChunkError(int index, GameError error) {
+			this.index = index;
+			this.error = error;
+		}
+
+	}
+
+}
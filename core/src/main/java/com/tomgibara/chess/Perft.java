@@ -0,0 +1,249 @@
+package com.tomgibara.chess;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// counts the leaf nodes of the legal move tree to a fixed depth
+public final class Perft {
+
+	// number of plies at which parallel counts fork a task per move
+	private static final int SPLIT_PLIES = 2;
+
+	public static ForkJoinPool newPool(int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism not positive");
+		return new ForkJoinPool(parallelism);
+	}
+
+	public static Perft fromFEN(String fen) {
+		if (fen == null) throw new IllegalArgumentException("null fen");
+		return new Perft(Notation.parseFENPosition(fen));
+	}
+
+	public final Position position;
+	// may be null, otherwise shared by every task counting with this perft
+	private final TranspositionTable table;
+
+	public Perft(Position position) {
+		this(position, null);
+	}
+
+	public Perft(Position position, TranspositionTable table) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		this.position = position;
+		this.table = table;
+	}
+
+	public Perft withTable(TranspositionTable table) {
+		return table == this.table ? this : new Perft(position, table);
+	}
+
+	public long count(int depth) {
+		if (depth < 0) throw new IllegalArgumentException("negative depth");
+		return count(root(), depth, table, newStack(depth), 0);
+	}
+
+	public Result run(int depth) {
+		if (depth < 0) throw new IllegalArgumentException("negative depth");
+		long start = System.nanoTime();
+		long nodes = count(root(), depth, table, newStack(depth), 0);
+		return new Result(depth, nodes, System.nanoTime() - start, null, null);
+	}
+
+	public long count(int depth, ForkJoinPool pool) {
+		if (depth < 0) throw new IllegalArgumentException("negative depth");
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		return pool.invoke(new CountTask(root(), depth, SPLIT_PLIES, table));
+	}
+
+	public Result run(int depth, ForkJoinPool pool) {
+		if (depth < 0) throw new IllegalArgumentException("negative depth");
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		long start = System.nanoTime();
+		long nodes = pool.invoke(new CountTask(root(), depth, SPLIT_PLIES, table));
+		return new Result(depth, nodes, System.nanoTime() - start, null, null);
+	}
+
+	public Result divide(int depth, ForkJoinPool pool) {
+		if (depth < 1) throw new IllegalArgumentException("depth not positive");
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		long start = System.nanoTime();
+		PositionCursor root = root();
+		int[] codes = newStack(1);
+		int count = root.generate(codes, 0);
+		String[] notations = notations(count);
+		CountTask[] tasks = new CountTask[count];
+		for (int i = 0; i < count; i++) {
+			tasks[i] = new CountTask(detach(root, codes[i]), depth - 1, SPLIT_PLIES - 1, table);
+		}
+		long[] counts = pool.invoke(new RecursiveTask<long[]>() {
+			@Override
+			protected long[] compute() {
+				invokeAll(tasks);
+				long[] counts = new long[count];
+				for (int i = 0; i < count; i++) {
+					counts[i] = tasks[i].join();
+				}
+				return counts;
+			}
+		});
+		long nodes = 0L;
+		for (long c : counts) nodes += c;
+		return new Result(depth, nodes, System.nanoTime() - start, notations, counts);
+	}
+
+	public Result divide(int depth) {
+		if (depth < 1) throw new IllegalArgumentException("depth not positive");
+		long start = System.nanoTime();
+		PositionCursor root = root();
+		int[] stack = newStack(depth);
+		int count = root.generate(stack, 0);
+		String[] notations = notations(count);
+		long[] counts = new long[count];
+		long nodes = 0L;
+		for (int i = 0; i < count; i++) {
+			root.push(stack[i]);
+			counts[i] = count(root, depth - 1, table, stack, count);
+			root.pop();
+			nodes += counts[i];
+		}
+		return new Result(depth, nodes, System.nanoTime() - start, notations, counts);
+	}
+
+	// a cursor has its own pieces, so the position's sequence is never disturbed
+	private PositionCursor root() {
+		return new PositionCursor(position);
+	}
+
+	// position moves are listed in the same order as generated codes
+	private String[] notations(int count) {
+		PositionMoves moves = position.moves();
+		String[] notations = new String[count];
+		for (int i = 0; i < count; i++) {
+			notations[i] = moves.notation(i);
+		}
+		return notations;
+	}
+
+	// room for the moves at every ply of a depth-first count
+	private static int[] newStack(int depth) {
+		return new int[Math.max(depth, 1) * MoveGenerator.MAX_MOVES];
+	}
+
+	// a cursor after the move, which may be handed to another thread
+	private static PositionCursor detach(PositionCursor cursor, int code) {
+		cursor.push(code);
+		PositionCursor detached = cursor.copy();
+		cursor.pop();
+		return detached;
+	}
+
+	static long count(PositionCursor cursor, int depth, TranspositionTable table, int[] stack, int offset) {
+		if (depth == 0) return 1L;
+		// counts are only reused at exactly the same depth
+		if (table != null && depth > 1) {
+			long data = table.probe(cursor.key());
+			if (data != 0L && TranspositionTable.depth(data) == depth) return TranspositionTable.payload(data);
+		}
+		int count = cursor.generate(stack, offset);
+		// bulk count the final ply
+		if (depth == 1) return count;
+		long nodes = 0L;
+		for (int i = offset; i < offset + count; i++) {
+			cursor.push(stack[i]);
+			nodes += count(cursor, depth - 1, table, stack, offset + count);
+			cursor.pop();
+		}
+		// counts too large for the table are only reached near the root and are not worth keeping
+		if (table != null && nodes <= TranspositionTable.MAX_PAYLOAD) table.store(cursor.key(), depth, nodes);
+		return nodes;
+	}
+
+	// cursors are mutable, so every task owns its own
+	private static final class CountTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final PositionCursor cursor;
+		private final int depth;
+		private final int splits;
+		private final TranspositionTable table;
+
+		CountTask(PositionCursor cursor, int depth, int splits, TranspositionTable table) {
+			this.cursor = cursor;
+			this.depth = depth;
+			this.splits = splits;
+			this.table = table;
+		}
+
+		@Override
+		protected Long compute() {
+			// too shallow to be worth splitting
+			if (splits == 0 || depth < 3) return count(cursor, depth, table, newStack(depth), 0);
+			int[] codes = newStack(1);
+			int count = cursor.generate(codes, 0);
+			CountTask[] tasks = new CountTask[count];
+			for (int i = 0; i < count; i++) {
+				tasks[i] = new CountTask(detach(cursor, codes[i]), depth - 1, splits - 1, table);
+			}
+			invokeAll(tasks);
+			long nodes = 0L;
+			for (CountTask task : tasks) {
+				nodes += task.join();
+			}
+			return nodes;
+		}
+
+	}
+
+	public static final class Result {
+
+		public final int depth;
+		public final long nodes;
+		public final long nanos;
+		private final String[] notations;
+		private final long[] counts;
+
+		Result(int depth, long nodes, long nanos, String[] notations, long[] counts) {
+			this.depth = depth;
+			this.nodes = nodes;
+			this.nanos = nanos;
+			this.notations = notations;
+			this.counts = counts;
+		}
+
+		public double nodesPerSecond() {
+			return nanos == 0L ? 0.0 : nodes * 1000000000.0 / nanos;
+		}
+
+		// zero unless the result was obtained by dividing
+		public int moveCount() {
+			return counts == null ? 0 : counts.length;
+		}
+
+		public String notation(int index) {
+			if (counts == null) throw new IndexOutOfBoundsException();
+			return notations[index];
+		}
+
+		public long nodes(int index) {
+			if (counts == null) throw new IndexOutOfBoundsException();
+			return counts[index];
+		}
+
+		@Override
+		public String toString() {
+			String nl = String.format("%n");
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < moveCount(); i++) {
+				sb.append(notations[i]).append(": ").append(counts[i]).append(nl);
+			}
+			sb.append("Depth: ").append(depth);
+			sb.append(" Nodes: ").append(nodes);
+			sb.append(" Seconds: ").append(nanos / 1000000000.0);
+			sb.append(" Nodes/second: ").append(Math.round(nodesPerSecond()));
+			return sb.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,248 @@
+package com.tomgibara.chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// reads the games of a PGN file one at a time, holding no more than a single game in memory,
+// together with any errors collected and not yet taken
+// the games may be iterated or streamed once; IO failures are reported as UncheckedIOException
+public final class PgnReader implements Iterable<Game>, Closeable {
+
+	public enum ErrorPolicy {
+		// stop with an exception identifying the game
+		FAIL,
+		// discard the game and continue with the next
+		SKIP,
+		// as per skip, but record the error until it is taken
+		COLLECT;
+	}
+
+	public static final class GameError {
+
+		// the line on which the game started, counting from one
+		public final int line;
+		public final RuntimeException exception;
+
+		GameError(int line, RuntimeException exception) {
+			this.line = line;
+			this.exception = exception;
+		}
+
+		@Override
+		public String toString() {
+			return "line " + line + ": " + exception.getMessage();
+		}
+
+	}
+
+	// PGN export format is specified as ISO-8859-1
+	public static PgnReader open(Path path, ErrorPolicy policy) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		return new PgnReader(Files.newBufferedReader(path, StandardCharsets.ISO_8859_1), policy);
+	}
+
+	private final Lines lines;
+	private final ErrorPolicy policy;
+	private final boolean replay;
+	private final List<GameError> errors = new ArrayList<>();
+	private boolean iterated = false;
+	private int gameCount = 0;
+	private Game next = null;
+	private boolean done = false;
+
+	// without replay, games are parsed as per Notation.parse(Reader, false)
+	public PgnReader(Reader reader, ErrorPolicy policy, boolean replay) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		if (policy == null) throw new IllegalArgumentException("null policy");
+		lines = new Lines(reader);
+		this.policy = policy;
+		this.replay = replay;
+	}
+
+	public PgnReader(Reader reader, ErrorPolicy policy) {
+		this(reader, policy, true);
+	}
+
+	public PgnReader(Reader reader) {
+		this(reader, ErrorPolicy.FAIL);
+	}
+
+	public ErrorPolicy policy() {
+		return policy;
+	}
+
+	// the errors recorded under the collect policy and not yet taken
+	public List<GameError> errors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	// removes and returns the errors recorded since they were last taken;
+	// errors are retained until taken, so callers reading large files should take them as they go to bound memory
+	public List<GameError> takeErrors() {
+		if (errors.isEmpty()) return Collections.emptyList();
+		List<GameError> taken = new ArrayList<>(errors);
+		errors.clear();
+		return taken;
+	}
+
+	// the number of games successfully read so far
+	public int gameCount() {
+		return gameCount;
+	}
+
+	// the number of lines consumed so far
+	public int lineCount() {
+		return lines.count;
+	}
+
+	@Override
+	public Iterator<Game> iterator() {
+		if (iterated) throw new IllegalStateException("already iterated");
+		iterated = true;
+		return new Iterator<Game>() {
+
+			@Override
+			public boolean hasNext() {
+				return advance();
+			}
+
+			@Override
+			public Game next() {
+				if (!advance()) throw new NoSuchElementException();
+				Game game = next;
+				next = null;
+				return game;
+			}
+
+		};
+	}
+
+	// closing the stream closes the reader
+	public Stream<Game> stream() {
+		Spliterator<Game> spliterator = Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		done = true;
+		lines.close();
+	}
+
+	private boolean advance() {
+		if (next != null) return true;
+		try {
+			while (!done) {
+				int line = start();
+				if (line < 0) {
+					done = true;
+					break;
+				}
+				try {
+					next = Notation.parse(lines, replay);
+					gameCount++;
+					return true;
+				} catch (RuntimeException e) {
+					if (policy == ErrorPolicy.FAIL) {
+						done = true;
+						throw new IllegalArgumentException("invalid game at line " + line, e);
+					}
+					if (policy == ErrorPolicy.COLLECT) errors.add(new GameError(line, e));
+					resynchronize();
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			done = true;
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// skips the lines preceding the next game and returns its first line number, or -1 if there are no more games
+	private int start() throws IOException {
+		while (true) {
+			String line = lines.readLine();
+			if (line == null) return -1;
+			if (isBlank(line) || line.charAt(0) == '%') continue;
+			lines.unread(line);
+			return lines.count + 1;
+		}
+	}
+
+	// discards the remainder of a failed game: the next game is taken to start at a tag following a blank line
+	private void resynchronize() throws IOException {
+		// the failure may have been detected on the blank line that ends the game
+		boolean blank = lines.blank;
+		for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+			if (blank && line.startsWith("[")) {
+				lines.unread(line);
+				return;
+			}
+			blank = isBlank(line);
+		}
+	}
+
+	private static boolean isBlank(String line) {
+		for (int i = 0; i < line.length(); i++) {
+			if (!Character.isWhitespace(line.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	// counts lines and allows a single line to be pushed back
+	private static final class Lines extends BufferedReader {
+
+		int count = 0;
+		// whether the last line read was blank
+		boolean blank = false;
+		private String unread = null;
+
+		Lines(Reader reader) {
+			super(reader);
+		}
+
+		@Override
+		public String readLine() throws IOException {
+			String line;
+			if (unread == null) {
+				line = super.readLine();
+			} else {
+				line = unread;
+				unread = null;
+			}
+			if (line != null) {
+				count++;
+				blank = isBlank(line);
+			}
+			return line;
+		}
+
+		void unread(String line) {
+			unread = line;
+			count--;
+		}
+
+	}
+
+}
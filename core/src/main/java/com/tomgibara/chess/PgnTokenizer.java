@@ -0,0 +1,453 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// splits PGN held in a byte buffer into tokens by scanning its bytes directly as ISO-8859-1
+// token text is exposed through reusable slices of the buffer that are only valid until the next token is read
+// comments, annotation glyphs, recursive variations and escaped lines are skipped
+public final class PgnTokenizer {
+
+	// no more tokens
+	public static final int END = 0;
+	// a tag pair, see tagName and tagValue
+	public static final int TAG = 1;
+	// a move number indication, the slice excludes the periods
+	public static final int NUMBER = 2;
+	// a move in standard algebraic notation, excluding any suffix annotation
+	public static final int SAN = 3;
+	// a game termination marker
+	public static final int RESULT = 4;
+	// one or more consecutive empty lines
+	public static final int BLANK = 5;
+
+	// maps the whole file, which must be no larger than 2GB; larger files may be mapped in regions via a channel
+	public static PgnTokenizer map(Path path) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("file too large to map");
+			return new PgnTokenizer(channel.map(MapMode.READ_ONLY, 0L, size));
+		}
+	}
+
+	private static final boolean[] delimiters = new boolean[256];
+
+	static {
+		for (char c : " \t\r\n\f{}()[];$".toCharArray()) delimiters[c] = true;
+	}
+
+	private final ByteBuffer buffer;
+	private final int limit;
+	private int position;
+	// the current line contains nothing but carriage returns
+	private boolean empty = true;
+	private int type = END;
+	private int start;
+	private final Slice token = new Slice();
+	private final Slice value = new Slice();
+
+	// tokenizes the bytes between the position and limit of the buffer, which are not modified
+	public PgnTokenizer(ByteBuffer buffer) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		this.buffer = buffer.duplicate();
+		limit = buffer.limit();
+		position = buffer.position();
+	}
+
+	// the index in the buffer from which the next token will be read
+	public int position() {
+		return position;
+	}
+
+	// the type of the token last read
+	public int type() {
+		return type;
+	}
+
+	// the index in the buffer at which the last token started
+	public int start() {
+		return start;
+	}
+
+	// the text of the last token, the tag name for tags
+	public CharSequence token() {
+		return token;
+	}
+
+	public CharSequence tagName() {
+		if (type != TAG) throw new IllegalStateException("not a tag");
+		return token;
+	}
+
+	// the raw tag value, without unescaping
+	public CharSequence tagValue() {
+		if (type != TAG) throw new IllegalStateException("not a tag");
+		return value;
+	}
+
+	// reads the next token and returns its type
+	public int next() {
+		int p = position;
+		while (p < limit) {
+			int b = buffer.get(p) & 0xff;
+			switch (b) {
+			case '\n':
+				p++;
+				if (empty && type != BLANK && type != END) {
+					position = p;
+					return token(BLANK, p - 1, p - 1, p);
+				}
+				empty = true;
+				continue;
+			case '\r':
+				p++;
+				continue;
+			case ' ':
+			case '\t':
+			case '\f':
+				empty = false;
+				p++;
+				continue;
+			case '%':
+				if (empty) {
+					p = lineEnd(p);
+					continue;
+				}
+				break;
+			case '{':
+				empty = false;
+				p = commentEnd(p);
+				continue;
+			case ';':
+				empty = false;
+				p = lineEnd(p);
+				continue;
+			case '(':
+				empty = false;
+				p = variationEnd(p);
+				continue;
+			case ')':
+			case '}':
+			case ']':
+				empty = false;
+				p++;
+				continue;
+			case '$':
+				empty = false;
+				for (p++; p < limit && isDigit(buffer.get(p)); p++);
+				continue;
+			case '[':
+				empty = false;
+				return tag(p);
+			}
+			empty = false;
+			return symbol(p);
+		}
+		position = p;
+		return type = END;
+	}
+
+	// the next game, or null if there are no more games
+	// an invalid game may be passed over with skipGame
+	public Game nextGame() {
+		return nextGame(true);
+	}
+
+	// without replay, the movetext is retained and its moves are only made when the sequence is requested
+	public Game nextGame(boolean replay) {
+		Map<String, String> tags = null;
+		Sequence sequence = null;
+		boolean movetext = false;
+		// where the first movetext token starts
+		int from = -1;
+		while (true) {
+			switch (next()) {
+			case END:
+				if (tags == null) return null;
+				if (!movetext) throw new IllegalArgumentException("missing move text");
+				return game(tags, sequence, from, position);
+			case BLANK:
+				if (tags == null) continue;
+				if (!movetext) {
+					movetext = true;
+					if (replay) sequence = Notation.newSequence(tags);
+					continue;
+				}
+				return game(tags, sequence, from, start);
+			case TAG:
+				if (movetext) {
+					// the game was not terminated, leave the tag for the next game
+					position = start;
+					return game(tags, sequence, from, start);
+				}
+				if (tags == null) tags = new HashMap<>();
+				tags.put(token.toString(), unescape(value));
+				continue;
+			case NUMBER:
+			case SAN:
+				if (tags == null) throw new IllegalArgumentException("missing tags");
+				if (!movetext) {
+					movetext = true;
+					if (replay) sequence = Notation.newSequence(tags);
+				}
+				if (from < 0) from = start;
+				if (type == SAN && replay) sequence.finalPosition().moves().make(token);
+				continue;
+			case RESULT:
+				if (tags == null) throw new IllegalArgumentException("missing tags");
+				if (replay && sequence == null) sequence = Notation.newSequence(tags);
+				return game(tags, sequence, from, position);
+			default:
+				throw new IllegalStateException("type " + type);
+			}
+		}
+	}
+
+	// makes the moves of movetext that was retained without replay
+	static void replay(Sequence sequence, String movetext) {
+		PgnTokenizer tokenizer = new PgnTokenizer(ByteBuffer.wrap(movetext.getBytes(StandardCharsets.ISO_8859_1)));
+		while (true) {
+			switch (tokenizer.next()) {
+			case SAN:
+				sequence.finalPosition().moves().make(tokenizer.token);
+				continue;
+			case NUMBER:
+				continue;
+			default:
+				return;
+			}
+		}
+	}
+
+	// passes over the remainder of a game: the next game is taken to start at a tag following a blank line
+	public void skipGame() {
+		boolean blank = type == BLANK;
+		while (true) {
+			switch (next()) {
+			case END:
+				return;
+			case TAG:
+				if (blank) {
+					position = start;
+					return;
+				}
+			}
+			blank = type == BLANK;
+		}
+	}
+
+	private Game game(Map<String, String> tags, Sequence sequence, int from, int to) {
+		if (sequence != null) return new Game(tags, sequence);
+		String movetext = from < 0 ? "" : new Slice(from, to).toString();
+		return new Game(tags, movetext, PgnTokenizer::replay);
+	}
+
+	private int token(int type, int start, int from, int to) {
+		this.type = type;
+		this.start = start;
+		token.set(from, to);
+		return type;
+	}
+
+	private int tag(int p) {
+		int start = p;
+		p = skipSpaces(p + 1);
+		int nameFrom = p;
+		while (p < limit && isNameChar(buffer.get(p))) p++;
+		int nameTo = p;
+		p = skipSpaces(p);
+		if (nameFrom == nameTo || p == limit || buffer.get(p) != '"') return invalidTag(start);
+		int valueFrom = ++p;
+		while (true) {
+			if (p >= limit) return invalidTag(start);
+			byte b = buffer.get(p);
+			if (b == '"') break;
+			if (b == '\n') return invalidTag(start);
+			p += b == '\\' ? 2 : 1;
+		}
+		int valueTo = p;
+		p = skipSpaces(p + 1);
+		if (p == limit || buffer.get(p) != ']') return invalidTag(start);
+		position = p + 1;
+		value.set(valueFrom, valueTo);
+		return token(TAG, start, nameFrom, nameTo);
+	}
+
+	private int invalidTag(int start) {
+		// move past the line so that the caller may resume
+		position = lineEnd(start);
+		type = TAG;
+		this.start = start;
+		throw new IllegalArgumentException("invalid tag at " + start);
+	}
+
+	private int symbol(int p) {
+		int start = p;
+		byte first = buffer.get(p);
+		if (isDigit(first)) {
+			while (++p < limit && isDigit(buffer.get(p)));
+			if (p < limit && buffer.get(p) == '.') {
+				int to = p;
+				while (++p < limit && buffer.get(p) == '.');
+				position = p;
+				return token(NUMBER, start, start, to);
+			}
+		}
+		while (p < limit && !isDelimiter(buffer.get(p))) p++;
+		position = p;
+		if (first == '.') {
+			// a placeholder for an elided move, as in "1. ... e5"
+			return next();
+		}
+		int to = p;
+		// strip suffix annotations
+		while (to > start && isAnnotation(buffer.get(to - 1))) to--;
+		int length = to - start;
+		if (first == '*' && length == 1 || isDigit(first) && isResult(start, length)) {
+			return token(RESULT, start, start, to);
+		}
+		return token(SAN, start, start, to);
+	}
+
+	private boolean isResult(int from, int length) {
+		switch (length) {
+		case 3: return matches(from, "1-0") || matches(from, "0-1");
+		case 7: return matches(from, "1/2-1/2");
+		default: return false;
+		}
+	}
+
+	private boolean matches(int from, String str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (buffer.get(from + i) != str.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private int skipSpaces(int p) {
+		while (p < limit) {
+			byte b = buffer.get(p);
+			if (b != ' ' && b != '\t') break;
+			p++;
+		}
+		return p;
+	}
+
+	// the index of the newline ending the line, which is left to be read
+	private int lineEnd(int p) {
+		while (p < limit && buffer.get(p) != '\n') p++;
+		return p;
+	}
+
+	private int commentEnd(int p) {
+		while (p < limit && buffer.get(p) != '}') p++;
+		return p == limit ? p : p + 1;
+	}
+
+	private int variationEnd(int p) {
+		int depth = 0;
+		while (p < limit) {
+			switch (buffer.get(p)) {
+			case '(':
+				depth++;
+				break;
+			case ')':
+				if (--depth == 0) return p + 1;
+				break;
+			case '{':
+				p = commentEnd(p);
+				continue;
+			case ';':
+				p = lineEnd(p);
+				continue;
+			}
+			p++;
+		}
+		return p;
+	}
+
+	private String unescape(Slice slice) {
+		int from = slice.from;
+		int to = slice.to;
+		int p = from;
+		while (p < to && buffer.get(p) != '\\') p++;
+		if (p == to) return slice.toString();
+		StringBuilder sb = new StringBuilder(to - from);
+		for (p = from; p < to; p++) {
+			char c = (char) (buffer.get(p) & 0xff);
+			if (c == '\\' && p + 1 < to) c = (char) (buffer.get(++p) & 0xff);
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isNameChar(byte b) {
+		return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == '_';
+	}
+
+	private static boolean isAnnotation(byte b) {
+		return b == '!' || b == '?';
+	}
+
+	private static boolean isDelimiter(byte b) {
+		return delimiters[b & 0xff];
+	}
+
+	// a view of the buffer between two indices
+	private final class Slice implements CharSequence {
+
+		int from;
+		int to;
+
+		Slice() { }
+
+		Slice(int from, int to) {
+			set(from, to);
+		}
+
+		void set(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public int length() {
+			return to - from;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= to - from) throw new IndexOutOfBoundsException();
+			return (char) (buffer.get(from + index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > to - from || start > end) throw new IndexOutOfBoundsException();
+			return new Slice(from + start, from + end);
+		}
+
+		@Override
+		public String toString() {
+			byte[] bytes = new byte[to - from];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = buffer.get(from + i);
+			}
+			return new String(bytes, StandardCharsets.ISO_8859_1);
+		}
+
+	}
+
+}
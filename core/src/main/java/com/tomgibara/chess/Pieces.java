@@ -1,23 +1,55 @@
 package com.tomgibara.chess;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
-import com.tomgibara.storage.Store;
+final public class Pieces extends AbstractMap<Square, Piece> {
 
-final public class Pieces extends SquareMap<Piece> {
+	private static final Piece[] values = Piece.values();
 
-	private Pieces(Store<Piece> store) {
-		super(store);
+	// one more than the ordinal of the piece on each square, zero if empty
+	private final byte[] board;
+	private final Squares squares;
+	// zobrist key of the piece placement and occupancy of each piece and colour, maintained on every change
+	private long key;
+	private final long[] pieceMasks;
+	private final long[] colourMasks;
+	private EntrySet entrySet = null;
+
+	private Pieces(Pieces that, boolean mutable) {
+		board = that.board.clone();
+		long occupied = that.squares.mask();
+		squares = mutable ? new MutableSquares(occupied) : new Squares(occupied);
+		key = that.key;
+		pieceMasks = that.pieceMasks.clone();
+		colourMasks = that.colourMasks.clone();
 	}
-	
+
 	public Pieces() {
-		super(new Piece[64], 0);
+		board = new byte[64];
+		squares = new MutableSquares();
+		key = 0L;
+		pieceMasks = new long[Piece.COUNT];
+		colourMasks = new long[2];
 	}
-	
+
+	// must be length 64
 	public Pieces(Piece[] pieces) {
-		super(pieces);
+		this();
+		if (pieces == null) throw new IllegalArgumentException("null pieces");
+		if (pieces.length != 64) throw new IllegalArgumentException("invalid pieces length");
+		for (int i = 0; i < 64; i++) {
+			if (pieces[i] != null) set(i, pieces[i]);
+		}
 	}
-	
+
 	public Board newBoard() {
 		//public callers can only make immutable boards
 		return new Board(this.immutable());
@@ -40,41 +72,182 @@ final public class Pieces extends SquareMap<Piece> {
 		}
 		return this;
 	}
-	
+
 	public Pieces set(Area area, Piece... pieces) {
 		if (area == null) throw new IllegalArgumentException("null area");
 		if (pieces == null) throw new IllegalArgumentException("null pieces");
 		update(area.getSquares(), pieces);
 		return this;
 	}
-	
+
 	public Pieces fill(Area area, Piece piece) {
 		if (area == null) throw new IllegalArgumentException("null area");
 		area.getSquares().forEach(s -> put(s, piece));
 		return this;
 	}
-	
+
 	public Pieces swapColours() {
 		forEach( (s, p) -> put(s, p.getSwapped()));
 		return this;
 	}
-	
-	//TODO ugly and messy :(
-	@Override
+
+	public boolean isMutable() {
+		return squares instanceof MutableSquares;
+	}
+
 	public Pieces immutable() {
-		return (Pieces) super.immutable();
+		return isMutable() ? new Pieces(this, false) : this;
 	}
-	
-	@Override
+
 	public Pieces mutableCopy() {
-		return (Pieces) super.mutableCopy();
+		return new Pieces(this, true);
+	}
+
+	// the number of each piece, indexed by piece ordinal
+	public int[] partitionSizes() {
+		int[] counts = new int[Piece.COUNT];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = Long.bitCount(pieceMasks[i]);
+		}
+		return counts;
+	}
+
+	// the squares occupied by each piece, indexed by piece ordinal
+	public Squares[] partition() {
+		Squares[] partition = new Squares[Piece.COUNT];
+		for (int i = 0; i < partition.length; i++) {
+			partition[i] = new Squares(pieceMasks[i]);
+		}
+		return partition;
+	}
+
+	// the squares occupied by each colour, indexed by colour ordinal
+	public Squares[] colourPartition() {
+		return new Squares[] { new Squares(colourMasks[0]), new Squares(colourMasks[1]) };
+	}
+
+	// map methods
+
+	@Override
+	public Piece get(Object key) {
+		if (!(key instanceof Square)) return null;
+		return get(((Square) key).ordinal);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (!(key instanceof Square)) return false;
+		return board[((Square) key).ordinal] != 0;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		if (!(value instanceof Piece)) return false;
+		return pieceMasks[((Piece) value).ordinal()] != 0L;
+	}
+
+	@Override
+	public Piece put(Square key, Piece value) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (value == null) throw new IllegalArgumentException("null value");
+		return set(key.ordinal, value);
+	}
+
+	@Override
+	public Piece remove(Object key) {
+		if (!(key instanceof Square)) return null;
+		return set(((Square) key).ordinal, null);
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Square, ? super Piece> action) {
+		for (long bits = squares.mask(); bits != 0L; bits &= bits - 1) {
+			int ordinal = Long.numberOfTrailingZeros(bits);
+			action.accept(Square.at(ordinal), get(ordinal));
+		}
+	}
+
+	@Override
+	public int size() {
+		return Long.bitCount(squares.mask());
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return squares.mask() == 0L;
+	}
+
+	@Override
+	public void clear() {
+		for (long bits = squares.mask(); bits != 0L; bits &= bits - 1) {
+			set(Long.numberOfTrailingZeros(bits), null);
+		}
+	}
+
+	@Override
+	public Squares keySet() {
+		return squares;
+	}
+
+	@Override
+	public Set<Map.Entry<Square, Piece>> entrySet() {
+		return entrySet == null ? entrySet = new EntrySet() : entrySet;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		// comparison with other pieces is the common case
+		if (o instanceof Pieces) {
+			Pieces that = (Pieces) o;
+			return this.key == that.key && Arrays.equals(this.board, that.board);
+		}
+		return super.equals(o);
 	}
-	
+
 	@Override
-	Pieces newInstance(Store<Piece> store) {
-		return new Pieces(store);
+	public int hashCode() {
+		// as per the map contract
+		int hash = 0;
+		for (long bits = squares.mask(); bits != 0L; bits &= bits - 1) {
+			int ordinal = Long.numberOfTrailingZeros(bits);
+			hash += Square.at(ordinal).hashCode() ^ get(ordinal).hashCode();
+		}
+		return hash;
+	}
+
+	// package scoped methods
+
+	Piece get(int ordinal) {
+		int value = board[ordinal];
+		return value == 0 ? null : values[value - 1];
+	}
+
+	long key() {
+		return key;
+	}
+
+	// sets the state of these mutable pieces to that of the others
+	void restore(Pieces that) {
+		System.arraycopy(that.board, 0, board, 0, 64);
+		squares.squares = that.squares.squares;
+		key = that.key;
+		System.arraycopy(that.pieceMasks, 0, pieceMasks, 0, pieceMasks.length);
+		System.arraycopy(that.colourMasks, 0, colourMasks, 0, colourMasks.length);
+	}
+
+	long occupied() {
+		return squares.mask();
+	}
+
+	long mask(Piece piece) {
+		return pieceMasks[piece.ordinal()];
+	}
+
+	long mask(Colour colour) {
+		return colourMasks[colour.ordinal()];
 	}
-	
+
 	void make(Colour colour, Move move, MovePieces pieces) {
 		PieceType moved = pieces.moved;
 		remove(move.from);
@@ -100,7 +273,7 @@ final public class Pieces extends SquareMap<Piece> {
 		}
 		put(move.to, moved.coloured(colour));
 	}
-	
+
 	void takeBack(Colour colour, Move move, MovePieces pieces) {
 		PieceType moved = pieces.moved;
 		put(move.from, moved.coloured(colour));
@@ -119,6 +292,30 @@ final public class Pieces extends SquareMap<Piece> {
 		}
 	}
 
+	private Piece set(int ordinal, Piece piece) {
+		if (!isMutable()) throw new IllegalStateException("immutable");
+		Piece old = get(ordinal);
+		if (old == piece) return old;
+		long bit = 1L << ordinal;
+		MutableSquares squares = (MutableSquares) this.squares;
+		if (old != null) {
+			key ^= Zobrist.piece(old, ordinal);
+			pieceMasks[old.ordinal()] &= ~bit;
+			colourMasks[old.colour.ordinal()] &= ~bit;
+		}
+		if (piece == null) {
+			board[ordinal] = 0;
+			squares.remove(ordinal);
+		} else {
+			board[ordinal] = (byte) (piece.ordinal() + 1);
+			squares.add(ordinal);
+			key ^= Zobrist.piece(piece, ordinal);
+			pieceMasks[piece.ordinal()] |= bit;
+			colourMasks[piece.colour.ordinal()] |= bit;
+		}
+		return old;
+	}
+
 	private void update(Squares set, Piece... pieces) {
 		final int length = pieces.length;
 		if (length > 0) {
@@ -134,5 +331,90 @@ final public class Pieces extends SquareMap<Piece> {
 			}
 		}
 	}
-	
+
+	private final class EntrySet extends AbstractSet<Map.Entry<Square, Piece>> {
+
+		@Override
+		public Iterator<Map.Entry<Square, Piece>> iterator() {
+			return new Iterator<Map.Entry<Square, Piece>>() {
+
+				private long bits = squares.mask();
+				private Entry previous = null;
+
+				@Override
+				public boolean hasNext() {
+					return bits != 0L;
+				}
+
+				@Override
+				public Map.Entry<Square, Piece> next() {
+					if (bits == 0L) throw new NoSuchElementException();
+					int ordinal = Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					return previous = new Entry(ordinal);
+				}
+
+				@Override
+				public void remove() {
+					if (previous == null) throw new IllegalStateException();
+					set(previous.ordinal, null);
+					previous = null;
+				}
+
+			};
+		}
+
+		@Override
+		public int size() {
+			return Pieces.this.size();
+		}
+
+		@Override
+		public void clear() {
+			Pieces.this.clear();
+		}
+
+	}
+
+	private final class Entry implements Map.Entry<Square, Piece> {
+
+		final int ordinal;
+
+		Entry(int ordinal) {
+			this.ordinal = ordinal;
+		}
+
+		@Override
+		public Square getKey() {
+			return Square.at(ordinal);
+		}
+
+		@Override
+		public Piece getValue() {
+			Piece value = get(ordinal);
+			if (value == null) throw new IllegalStateException("removed");
+			return value;
+		}
+
+		@Override
+		public Piece setValue(Piece value) {
+			if (value == null) throw new IllegalArgumentException("null value");
+			return set(ordinal, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) return true;
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+			return getKey() == that.getKey() && Objects.equals(get(ordinal), that.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ Objects.hashCode(get(ordinal));
+		}
+
+	}
+
 }
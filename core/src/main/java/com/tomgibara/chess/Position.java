@@ -3,7 +3,6 @@ package com.tomgibara.chess;
 import static com.tomgibara.chess.PositionMoves.NO_CODE;
 
 import java.util.NoSuchElementException;
-import java.util.Objects;
 
 public final class Position {
 
@@ -15,7 +14,10 @@ public final class Position {
 	public final File enPassantFile;
 	public final int moveNumber; // this is the position *after* this move number
 	public final int stalemateClock; // reset on captures and pawn moves
+	private final long key;
 	private boolean discarded = false;
+	// the pieces in the state of this position, retained once it is discarded
+	private Pieces discardedPieces = null;
 
 	private final Board board;
 	//TODO derive as needed?
@@ -30,10 +32,12 @@ public final class Position {
 		this.board = sequence.newBoard();
 		this.toMove = toMove;
 		this.castlingRights = castlingRights;
-		this.enPassantFile = enPassantFile;
+		// an en passant file that no pawn can capture on is not retained, so the key matches that of the same position reached otherwise
+		this.enPassantFile = MoveGenerator.enPassantFile(board.pieces, toMove, enPassantFile);
 		this.moveNumber = moveNumber;
 		this.stalemateClock = stalemateClock;
-		constraint = castlingRights.asMoveConstraint(toMove, enPassantFile);
+		constraint = castlingRights.asMoveConstraint(toMove, this.enPassantFile);
+		key = board.pieces.key() ^ Zobrist.state(toMove, castlingRights, this.enPassantFile);
 	}
 	
 	private Position(Sequence sequence, Position that, int code) {
@@ -53,17 +57,23 @@ public final class Position {
 			Move move = PositionMoves.codeMove(code);
 			MovePieces pieces = PositionMoves.codePieces(code);
 			this.toMove = that.toMove.opposite();
-			this.castlingRights = that.castlingRights.after(pieces.moved.coloured(that.toMove), move);
-			this.enPassantFile = pieces.moved == PieceType.PAWN && !move.intermediateSquares.isEmpty() ? move.from.file : null;
+			this.castlingRights = that.castlingRights.after(move);
 			this.moveNumber = that.toMove.white ? that.moveNumber + 1 : that.moveNumber;
 			//TODO increment stalemate clock
 			this.stalemateClock = pieces.moved == PieceType.PAWN || pieces.captured != null ? 0 : that.stalemateClock + 1;
-			constraint = castlingRights.asMoveConstraint(toMove, enPassantFile);
 			// advance pieces so that new position gets the pieces in its state
 			board.pieces.make(that.toMove, move, pieces);
+			this.enPassantFile = MoveGenerator.enPassantFile(board.pieces, toMove, pieces.moved == PieceType.PAWN && !move.intermediateSquares.isEmpty() ? move.from.file : null);
+			constraint = castlingRights.asMoveConstraint(toMove, enPassantFile);
 		}
+		key = board.pieces.key() ^ Zobrist.state(toMove, castlingRights, enPassantFile);
 	}
 	
+	// identifies the pieces, side to move, castling rights and en-passant file
+	public long key() {
+		return key;
+	}
+
 	public int moveIndex() {
 		checkDiscarded();
 		if (isLast()) return -1;
@@ -71,6 +81,19 @@ public final class Position {
 		return moves().indexOfCode(next.code);
 	}
 
+	// whether this position has occurred at least count times in its sequence, including this occurrence;
+	// earlier positions are only examined as far back as the stalemate clock, since captures and pawn moves are irreversible
+	public boolean isRepetition(int count) {
+		if (count < 1) throw new IllegalArgumentException("count not positive");
+		checkDiscarded();
+		return sequence.repetitions(index, stalemateClock, count - 1) == count - 1;
+	}
+
+	// whether fifty moves have been made by each player without a capture or pawn move
+	public boolean isFiftyMoveDraw() {
+		return stalemateClock >= 100;
+	}
+
 	public Position previous() {
 		checkDiscarded();
 		try {
@@ -134,7 +157,7 @@ public final class Position {
 	
 	@Override
 	public int hashCode() {
-		return board.hashCode() + 0x0f70 * toMove.hashCode() + castlingRights.hashCode() + Objects.hashCode(enPassantFile) + 0x7f0000 * stalemateClock;
+		return (int) (key ^ key >>> 32) + 0x7f0000 * stalemateClock;
 	}
 	
 	@Override
@@ -143,12 +166,14 @@ public final class Position {
 		if (!(obj instanceof Position)) return false;
 		Position that = (Position) obj;
 		
+		if (this.key != that.key) return false;
 		if (this.toMove != that.toMove) return false;
 		if (this.castlingRights != that.castlingRights) return false;
 		if (this.enPassantFile != that.enPassantFile) return false;
 		if (this.stalemateClock != that.stalemateClock) return false;
 		
-		return this.board.equals(that.board);
+		// keys may collide, so the pieces are always compared
+		return this.comparablePieces().equals(that.comparablePieces());
 	}
 	
 	//TODO toString using notation?
@@ -179,8 +204,15 @@ public final class Position {
 		pieces.takeBack(toMove.opposite(), m, p);
 	}
 	
-	void markAsDiscarded() {
+	// the mutable pieces of the sequence, in the state of this position
+	Pieces activePieces() {
+		activate();
+		return board.pieces;
+	}
+
+	void markAsDiscarded(Pieces pieces) {
 		this.discarded = true;
+		this.discardedPieces = pieces;
 	}
 	
 	void activate() {
@@ -188,10 +220,18 @@ public final class Position {
 		sequence.toIndex(index);
 	}
 	
+	int index() {
+		return index;
+	}
+
 	boolean isLast() {
 		return index + 1 == sequence.length();
 	}
 
+	private Pieces comparablePieces() {
+		return discarded ? discardedPieces : pieces();
+	}
+
 	private void checkDiscarded() {
 		if (discarded) throw new IllegalStateException();
 	}
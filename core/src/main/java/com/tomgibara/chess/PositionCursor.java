@@ -0,0 +1,210 @@
+package com.tomgibara.chess;
+
+import java.util.Arrays;
+
+// a mutable position that moves are made on and taken back from in place, for searching without creating positions
+// moves are identified by the codes written by generate and are assumed to be legal
+public final class PositionCursor {
+
+	// the greatest number of codes written by generate
+	public static final int MAX_MOVES = MoveGenerator.MAX_MOVES;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final Pieces pieces;
+	private Colour toMove;
+	private CastlingRights castlingRights;
+	private File enPassantFile;
+	private int moveNumber;
+	private int stalemateClock;
+	private long key;
+
+	// the undo stack: codes made, keys and packed states before each move
+	private int depth = 0;
+	private int[] codes;
+	private int[] states;
+	private long[] keys;
+
+	public PositionCursor(Position position) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		pieces = position.activePieces().mutableCopy();
+		toMove = position.toMove;
+		castlingRights = position.castlingRights;
+		enPassantFile = position.enPassantFile;
+		moveNumber = position.moveNumber;
+		stalemateClock = position.stalemateClock;
+		key = position.key();
+		codes = new int[INITIAL_CAPACITY];
+		states = new int[INITIAL_CAPACITY];
+		keys = new long[INITIAL_CAPACITY];
+	}
+
+	private PositionCursor(PositionCursor that) {
+		pieces = that.pieces.mutableCopy();
+		toMove = that.toMove;
+		castlingRights = that.castlingRights;
+		enPassantFile = that.enPassantFile;
+		moveNumber = that.moveNumber;
+		stalemateClock = that.stalemateClock;
+		key = that.key;
+		depth = that.depth;
+		codes = that.codes.clone();
+		states = that.states.clone();
+		keys = that.keys.clone();
+	}
+
+	public Colour toMove() {
+		return toMove;
+	}
+
+	public CastlingRights castlingRights() {
+		return castlingRights;
+	}
+
+	public File enPassantFile() {
+		return enPassantFile;
+	}
+
+	public int moveNumber() {
+		return moveNumber;
+	}
+
+	public int stalemateClock() {
+		return stalemateClock;
+	}
+
+	// matches the key of the equivalent position
+	public long key() {
+		return key;
+	}
+
+	// the number of moves that may be popped
+	public int depth() {
+		return depth;
+	}
+
+	// writes the codes of the legal moves, see PositionMoves.generate
+	public int generate(int[] out, int offset) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		if (offset < 0 || out.length - offset < MoveGenerator.MAX_MOVES) throw new IllegalArgumentException("insufficient space");
+		return MoveGenerator.generate(pieces, toMove, castlingRights, enPassantFile, -1L, out, offset);
+	}
+
+	// writes the codes of the legal captures and promotions only, in order of most valuable victim, then least valuable attacker
+	public int generateCaptures(int[] out, int offset) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		if (offset < 0 || out.length - offset < MoveGenerator.MAX_MOVES) throw new IllegalArgumentException("insufficient space");
+		return MoveGenerator.generateCaptures(pieces, toMove, enPassantFile, out, offset);
+	}
+
+	public void push(int code) {
+		if (depth == codes.length) grow();
+		codes[depth] = code;
+		states[depth] = state();
+		keys[depth] = key;
+		depth++;
+
+		// as per the position constructor
+		Move move = PositionMoves.codeMove(code);
+		MovePieces movePieces = PositionMoves.codePieces(code);
+		Colour moved = toMove;
+		castlingRights = castlingRights.after(move);
+		if (moved.white) moveNumber++;
+		stalemateClock = movePieces.moved == PieceType.PAWN || movePieces.captured != null ? 0 : stalemateClock + 1;
+		toMove = moved.opposite();
+		pieces.make(moved, move, movePieces);
+		enPassantFile = MoveGenerator.enPassantFile(pieces, toMove, movePieces.moved == PieceType.PAWN && !move.intermediateSquares.isEmpty() ? move.from.file : null);
+		key = pieces.key() ^ Zobrist.state(toMove, castlingRights, enPassantFile);
+	}
+
+	// passes the move to the opponent, as used by null-move pruning; the side to move must not be in check
+	public void pushNull() {
+		if (depth == codes.length) grow();
+		codes[depth] = PositionMoves.NO_CODE;
+		states[depth] = state();
+		keys[depth] = key;
+		depth++;
+
+		Colour moved = toMove;
+		enPassantFile = null;
+		if (moved.white) moveNumber++;
+		stalemateClock++;
+		toMove = moved.opposite();
+		key = pieces.key() ^ Zobrist.state(toMove, castlingRights, enPassantFile);
+	}
+
+	public void pop() {
+		if (depth == 0) throw new IllegalStateException("no move to pop");
+		depth--;
+		int code = codes[depth];
+		int state = states[depth];
+		Colour moved = toMove.opposite();
+		if (code != PositionMoves.NO_CODE) pieces.takeBack(moved, PositionMoves.codeMove(code), PositionMoves.codePieces(code));
+		toMove = moved;
+		if (moved.white) moveNumber--;
+		castlingRights = CastlingRights.valueOf(state & 0xf);
+		int file = state >> 4 & 0xf;
+		enPassantFile = file == 0 ? null : File.valueOf(file - 1);
+		stalemateClock = state >>> 8;
+		key = keys[depth];
+	}
+
+	// whether the side to move is in check
+	public boolean isCheck() {
+		return MoveGenerator.isCheck(pieces, toMove);
+	}
+
+	// the static exchange evaluation of a legal move code in the current state, see Board.see
+	public int see(int code) {
+		Move move = PositionMoves.codeMove(code);
+		return MoveGenerator.see(pieces, move.from.ordinal, move.to.ordinal, PositionMoves.codePieces(code).promotion);
+	}
+
+	// the squares occupied by the piece, as bits indexed by square ordinal
+	public long mask(Piece piece) {
+		if (piece == null) throw new IllegalArgumentException("null piece");
+		return pieces.mask(piece);
+	}
+
+	// the squares occupied by pieces of the colour, as bits indexed by square ordinal
+	public long mask(Colour colour) {
+		if (colour == null) throw new IllegalArgumentException("null colour");
+		return pieces.mask(colour);
+	}
+
+	public long occupied() {
+		return pieces.occupied();
+	}
+
+	// the code of a move made on the cursor, zero being the earliest, or PositionMoves.NO_CODE for a null move
+	public int code(int index) {
+		if (index < 0 || index >= depth) throw new IllegalArgumentException("invalid index");
+		return codes[index];
+	}
+
+	// an independent cursor in the same state, with the same moves available to pop
+	public PositionCursor copy() {
+		return new PositionCursor(this);
+	}
+
+	public Pieces pieces() {
+		return pieces.immutable();
+	}
+
+	private void grow() {
+		int capacity = depth * 2;
+		codes = Arrays.copyOf(codes, capacity);
+		states = Arrays.copyOf(states, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+	}
+
+	private int state() {
+		return castlingRights.ordinal() | (enPassantFile == null ? 0 : enPassantFile.ordinal() + 1) << 4 | stalemateClock << 8;
+	}
+
+	// a new sequence starting with the current position
+	public Position toPosition() {
+		return new Sequence(pieces, toMove, castlingRights, enPassantFile, moveNumber, stalemateClock).position();
+	}
+
+}
@@ -0,0 +1,351 @@
+package com.tomgibara.chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// maps position keys to the games in which the positions occur, held in a file that is memory-mapped for lookup
+// games are identified by their ordinal among the games from which the index was built
+// the file holds a header, the posting lists of game ids, each sorted and without duplicates,
+// and a directory of entries ordered by key (unsigned), each giving the key and the end of its posting list
+// keys may collide (see Position.key), so a lookup may rarely include games that did not reach the position
+// lookups do not modify the index and may be made concurrently
+public final class PositionIndex {
+
+	static final int MAGIC = 0x43485049; // CHPI
+	static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 32;
+	private static final int ENTRY_BYTES = 16;
+	// the number of games whose positions are sorted together in memory before being written to a run
+	private static final int DEFAULT_RUN_GAMES = 1 << 16;
+	private static final int MAP_SHIFT = 30;
+	private static final int MAP_MASK = (1 << MAP_SHIFT) - 1;
+	private static final int[] NO_GAMES = new int[0];
+
+	// replays the games on the pool, which may be lazily parsed for this purpose (see PgnReader)
+	// the positions of each batch of games are sorted into a run written beside the index, the runs are then merged
+	// a game that cannot be replayed fails the build with an IllegalArgumentException
+	public static PositionIndex build(Iterable<Game> games, Path path, ForkJoinPool pool) throws IOException {
+		return build(games, path, pool, DEFAULT_RUN_GAMES);
+	}
+
+	static PositionIndex build(Iterable<Game> games, Path path, ForkJoinPool pool, int runGames) throws IOException {
+		if (games == null) throw new IllegalArgumentException("null games");
+		if (path == null) throw new IllegalArgumentException("null path");
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		Path dir = path.toAbsolutePath().getParent();
+		// bounds the games held in memory
+		int window = pool.getParallelism() * 2;
+		List<Future<Path>> futures = new ArrayList<>();
+		List<Path> runs = new ArrayList<>();
+		try {
+			Deque<Future<Path>> pending = new ArrayDeque<>();
+			List<Game> batch = new ArrayList<>();
+			int gameCount = 0;
+			for (Game game : games) {
+				if (gameCount == Integer.MAX_VALUE) throw new IllegalArgumentException("too many games");
+				batch.add(game);
+				gameCount++;
+				if (batch.size() < runGames) continue;
+				if (pending.size() == window) runs.add(await(pending.remove()));
+				pending.add(submit(pool, batch, gameCount - batch.size(), dir, futures));
+				batch = new ArrayList<>();
+			}
+			if (!batch.isEmpty()) pending.add(submit(pool, batch, gameCount - batch.size(), dir, futures));
+			while (!pending.isEmpty()) runs.add(await(pending.remove()));
+			merge(runs, path, dir, gameCount);
+		} finally {
+			// a cancelled task may still write its run, so outstanding tasks are awaited for their runs to be removed
+			for (Future<Path> future : futures) {
+				try {
+					Files.deleteIfExists(future.get());
+				} catch (ExecutionException | InterruptedException | IOException e) {
+					/* the run was not written or cannot be removed */
+				}
+			}
+		}
+		return open(path);
+	}
+
+	public static PositionIndex open(Path path) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES) throw new IOException("not a position index");
+			ByteBuffer[] regions = new ByteBuffer[(int) ((size - 1 >> MAP_SHIFT) + 1)];
+			for (int i = 0; i < regions.length; i++) {
+				long offset = (long) i << MAP_SHIFT;
+				regions[i] = channel.map(MapMode.READ_ONLY, offset, Math.min(1L << MAP_SHIFT, size - offset));
+			}
+			return new PositionIndex(regions, size);
+		}
+	}
+
+	private static Future<Path> submit(ForkJoinPool pool, List<Game> games, int firstId, Path dir, List<Future<Path>> futures) {
+		Future<Path> future = pool.submit(() -> run(games, firstId, dir));
+		futures.add(future);
+		return future;
+	}
+
+	private static Path await(Future<Path> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	// sorts the positions of the games and writes them to a run file: a count followed by key and id pairs
+	private static Path run(List<Game> games, int firstId, Path dir) throws IOException {
+		Postings postings = new Postings();
+		for (int i = 0; i < games.size(); i++) {
+			int id = firstId + i;
+			games.get(i).sequence().forEach(p -> postings.add(p.key(), id));
+		}
+		postings.sort();
+		int count = postings.distinct();
+		Path file = Files.createTempFile(dir, "positions", ".run");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				out.writeLong(postings.keys[i]);
+				out.writeInt(postings.ids[i]);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		return file;
+	}
+
+	// runs are merged in key order, equal keys in run order which is also game order
+	private static void merge(List<Path> paths, Path path, Path dir, int gameCount) throws IOException {
+		Path directory = Files.createTempFile(dir, "positions", ".dir");
+		List<Run> runs = new ArrayList<>();
+		try {
+			PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(paths.size(), 1), (a, b) -> {
+				int c = Long.compareUnsigned(a.key, b.key);
+				return c == 0 ? Integer.compare(a.index, b.index) : c;
+			});
+			for (Path run : paths) {
+				Run r = new Run(run, runs.size());
+				runs.add(r);
+				if (r.advance()) queue.add(r);
+			}
+			long keyCount = 0L;
+			long offset = HEADER_BYTES;
+			try (
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+					DataOutputStream entries = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory), 1 << 16))
+					) {
+				out.write(new byte[HEADER_BYTES]);
+				boolean first = true;
+				long key = 0L;
+				while (!queue.isEmpty()) {
+					Run run = queue.remove();
+					if (first || run.key != key) {
+						if (!first) {
+							entries.writeLong(key);
+							entries.writeLong(offset);
+							keyCount++;
+						}
+						key = run.key;
+						first = false;
+					}
+					out.writeInt(run.id);
+					offset += 4;
+					if (run.advance()) queue.add(run);
+				}
+				if (!first) {
+					entries.writeLong(key);
+					entries.writeLong(offset);
+					keyCount++;
+				}
+				entries.flush();
+				// align the directory
+				if ((offset & 7) != 0) {
+					out.writeInt(0);
+					offset += 4;
+				}
+				Files.copy(directory, out);
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(gameCount).putInt(0).putLong(keyCount).putLong(offset).flip();
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				while (header.hasRemaining()) channel.write(header, header.position());
+			}
+		} finally {
+			for (Run run : runs) run.close();
+			for (Path run : paths) Files.deleteIfExists(run);
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	private final ByteBuffer[] regions;
+	private final int gameCount;
+	private final long keyCount;
+	private final long directory;
+
+	private PositionIndex(ByteBuffer[] regions, long size) throws IOException {
+		this.regions = regions;
+		if (getInt(0) != MAGIC) throw new IOException("not a position index");
+		int version = getInt(4);
+		if (version != VERSION) throw new IOException("unsupported version " + version);
+		gameCount = getInt(8);
+		keyCount = getLong(16);
+		directory = getLong(24);
+		if (gameCount < 0 || keyCount < 0 || directory < HEADER_BYTES || (directory & 7) != 0 || directory + keyCount * ENTRY_BYTES != size) {
+			throw new IOException("invalid position index");
+		}
+	}
+
+	// the number of games from which the index was built
+	public int gameCount() {
+		return gameCount;
+	}
+
+	// the number of distinct position keys
+	public long positionCount() {
+		return keyCount;
+	}
+
+	// the ids of the games in which the position occurs, in ascending order
+	public int[] games(Position position) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		return games(position.key());
+	}
+
+	public int[] games(long key) {
+		long lo = 0L;
+		long hi = keyCount - 1;
+		while (lo <= hi) {
+			long mid = lo + hi >>> 1;
+			long entry = directory + mid * ENTRY_BYTES;
+			int c = Long.compareUnsigned(getLong(entry), key);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				long from = mid == 0 ? HEADER_BYTES : getLong(entry - ENTRY_BYTES + 8);
+				long to = getLong(entry + 8);
+				int[] ids = new int[(int) (to - from >> 2)];
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = getInt(from + ((long) i << 2));
+				}
+				return ids;
+			}
+		}
+		return NO_GAMES;
+	}
+
+	// values never straddle regions since they are aligned to their size
+
+	private int getInt(long offset) {
+		return regions[(int) (offset >>> MAP_SHIFT)].getInt((int) (offset & MAP_MASK));
+	}
+
+	private long getLong(long offset) {
+		return regions[(int) (offset >>> MAP_SHIFT)].getLong((int) (offset & MAP_MASK));
+	}
+
+	// key and id pairs accumulated in parallel arrays
+	private static final class Postings {
+
+		long[] keys = new long[1024];
+		int[] ids = new int[1024];
+		int size = 0;
+
+		void add(long key, int id) {
+			if (size == keys.length) {
+				if (size == Integer.MAX_VALUE - 8) throw new IllegalStateException("too many positions");
+				int length = (int) Math.min(size * 2L, Integer.MAX_VALUE - 8);
+				keys = Arrays.copyOf(keys, length);
+				ids = Arrays.copyOf(ids, length);
+			}
+			keys[size] = key;
+			ids[size] = id;
+			size++;
+		}
+
+		// ids are added in ascending order and the sort is stable, so they remain ascending for each key
+		void sort() {
+			Radix.sort(keys, ids, size);
+		}
+
+		// removes repeated pairs from the sorted postings, returning their number
+		int distinct() {
+			if (size == 0) return 0;
+			int count = 1;
+			for (int i = 1; i < size; i++) {
+				if (keys[i] == keys[count - 1] && ids[i] == ids[count - 1]) continue;
+				keys[count] = keys[i];
+				ids[count] = ids[i];
+				count++;
+			}
+			return size = count;
+		}
+
+	}
+
+	private static final class Run {
+
+		final DataInputStream in;
+		final int index;
+		int remaining;
+		long key;
+		int id;
+
+		Run(Path path, int index) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+			this.index = index;
+			try {
+				remaining = in.readInt();
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		boolean advance() throws IOException {
+			if (remaining == 0) return false;
+			key = in.readLong();
+			id = in.readInt();
+			remaining--;
+			return true;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.tomgibara.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+// an off-heap map from positions, each identified by a fixed number of longs, to long values that are summed
+// it has the same layout, spilling and concurrency as a PositionSet, with a value following each key
+public final class PositionMap implements Closeable {
+
+	@FunctionalInterface
+	public interface EntryConsumer {
+
+		void accept(long[] key, long value);
+
+	}
+
+	private final OffHeapTable table;
+
+	public PositionMap(int keyWords, long capacity, Path directory) {
+		table = new OffHeapTable(keyWords, true, capacity, directory);
+	}
+
+	public int keyWords() {
+		return table.keyWords();
+	}
+
+	// adds the value to any already held in memory for the key; values in spilled runs are summed on traversal
+	public void add(long[] key, long value) {
+		table.add(key, value);
+	}
+
+	// positions are identified by their key (see Position.key) in single word sets,
+	// or exactly by their packing without clocks (see PackedPosition.withoutClocks) in maps of that width
+	public void add(Position position, long value) {
+		table.add(table.key(position), value);
+	}
+
+	public long memorySize() {
+		return table.memorySize();
+	}
+
+	public int runCount() {
+		return table.runCount();
+	}
+
+	// visits every distinct key with the sum of its values, see PositionSet.forEach
+	public long forEach(EntryConsumer consumer) throws IOException {
+		return table.forEach(consumer);
+	}
+
+	@Override
+	public void close() throws IOException {
+		table.close();
+	}
+
+}
@@ -1,7 +1,5 @@
 package com.tomgibara.chess;
 
-import static com.tomgibara.chess.Square.at;
-
 import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -13,18 +11,20 @@ import java.util.stream.Stream;
 
 public final class PositionMoves {
 
-	static final int NO_CODE = -1;
-	private static final int AMBIGUOUS_CODE = -2;
+	// statuses returned in place of a code when notation cannot be resolved
+	public static final int NO_CODE = -1;
+	public static final int AMBIGUOUS_CODE = -2;
+	public static final int MALFORMED_CODE = -3;
 
-	private static final int MAX_MOVES = 256;
 	private static final int PIECE_BITS = 6;
 	private static final int PIECE_MASK = (1 << PIECE_BITS) - 1;
 	
 	private static final Comparator<? super Move> moveDistComp = (m1, m2) -> m1.spannedSquares.size() - m2.spannedSquares.size();
 
+	// sized to the most moves the generator can write, so that every position's moves fit
 	private static ThreadLocal<int[]> tmpCodes = new ThreadLocal<int[]>() {
 		protected int[] initialValue() {
-			return new int[MAX_MOVES];
+			return new int[MoveGenerator.MAX_MOVES];
 		}
 	};
 	
@@ -32,11 +32,11 @@ public final class PositionMoves {
 		return new SquareMap<List<Move>>(new List[64], 0);
 	}
 	
-	static Move codeMove(int code) {
+	public static Move codeMove(int code) {
 		return Move.forOrdinal(code >> PIECE_BITS);
 	}
 	
-	static MovePieces codePieces(int code) {
+	public static MovePieces codePieces(int code) {
 		return MovePieces.from(code & PIECE_MASK);
 	}
 	
@@ -57,10 +57,29 @@ public final class PositionMoves {
 	private final int[] codes;
 	private MoveList moveList = null;
 
+	// writes the codes of the legal moves into the array from the offset, without allocating, and returns how many were written
+	// the array must have space for the greatest number of moves possible in any position
+	public static int generate(Position position, int[] out, int offset) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		if (out == null) throw new IllegalArgumentException("null out");
+		if (offset < 0 || out.length - offset < MoveGenerator.MAX_MOVES) throw new IllegalArgumentException("insufficient space");
+		return MoveGenerator.generate(position.activePieces(), position.toMove, position.castlingRights, position.enPassantFile, -1L, out, offset);
+	}
+
+	// as generate, but only captures and promotions are written, most valuable victim first, then least valuable attacker
+	public static int generateCaptures(Position position, int[] out, int offset) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		if (out == null) throw new IllegalArgumentException("null out");
+		if (offset < 0 || out.length - offset < MoveGenerator.MAX_MOVES) throw new IllegalArgumentException("insufficient space");
+		return MoveGenerator.generateCaptures(position.activePieces(), position.toMove, position.enPassantFile, out, offset);
+	}
+
 	PositionMoves(Position position, Board board, Area area) {
 		this.position = position;
 		this.area = area;
-		this.codes = new MovePopulator(board, position.constraint, area).moves();
+		int[] codes = tmpCodes.get();
+		int count = MoveGenerator.generate(board.pieces, position.toMove, position.castlingRights, position.enPassantFile, area.getSquares().mask(), codes, 0);
+		this.codes = Arrays.copyOf(codes, count);
 	}
 	
 	public int moveCount() {
@@ -153,6 +172,10 @@ public final class PositionMoves {
 		return makeChecked( codeMatching(move.trim()) );
 	}
 
+	Position make(CharSequence move) {
+		return makeChecked( codeMatching(move) );
+	}
+
 	Position makeChecked(int code) {
 		if (code == NO_CODE) throw new IllegalArgumentException("not a legal move");
 		if (code == AMBIGUOUS_CODE) throw new IllegalArgumentException("ambiguous move");
@@ -180,7 +203,8 @@ public final class PositionMoves {
 		return null;
 	}
 	
-	int indexOfCode(int code) {
+	// the index of the move with the code, or a negative value if there is no such move
+	public int indexOfCode(int code) {
 		return Arrays.binarySearch(codes, code);
 	}
 	
@@ -196,205 +220,139 @@ public final class PositionMoves {
 		return AMBIGUOUS_CODE;
 	}
 	
-	private int[] codesMatching(PieceType moved, Square to, PieceType promotion) {
-		int[] tmp = tmpCodes.get();
-		int count = 0;
-		for (int i = 0; i < codes.length; i++) {
-			int code = codes[i];
-			if (codeMove(code).to != to) continue;
-			MovePieces pieces = codePieces(code);
-			if (pieces.moved != moved) continue;
-			if (pieces.promotion != promotion) continue;
-			tmp[count++] = code;
+	// tokens may be slices of a larger buffer, so no trimming is applied
+	int codeMatching(CharSequence move) {
+		int code = resolve(codes, 0, codes.length, move, 0, move.length());
+		//TODO verify check & mate
+		switch (code) {
+		case NO_CODE: throw new IllegalArgumentException("not a legal move: " + move);
+		case AMBIGUOUS_CODE: throw new IllegalArgumentException("ambiguous move: " + move);
+		case MALFORMED_CODE: throw new IllegalArgumentException("invalid move: " + move);
+		default: return code;
 		}
-		return Arrays.copyOf(tmp, count);
 	}
-	
-	int codeMatching(String move) {
-		int len = move.length();
-		boolean check;
-		boolean mate;
-		if (move.endsWith("#")) {
-			check = true;
-			mate = true;
-			len -= 1;
-		} else if (move.endsWith("++")) {
-			check = true;
-			mate = true;
-			len -= 2;
-		} else if (move.endsWith("+")) {
-			check = true;
-			mate = false;
-			len -= 1;
-		} else {
-			check = false;
-			mate = false;
-		}
-		// this is what we're searching for...
-		final int code;
-		if ((move.startsWith("0-0") || move.startsWith("O-O")) && len == 3) {
-			// castle king side
-			Rank rank = Rank.castleRank(position.toMove);
-			Move m = Move.between(at(File.FL_E, rank), at(File.FL_G, rank));
-			code = codeMatching(m);
-		} else if ((move.startsWith("0-0-0") || move.startsWith("O-O-O")) && len == 5) {
-			// castle queen side
-			Rank rank = Rank.castleRank(position.toMove);
-			Move m = Move.between(at(File.FL_E, rank), at(File.FL_C, rank));
-			code = codeMatching(m);
-		} else {
-			if (len < 2) throw new IllegalArgumentException();
-			// check for promotion
-			PieceType promo;
-			if (move.charAt(len - 2) == '=') {
-				char pc = move.charAt(len - 1);
-				promo = PieceType.valueOf(pc);
-				//TODO actually an optional check - move won't be found anyway
-				if (!promo.promotion) throw new IllegalArgumentException("invalid promotion");
-				len -= 2;
-			} else {
-				promo = null;
-			}
-			// target square
-			if (len < 2) throw new IllegalArgumentException();
-			Square to = at( move.substring(len - 2, len) ); //TODO could avoid string creation
-			len -= 2;
-			// capture
-			boolean capture;
-			File f;
-			Rank r;
-			int[] matches;
-			if (len == 0) {
-				// pawn move
-				capture = false;
-				f = null;
-				r = null;
-				matches = codesMatching(PieceType.PAWN, to, promo);
+
+	// resolves a move in standard algebraic notation against the codes of the moves available in a position
+	// the notation is read from the characters between start and start + length; suffixed check, mate and annotation symbols are ignored
+	// returns the matching code or a negative status, without allocating or throwing for unresolvable notation
+	public static int resolve(int[] codes, int offset, int count, CharSequence san, int start, int length) {
+		if (codes == null) throw new IllegalArgumentException("null codes");
+		if (san == null) throw new IllegalArgumentException("null san");
+		if (offset < 0 || count < 0 || offset + count > codes.length) throw new IllegalArgumentException("invalid codes range");
+		if (start < 0 || length < 0 || start + length > san.length()) throw new IllegalArgumentException("invalid san range");
+		int from = offset;
+		int to = offset + count;
+		int end = start + length;
+		while (end > start && isSuffix(san.charAt(end - 1))) end--;
+		if (end - start < 2) return MALFORMED_CODE;
+
+		// castling
+		char first = san.charAt(start);
+		if (first == 'O' || first == '0') {
+			final int file;
+			if (isCastling(san, start, end, first, 3)) {
+				file = 6;
+			} else if (isCastling(san, start, end, first, 5)) {
+				file = 2;
 			} else {
-				capture = move.charAt(len - 1) == 'x';
-				if (capture) {
-					len -= 1;
-					if (len == 0) throw new IllegalArgumentException("capture without origin");
-				}
-				// origin given
-				char c = move.charAt(0);
-				if (Character.isUpperCase(c)) {
-					// piece move or capture
-					PieceType moved = PieceType.valueOf(c);
-					//TODO - again optional check - this will never match a move
-					if (promo != null) throw new IllegalArgumentException("non-pawn promotion");
-					// specifier
-					switch (len) {
-					case 1 : {
-						f = null;
-						r = null;
-						break;
-					}
-					case 2 : {
-						char k = move.charAt(1);
-						if (Character.isDigit(k)) {
-							f = null;
-							r = Rank.valueOf(k);
-						} else {
-							f = File.valueOf(k);
-							r = null;
-						}
-						break;
-					}
-					case 3 : {
-						f = File.valueOf(move.charAt(1));
-						r = Rank.valueOf(move.charAt(2));
-					}
-					default: throw new IllegalArgumentException("invalid piece specifier");
-					}
-					// matches
-					matches = codesMatching(moved, to, null);
-				} else {
-					// pawn move or capture
-					if (len != 1) throw new IllegalArgumentException("invalid pawn specifier");
-					f = File.valueOf(c);
-					r = null;
-					matches = codesMatching(PieceType.PAWN, to, promo);
-				}
-			}
-			// matching
-			switch (matches.length) {
-			case 0 :
-				code = NO_CODE;
-				break;
-			case 1 : {
-				int match = matches[0];
-				Square s = codeMove(match).from;
-				if (f != null && s.file != f || r != null && s.rank != r) {
-					code = NO_CODE;
-				} else {
-					code = match;
-				}
-				break;
+				return MALFORMED_CODE;
 			}
-			default:
-				int tmp = NO_CODE;
-				for(int match : matches) {
-					Square s = codeMove(match).from;
-					if (f != null && s.file != f || r != null && s.rank != r) continue;
-					if (tmp != NO_CODE) {
-						tmp = AMBIGUOUS_CODE;
-						break;
-					} else {
-						tmp = match;
-					}
-				}
-				code = tmp;
+			for (int i = from; i < to; i++) {
+				int code = codes[i];
+				int origin = code >> 12;
+				int target = code >> 6 & 63;
+				if ((origin & 7) == 4 && target == (origin & ~7 | file) && codePieces(code).moved == PieceType.KING) return code;
 			}
-			boolean cp = code != NO_CODE && code != AMBIGUOUS_CODE && isCapture(codeMove(code), codePieces(code));
-			if (cp && !capture) throw new IllegalArgumentException("move is a capture");
-			if (!cp && capture) throw new IllegalArgumentException("move is not a capture");
+			return NO_CODE;
 		}
-		//TODO verify check & mate
-		if (code == NO_CODE) throw new IllegalArgumentException("not a legal move: " + move);
-		if (code == AMBIGUOUS_CODE) throw new IllegalArgumentException("ambiguous move: " + move);
-		return code;
-	}
-	
-	private static class MovePopulator implements Consumer<Square> {
 
-		private final Board board;
-		private final MoveConstraint constraint;
-		private final Squares checkers;
-		private final Squares interpose;
-		
-		int count = 0;
-		int[] codes = tmpCodes.get();
-		
-		MovePopulator(Board board, MoveConstraint constraint, Area area) {
-			this.board = board;
-			this.constraint = constraint;
+		// promotion
+		PieceType promotion = null;
+		if (end - start >= 4 && san.charAt(end - 2) == '=') {
+			promotion = pieceType(san.charAt(end - 1));
+			if (promotion == null || !promotion.promotion) return MALFORMED_CODE;
+			end -= 2;
+		}
 
-			SquareMap<Move> checks = board.withColour(constraint.toMove).checks();
-			this.checkers = checks.keySet();
-			this.interpose = checks.size() == 1 ? checks.get(checkers.only()).intermediateSquares : Squares.empty();
+		// target square
+		int targetFile = san.charAt(end - 2) - 'a';
+		int targetRank = san.charAt(end - 1) - '1';
+		if (targetFile < 0 || targetFile > 7 || targetRank < 0 || targetRank > 7) return MALFORMED_CODE;
+		int target = targetRank << 3 | targetFile;
+		end -= 2;
 
-			Squares squares = area.getSquares().intersect(board.withColour(constraint.toMove).occupiedSquares());
-			Square square = squares.only();
-			if (square == null) {
-				squares.forEach(this);
+		// moved piece, disambiguation and capture
+		int p = start;
+		PieceType moved = p < end ? pieceType(san.charAt(p)) : null;
+		if (moved == null) {
+			moved = PieceType.PAWN;
+		} else {
+			p++;
+		}
+		boolean capture = end > p && san.charAt(end - 1) == 'x';
+		if (capture) end--;
+		int originFile = -1;
+		int originRank = -1;
+		for (; p < end; p++) {
+			char c = san.charAt(p);
+			if (c >= 'a' && c <= 'h' && originFile < 0 && originRank < 0) {
+				originFile = c - 'a';
+			} else if (c >= '1' && c <= '8' && originRank < 0) {
+				originRank = c - '1';
 			} else {
-				accept(square);
+				return MALFORMED_CODE;
 			}
-
+		}
+		if (moved == PieceType.PAWN) {
+			if (capture ? originFile < 0 : originRank >= 0) return MALFORMED_CODE;
+		} else {
+			if (promotion != null) return MALFORMED_CODE;
 		}
 
-		@Override
-		public void accept(Square s) {
-			count = Move.possibleMovesFrom(s).populateMoves(codes, count, board, constraint, checkers, interpose);
+		// matching
+		int match = NO_CODE;
+		for (int i = from; i < to; i++) {
+			int code = codes[i];
+			if ((code >> 6 & 63) != target) continue;
+			MovePieces pieces = codePieces(code);
+			if (pieces.moved != moved || pieces.promotion != promotion) continue;
+			int origin = code >> 12;
+			if (originFile >= 0 && (origin & 7) != originFile) continue;
+			if (originRank >= 0 && origin >> 3 != originRank) continue;
+			boolean captures = moved == PieceType.PAWN ? (origin & 7) != targetFile : pieces.captured != null;
+			if (captures != capture) continue;
+			if (match != NO_CODE) return AMBIGUOUS_CODE;
+			match = code;
 		}
-		
-		int[] moves() {
-			return Arrays.copyOfRange(codes, 0, count);
+		return match;
+	}
+
+	private static boolean isSuffix(char c) {
+		return c == '+' || c == '#' || c == '!' || c == '?';
+	}
+
+	// whether the characters are a castling of the given length, written with the letter O or the digit zero
+	private static boolean isCastling(CharSequence san, int start, int end, char c, int length) {
+		if (end - start != length) return false;
+		for (int i = 0; i < length; i++) {
+			if (san.charAt(start + i) != ((i & 1) == 0 ? c : '-')) return false;
 		}
+		return true;
+	}
 
+	// null if the character does not identify a piece type
+	private static PieceType pieceType(char c) {
+		switch (c) {
+		case 'P' : return PieceType.PAWN;
+		case 'N' : return PieceType.KNIGHT;
+		case 'B' : return PieceType.BISHOP;
+		case 'R' : return PieceType.ROOK;
+		case 'Q' : return PieceType.QUEEN;
+		case 'K' : return PieceType.KING;
+		default: return null;
+		}
 	}
-	
+
 	private static class MoveList extends AbstractList<Move> {
 		
 		private final int[] codes;
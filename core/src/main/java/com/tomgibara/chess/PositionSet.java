@@ -0,0 +1,59 @@
+package com.tomgibara.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// an off-heap set of positions, each identified by a fixed number of longs, for deduplicating very many positions
+// keys are held in open-addressing tables outside the heap; when the capacity is reached, keys are spilled to sorted
+// run files in the directory and these are merged with the keys remaining in memory when the set is traversed,
+// which is the only point at which a key that was spilled and then added again is deduplicated
+// keys may be added concurrently from many threads; closing the set removes its run files
+public final class PositionSet implements Closeable {
+
+	private final OffHeapTable table;
+
+	// a capacity of keys are held in memory before spilling
+	public PositionSet(int keyWords, long capacity, Path directory) {
+		table = new OffHeapTable(keyWords, false, capacity, directory);
+	}
+
+	// the number of longs in each key
+	public int keyWords() {
+		return table.keyWords();
+	}
+
+	// the first keyWords of the array are copied
+	public void add(long[] key) {
+		table.add(key, 0L);
+	}
+
+	// positions are identified by their key (see Position.key) in single word sets,
+	// or exactly by their packing without clocks (see PackedPosition.withoutClocks) in sets of that width
+	public void add(Position position) {
+		table.add(table.key(position), 0L);
+	}
+
+	public long memorySize() {
+		return table.memorySize();
+	}
+
+	public int runCount() {
+		return table.runCount();
+	}
+
+	// visits every distinct key, returning their number; the array passed to the consumer is reused between keys
+	// keys are visited in ascending order, comparing words as unsigned, most significant first;
+	// runs beyond a fixed number are first merged together on disk; not safe to call concurrently with additions
+	public long forEach(Consumer<long[]> consumer) throws IOException {
+		if (consumer == null) throw new IllegalArgumentException("null consumer");
+		return table.forEach((key, value) -> consumer.accept(key));
+	}
+
+	@Override
+	public void close() throws IOException {
+		table.close();
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.tomgibara.chess;
+
+import java.util.Arrays;
+
+// sorts of primitive arrays that avoid boxing and comparators
+final class Radix {
+
+	// a stable sort of the first size keys in unsigned order, byte by byte, permuting the values with them
+	static void sort(long[] keys, int[] values, int size) {
+		long[] fromKeys = keys;
+		int[] fromValues = values;
+		long[] toKeys = new long[size];
+		int[] toValues = new int[size];
+		int[] counts = new int[257];
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < size; i++) counts[(int) (fromKeys[i] >>> shift & 0xff) + 1]++;
+			// the keys already agree on this byte
+			if (size == 0 || counts[(int) (fromKeys[0] >>> shift & 0xff) + 1] == size) continue;
+			for (int i = 1; i < 257; i++) counts[i] += counts[i - 1];
+			for (int i = 0; i < size; i++) {
+				int j = counts[(int) (fromKeys[i] >>> shift & 0xff)]++;
+				toKeys[j] = fromKeys[i];
+				toValues[j] = fromValues[i];
+			}
+			long[] k = fromKeys; fromKeys = toKeys; toKeys = k;
+			int[] v = fromValues; fromValues = toValues; toValues = v;
+		}
+		if (fromKeys != keys) {
+			System.arraycopy(fromKeys, 0, keys, 0, size);
+			System.arraycopy(fromValues, 0, values, 0, size);
+		}
+	}
+
+	private Radix() { }
+
+}
@@ -11,13 +11,22 @@ public class Sequence {
 	private final List<Position> positions;
 	public final boolean mutable;
 	private int index = 0;
+	// snapshots of the pieces at every interval plies, taken as positions are reached, if the interval is positive
+	private int checkpointInterval = 0;
+	private Pieces[] checkpoints = null;
+	// the keys of the positions, preceded by the keys of any earlier positions from which the sequence continues
+	// that might still be repeated, being within reach of the stalemate clock
+	private long[] keys;
+	private int history = 0;
 
 	// used to create a new continuation of a sequence at a specific position
 	private Sequence(Sequence that) {
 		pieces = that.pieces.mutableCopy();
 		positions = new ArrayList<>();
-		positions.add( that.position().copy(this) );
+		Position origin = that.position();
+		positions.add( origin.copy(this) );
 		mutable = true;
+		inheritKeys(origin, false);
 	}
 
 	// used to create a new continuation of a sequence after a particular move
@@ -27,6 +36,7 @@ public class Sequence {
 		positions = new ArrayList<>();
 		positions.add( position.copy(this, code) );
 		mutable = true;
+		inheritKeys(position, true);
 	}
 	
 	// used to create a copy of a sequence
@@ -41,6 +51,8 @@ public class Sequence {
 		}
 		this.positions = positions;
 		this.mutable = mutable;
+		keys = that.keys.clone();
+		history = that.history;
 	}
 
 	public Sequence() {
@@ -65,6 +77,8 @@ public class Sequence {
 		positions = new ArrayList<>();
 		positions.add( new Position(this, toMove, castlingRights, enPassantFile, moveNumber, stalemateClock) );
 		mutable = true;
+		keys = new long[16];
+		keys[0] = position().key();
 	}
 	
 	public int length() {
@@ -76,12 +90,12 @@ public class Sequence {
 	}
 	
 	public Position initialPosition() {
-		index = 0;
+		toIndex(0);
 		return position();
 	}
 	
 	public Position finalPosition() {
-		index = positions.size() - 1;
+		toIndex(positions.size() - 1);
 		return position();
 	}
 	
@@ -114,6 +128,22 @@ public class Sequence {
 		if (toIndex != fromIndex) forEachImpl(action, fromIndex, toIndex);
 	}
 
+	// the number of plies between checkpoints, zero if there are none
+	public int checkpointInterval() {
+		return owner().checkpointInterval;
+	}
+
+	// with a positive interval, moving between distant positions first restores the nearest snapshot of the pieces;
+	// applies to the sequence in which the positions are made, which is shared with immutable copies
+	public void setCheckpointInterval(int interval) {
+		if (interval < 0) throw new IllegalArgumentException("negative interval");
+		Sequence owner = owner();
+		if (interval == owner.checkpointInterval) return;
+		owner.checkpointInterval = interval;
+		owner.checkpoints = null;
+		owner.checkpoint();
+	}
+
 	public Sequence immutable() {
 		return mutable ? new Sequence(this, false) : this;
 	}
@@ -133,6 +163,10 @@ public class Sequence {
 			p = position.copy(this, code);
 			positions.add(p);
 			index ++; // since position copy will have advanced state of pieces
+			checkpoint();
+			int count = history + positions.size();
+			if (count > keys.length) keys = Arrays.copyOf(keys, count * 2);
+			keys[count - 1] = p.key();
 		} else {
 			p = new Sequence(position, code).position();
 		}
@@ -142,31 +176,108 @@ public class Sequence {
 	int index() {
 		return index;
 	}
+
+	// counts earlier positions with the same key as that at the index, looking back no further than the clock allows
+	// and stopping once the limit is reached; positions repeat with the same side to move, so only alternate keys are compared
+	int repetitions(int index, int clock, int limit) {
+		int i = history + index;
+		long key = keys[i];
+		int earliest = Math.max(i - clock, 0);
+		int count = 0;
+		for (int j = i - 2; j >= earliest && count < limit; j -= 2) {
+			if (keys[j] == key) count++;
+		}
+		return count;
+	}
 	
 	void toIndex(int toIndex) {
 		if (index == toIndex) return;
 
+		if (checkpointInterval > 0) restore(toIndex);
+
 		while (index > toIndex) { // work backwards
 			positions.get(index--).unapply(pieces);
+			checkpoint();
 		}
 
 		while (index < toIndex) { // work forwards
 			positions.get(++index).apply(pieces);
+			checkpoint();
 		}
 	}
 
 	void discard(int fromIndex) {
+		// pieces must not be left in the state of a discarded position
+		if (index >= fromIndex) toIndex(Math.max(fromIndex - 1, 0));
+		if (checkpoints != null) {
+			for (int i = (fromIndex + checkpointInterval - 1) / checkpointInterval; i < checkpoints.length; i++) {
+				checkpoints[i] = null;
+			}
+		}
 		int size = positions.size();
+		// the sequence can no longer restore the pieces of discarded positions, so each keeps a copy for comparison
+		Pieces discarded = pieces.mutableCopy();
+		if (index >= fromIndex) positions.get(index).markAsDiscarded(discarded.immutable());
+		for (int i = index + 1; i < size; i++) {
+			Position position = positions.get(i);
+			position.apply(discarded);
+			if (i >= fromIndex) position.markAsDiscarded(discarded.immutable());
+		}
 		if (fromIndex + 1 == size) {
-			Position position = positions.remove(fromIndex);
-			position.markAsDiscarded();
+			positions.remove(fromIndex);
 		} else {
 			List<Position> list = fromIndex == 0 ? positions : positions.subList(fromIndex, size);
-			list.forEach(p -> p.markAsDiscarded());
 			list.clear();
 		}
 	}
 
+	// takes the keys preceding the first position from the sequence of its origin, which may be included
+	private void inheritKeys(Position origin, boolean inclusive) {
+		Sequence sequence = origin.sequence;
+		int end = sequence.history + origin.index() + (inclusive ? 1 : 0);
+		int count = Math.min(end, origin.stalemateClock + 1);
+		keys = new long[count + 16];
+		System.arraycopy(sequence.keys, end - count, keys, 0, count);
+		history = count;
+		keys[count] = position().key();
+	}
+
+	// positions are made and replayed in this sequence, immutable copies share them
+	private Sequence owner() {
+		return positions.get(0).sequence;
+	}
+
+	// records the pieces if the current index is due a checkpoint
+	private void checkpoint() {
+		if (checkpointInterval == 0 || index % checkpointInterval != 0) return;
+		int slot = index / checkpointInterval;
+		if (checkpoints == null) {
+			checkpoints = new Pieces[Math.max(slot + 1, 8)];
+		} else if (slot >= checkpoints.length) {
+			checkpoints = Arrays.copyOf(checkpoints, Math.max(slot + 1, checkpoints.length * 2));
+		}
+		if (checkpoints[slot] == null) checkpoints[slot] = pieces.immutable();
+	}
+
+	// restores the checkpoint nearest the index if it is closer than the current position
+	private void restore(int toIndex) {
+		if (checkpoints == null) return;
+		int distance = Math.abs(index - toIndex);
+		int below = toIndex / checkpointInterval;
+		int best = -1;
+		for (int slot = below; slot <= below + 1 && slot < checkpoints.length; slot++) {
+			if (checkpoints[slot] == null) continue;
+			int d = Math.abs(slot * checkpointInterval - toIndex);
+			if (d < distance) {
+				distance = d;
+				best = slot;
+			}
+		}
+		if (best < 0) return;
+		pieces.restore(checkpoints[best]);
+		index = best * checkpointInterval;
+	}
+
 	private void forEachImpl(Consumer<Position> action, int fromIndex, int toIndex) {
 		for (int i = fromIndex; i < toIndex; i++) {
 			action.accept(positions.get(i));
@@ -0,0 +1,138 @@
+package com.tomgibara.chess;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// a fixed-size off-heap hash table keyed by 64-bit position keys, safe for concurrent use without locking
+// each entry is stored as (key ^ data, data) so that a torn or interleaved write fails verification and reads as a miss
+// entries are stamped with a generation, advanced between searches, so that those left by earlier searches are replaced first
+public final class TranspositionTable {
+
+	public static final int MAX_DEPTH = 254;
+	public static final long MAX_PAYLOAD = (1L << 48) - 1;
+
+	private static final int ENTRY_BYTES = 16;
+	private static final int BUCKET_ENTRIES = 4; // one cache line per bucket
+	private static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+	private static final int SEGMENT_BITS = 24; // 1GB per buffer
+	private static final int DEPTH_BITS = 8;
+	private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+	private static final int GENERATION_BITS = 8;
+	private static final int GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+	// a bound for the same position is only kept from being overwritten by an entry this much deeper
+	private static final int DEPTH_MARGIN = 3;
+	// how many plies of depth each generation of age is worth when choosing an entry to replace
+	private static final int AGE_DEPTH = 8;
+
+	// data packs the payload above the generation above the depth; the depth is offset so that data is never zero
+	public static int depth(long data) {
+		return (int) (data & DEPTH_MASK) - 1;
+	}
+
+	public static long payload(long data) {
+		return data >>> DEPTH_BITS + GENERATION_BITS;
+	}
+
+	private static int generation(long data) {
+		return (int) (data >>> DEPTH_BITS) & GENERATION_MASK;
+	}
+
+	private final ByteBuffer[] segments;
+	private final long bucketMask;
+	private final int segmentMask;
+	private volatile int generation = 0;
+
+	public TranspositionTable(int megabytes) {
+		if (megabytes < 1) throw new IllegalArgumentException("megabytes not positive");
+		long buckets = Long.highestOneBit((long) megabytes << 20) / BUCKET_BYTES;
+		int segmentBuckets = (int) Math.min(buckets, 1L << SEGMENT_BITS);
+		segments = new ByteBuffer[(int) (buckets / segmentBuckets)];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = ByteBuffer.allocateDirect(segmentBuckets * BUCKET_BYTES).order(ByteOrder.nativeOrder());
+		}
+		bucketMask = buckets - 1;
+		segmentMask = segmentBuckets - 1;
+	}
+
+	public long capacity() {
+		return (bucketMask + 1) * BUCKET_ENTRIES;
+	}
+
+	public int megabytes() {
+		return (int) ((bucketMask + 1) * BUCKET_BYTES >> 20);
+	}
+
+	// returns zero if no entry is stored for the key
+	public long probe(long key) {
+		long bucket = key & bucketMask;
+		ByteBuffer buffer = segments[(int) (bucket >>> SEGMENT_BITS)];
+		int offset = ((int) bucket & segmentMask) * BUCKET_BYTES;
+		for (int i = 0; i < BUCKET_ENTRIES; i++, offset += ENTRY_BYTES) {
+			long check = buffer.getLong(offset);
+			long data = buffer.getLong(offset + 8);
+			if ((check ^ data) == key && data != 0L) return data;
+		}
+		return 0L;
+	}
+
+	public long probe(Position position) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		return probe(position.key());
+	}
+
+	// called as each search starts, so that the entries of earlier searches are aged
+	public void nextGeneration() {
+		generation = generation + 1 & GENERATION_MASK;
+	}
+
+	// stores an exact result, replacing any entry for the same key
+	public void store(long key, int depth, long payload) {
+		store(key, depth, payload, true);
+	}
+
+	// replaces an entry for the same key, unless the entry is from this generation and much deeper and the new result is not exact
+	// otherwise replaces an empty entry, else the entry in the bucket that is shallowest once its age is accounted for
+	public void store(long key, int depth, long payload, boolean exact) {
+		if (depth < 0 || depth > MAX_DEPTH) throw new IllegalArgumentException("invalid depth");
+		if (payload < 0L || payload > MAX_PAYLOAD) throw new IllegalArgumentException("invalid payload");
+		int generation = this.generation;
+		long data = (payload << GENERATION_BITS | generation) << DEPTH_BITS | (depth + 1);
+		long bucket = key & bucketMask;
+		ByteBuffer buffer = segments[(int) (bucket >>> SEGMENT_BITS)];
+		int offset = ((int) bucket & segmentMask) * BUCKET_BYTES;
+		int target = -1;
+		int targetWorth = Integer.MAX_VALUE;
+		for (int i = 0; i < BUCKET_ENTRIES; i++, offset += ENTRY_BYTES) {
+			long existing = buffer.getLong(offset + 8);
+			if ((buffer.getLong(offset) ^ existing) == key) {
+				if (!exact && generation(existing) == generation && depth(existing) > depth + DEPTH_MARGIN) return;
+				target = offset;
+				break;
+			}
+			// empty entries are replaced first; torn entries have arbitrary worth
+			int worth = existing == 0L ? Integer.MIN_VALUE : depth(existing) - AGE_DEPTH * (generation - generation(existing) & GENERATION_MASK);
+			if (worth < targetWorth) {
+				target = offset;
+				targetWorth = worth;
+			}
+		}
+		buffer.putLong(target, key ^ data);
+		buffer.putLong(target + 8, data);
+	}
+
+	public void store(Position position, int depth, long payload) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		store(position.key(), depth, payload);
+	}
+
+	// not safe to call while other threads are using the table
+	public void clear() {
+		for (ByteBuffer buffer : segments) {
+			int limit = buffer.capacity();
+			for (int offset = 0; offset < limit; offset += 8) {
+				buffer.putLong(offset, 0L);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.tomgibara.chess;
+
+import java.util.Random;
+
+// random keys combined by XOR to give 64-bit position keys
+// seeded so that keys remain stable between runs and may be persisted
+final class Zobrist {
+
+	private static final long[] pieceKeys = new long[Piece.COUNT * 64];
+	private static final long[] castlingKeys = new long[CastlingRights.values().length];
+	private static final long[] enPassantKeys = new long[8];
+	static final long blackToMoveKey;
+
+	static {
+		Random r = new Random(0x5a0b2157L);
+		for (int i = 0; i < pieceKeys.length; i++) {
+			pieceKeys[i] = r.nextLong();
+		}
+		for (int i = 0; i < castlingKeys.length; i++) {
+			castlingKeys[i] = r.nextLong();
+		}
+		for (int i = 0; i < enPassantKeys.length; i++) {
+			enPassantKeys[i] = r.nextLong();
+		}
+		blackToMoveKey = r.nextLong();
+	}
+
+	static long piece(Piece piece, int ordinal) {
+		return pieceKeys[(piece.ordinal() << 6) + ordinal];
+	}
+
+	// the contribution of everything but the pieces
+	static long state(Colour toMove, CastlingRights castlingRights, File enPassantFile) {
+		long key = castlingKeys[castlingRights.ordinal()];
+		if (enPassantFile != null) key ^= enPassantKeys[enPassantFile.ordinal()];
+		if (toMove.black) key ^= blackToMoveKey;
+		return key;
+	}
+
+	private Zobrist() { }
+
+}
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -90,6 +91,9 @@ public class BoardTest extends TestCase {
 				Rectangle.from(Rank.RK_1, Rank.RK_2).getSquares(),
 				board.white().occupiedSquares()
 				);
+		// the views are built once per board
+		assertSame(board.squaresOccupiedBy(Piece.WHITE_KING), board.squaresOccupiedBy(Piece.WHITE_KING));
+		assertSame(board.white().occupiedSquares(), board.white().occupiedSquares());
 	}
 	
 	public void testPins() {
@@ -174,6 +178,160 @@ public class BoardTest extends TestCase {
 		assertTrue(moves.contains(move("d2-c2")));
 	}
 	
+	public void testSee() {
+		// undefended and defended pawns
+		assertSee(100, "1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3", "e1-e5");
+		assertSee(-400, "1k6/8/5p2/4p3/8/8/8/2K1R3", "e1-e5");
+		// the rook behind the knight's attacker recaptures, as does the queen behind the bishop
+		assertSee(-200, "1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3", "d3-e5");
+		// rooks doubled behind one another win the pawn only when they outnumber the defence
+		assertSee(100, "7k/3r4/8/3p4/8/8/3R4/3RK3", "d2-d5");
+		assertSee(-400, "3r3k/3r4/8/3p4/8/8/3R4/3RK3", "d2-d5");
+		// the king defends too
+		assertSee(-400, "3rk3/3p4/8/8/8/8/3R4/3RK3", "d2-d7");
+		// the queen behind the bishop recaptures
+		assertSee(100, "4k3/5p2/4n3/8/8/1B6/Q7/4K3", "b3-e6");
+		assertSee(0, "4k3/5p2/4n3/8/8/1B6/8/4K3", "b3-e6");
+		// a quiet move to an attacked square loses the piece
+		assertSee(-900, "4k3/8/2p5/8/8/8/8/3QK3", "d1-d5");
+		assertSee(0, "4k3/8/8/8/8/8/8/3QK3", "d1-d5");
+		// the king may only capture undefended pieces
+		assertSee(300, "4k3/8/8/8/8/8/4n3/4K3", "e1-e2");
+		assertTrue(Notation.parseFENPieces("4k3/8/8/8/8/5b2/4n3/4K3").newBoard().see(move("e1-e2")) < -20000);
+		// a pawn promoting to a queen, and being recaptured
+		assertSee(800, "4k3/1P6/8/8/8/8/8/4K3", "b7-b8");
+		assertSee(-100, "1r2k3/P7/8/8/8/8/8/4K3", "a7-a8");
+		assertSee(1300, "1r2k3/P7/8/8/8/8/8/4K3", "a7-b8");
+		// a diagonal pawn move to an empty square captures en passant, uncovering the rook behind
+		assertSee(100, "4k3/8/8/3pP3/8/8/8/4K3", "e5-d6");
+		assertSee(0, "3rk3/8/8/3pP3/8/8/8/4K3", "e5-d6");
+	}
+
+	public void testSeeStops() {
+		// white would not start an exchange that loses the queen for a pawn
+		assertSee(0, "4k1nr/7p/8/8/8/8/3Q4/2B1K3", "h7-h6");
+		// nor would it stop short of regaining the pawn once its rook is lost
+		assertSee(-300, "4k3/8/2p5/3p4/8/8/3R4/3RK3", "d2-d5");
+	}
+
+	public void testSeeAgainstSwapList() {
+		// every legal move of positions from random games is compared with a plain swap list over a square array
+		Random random = new Random(0L);
+		int[] codes = new int[PositionCursor.MAX_MOVES];
+		for (int game = 0; game < 200; game++) {
+			PositionCursor cursor = new PositionCursor(new Sequence().position());
+			for (int ply = 0; ply < 120; ply++) {
+				int count = cursor.generate(codes, 0);
+				if (count == 0) break;
+				Board board = cursor.pieces().newBoard();
+				for (int i = 0; i < count; i++) {
+					Move move = PositionMoves.codeMove(codes[i]);
+					assertEquals(board.toString() + move, swapList(board.pieces, move.from.ordinal, move.to.ordinal), board.see(move));
+				}
+				cursor.push(codes[random.nextInt(count)]);
+			}
+		}
+	}
+
+	private void assertSee(int expected, String fen, String move) {
+		assertEquals(expected, Notation.parseFENPieces(fen).newBoard().see(move(move)));
+	}
+
+	private static final int[] SWAP_VALUES = { 100, 300, 300, 500, 900, 30000 };
+
+	// a reference evaluation: attackers are found by walking the board after every capture and the gains are resolved backwards
+	private static int swapList(Pieces pieces, int from, int to) {
+		Piece[] squares = new Piece[64];
+		for (int s = 0; s < 64; s++) squares[s] = pieces.get(s);
+		Piece moved = squares[from];
+		int[] gains = new int[34];
+		gains[0] = squares[to] == null ? 0 : SWAP_VALUES[squares[to].type.ordinal()];
+		if (moved.type == PieceType.PAWN && squares[to] == null && (from & 7) != (to & 7)) {
+			gains[0] = SWAP_VALUES[0];
+			squares[from & 56 | to & 7] = null;
+		}
+		boolean lastRank = to < 8 || to >= 56;
+		squares[from] = null;
+		Piece onSquare = moved;
+		if (moved.type == PieceType.PAWN && lastRank) {
+			onSquare = PieceType.QUEEN.coloured(moved.colour);
+			gains[0] += SWAP_VALUES[4] - SWAP_VALUES[0];
+		}
+		squares[to] = onSquare;
+		Colour side = moved.colour.opposite();
+		int depth = 0;
+		while (true) {
+			int attacker = -1;
+			for (int s = 0; s < 64; s++) {
+				Piece piece = squares[s];
+				if (piece == null || piece.colour != side || !swapAttacks(squares, s, to)) continue;
+				if (attacker < 0 || piece.type.ordinal() < squares[attacker].type.ordinal()) attacker = s;
+			}
+			if (attacker < 0) break;
+			Piece piece = squares[attacker];
+			int gain = SWAP_VALUES[onSquare.type.ordinal()];
+			onSquare = piece;
+			if (piece.type == PieceType.PAWN && lastRank) {
+				onSquare = PieceType.QUEEN.coloured(side);
+				gain += SWAP_VALUES[4] - SWAP_VALUES[0];
+			}
+			depth++;
+			gains[depth] = gain - gains[depth - 1];
+			squares[attacker] = null;
+			squares[to] = onSquare;
+			side = side.opposite();
+		}
+		while (depth > 0) {
+			depth--;
+			gains[depth] = -Math.max(-gains[depth], gains[depth + 1]);
+		}
+		return gains[0];
+	}
+
+	private static boolean swapAttacks(Piece[] squares, int from, int to) {
+		Piece piece = squares[from];
+		int df = (to & 7) - (from & 7);
+		int dr = (to >> 3) - (from >> 3);
+		switch (piece.type) {
+		case PAWN: return Math.abs(df) == 1 && dr == (piece.colour.white ? 1 : -1);
+		case KNIGHT: return Math.abs(df * dr) == 2;
+		case KING: return Math.max(Math.abs(df), Math.abs(dr)) == 1;
+		default:
+			boolean straight = df == 0 || dr == 0;
+			boolean diagonal = Math.abs(df) == Math.abs(dr);
+			if (piece.type == PieceType.ROOK && !straight) return false;
+			if (piece.type == PieceType.BISHOP && !diagonal) return false;
+			if (!straight && !diagonal) return false;
+			int step = Integer.signum(dr) * 8 + Integer.signum(df);
+			for (int s = from + step; s != to; s += step) {
+				if (squares[s] != null) return false;
+			}
+			return true;
+		}
+	}
+
+	public void testSeeInvalid() {
+		Board board = Notation.parseFENPieces("4k3/8/8/8/8/8/4N3/4K3").newBoard();
+		try {
+			board.see(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			board.see(move("d1-d2"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			board.see(move("e1-e2"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
 	private void assertSquaresAre(String expected, Collection<Square> squares) {
 		if (expected.isEmpty()) {
 			assertTrue(squares.isEmpty());
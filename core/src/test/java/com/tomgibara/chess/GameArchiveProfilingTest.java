@@ -0,0 +1,56 @@
+package com.tomgibara.chess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GameArchiveProfilingTest {
+
+	// compares reading games from an archive with parsing them from PGN
+	public static void main(String[] args) throws IOException {
+		int rounds = args.length == 0 ? 200 : Integer.parseInt(args[0]);
+		List<Game> sample = GameArchiveTest.games();
+		StringBuilder sb = new StringBuilder();
+		List<Game> games = new ArrayList<>();
+		String corpus = GameArchiveTest.corpus();
+		for (int i = 0; i < rounds; i++) {
+			sb.append(corpus);
+			games.addAll(sample);
+		}
+		String pgn = sb.toString();
+		long plies = 0L;
+		for (Game game : games) plies += game.sequence().length() - 1;
+		byte[] plain = GameArchiveTest.write(games, null);
+		byte[] coded = GameArchiveTest.write(games, GameArchiveWriter.frequencies(games));
+		System.out.println("Plies: " + plies + " PGN bytes/ply: " + String.format("%.2f", (double) pgn.length() / plies));
+		System.out.println("Plain bytes/ply: " + String.format("%.2f", (double) plain.length / plies) + " coded bytes/ply: " + String.format("%.2f", (double) coded.length / plies));
+
+		for (int pass = 0; pass < 4; pass++) {
+			// the early passes warm up
+			long start = System.nanoTime();
+			int count = 0;
+			for (@SuppressWarnings("unused") Game game : new PgnReader(new StringReader(pgn))) count++;
+			long time = System.nanoTime() - start;
+			if (pass == 3) System.out.println("PGN games: " + count + " us/game: " + String.format("%.1f", time / 1e3 / count));
+			start = System.nanoTime();
+			count = read(plain);
+			time = System.nanoTime() - start;
+			if (pass == 3) System.out.println("Plain games: " + count + " us/game: " + String.format("%.1f", time / 1e3 / count));
+			start = System.nanoTime();
+			count = read(coded);
+			time = System.nanoTime() - start;
+			if (pass == 3) System.out.println("Coded games: " + count + " us/game: " + String.format("%.1f", time / 1e3 / count));
+		}
+	}
+
+	private static int read(byte[] bytes) throws IOException {
+		int count = 0;
+		try (GameArchiveReader reader = new GameArchiveReader(new ByteArrayInputStream(bytes))) {
+			for (@SuppressWarnings("unused") Game game : reader) count++;
+		}
+		return count;
+	}
+
+}
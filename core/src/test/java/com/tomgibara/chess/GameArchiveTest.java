@@ -0,0 +1,114 @@
+package com.tomgibara.chess;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+
+public class GameArchiveTest extends TestCase {
+
+	private static final String SETUP =
+			"[Event \"Setup\"]\n" +
+			"[SetUp \"1\"]\n" +
+			"[FEN \"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1\"]\n" +
+			"\n" +
+			"1. O-O-O Bxe2 2. dxe6 O-O 3. exf7+ Rxf7 *\n";
+
+	static String corpus() throws IOException {
+		return PgnReaderTest.corpus(SETUP) + PgnReaderTest.corpus();
+	}
+
+	static List<Game> games() throws IOException {
+		List<Game> games = new ArrayList<>();
+		for (Game game : new PgnReader(new StringReader(corpus()))) games.add(game);
+		return games;
+	}
+
+	static byte[] write(List<Game> games, int[] frequencies) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GameArchiveWriter writer = new GameArchiveWriter(out, frequencies)) {
+			for (Game game : games) writer.write(game);
+			assertEquals(games.size(), writer.gameCount());
+		}
+		return out.toByteArray();
+	}
+
+	private static void assertRoundTrip(List<Game> games, byte[] bytes) throws IOException {
+		Iterator<Game> expected = games.iterator();
+		try (GameArchiveReader reader = new GameArchiveReader(new ByteArrayInputStream(bytes))) {
+			for (Game game : reader) {
+				Game original = expected.next();
+				assertEquals(original.tags, game.tags);
+				Sequence a = original.sequence();
+				Sequence b = game.sequence();
+				assertEquals(a.length(), b.length());
+				for (int i = 0; i < a.length(); i++) {
+					assertEquals(a.position(i).key(), b.position(i).key());
+					assertEquals(a.position(i).pieces(), b.position(i).pieces());
+				}
+			}
+			assertEquals(games.size(), reader.gameCount());
+		}
+		assertFalse(expected.hasNext());
+	}
+
+	public void testPlain() throws IOException {
+		List<Game> games = games();
+		assertRoundTrip(games, write(games, null));
+	}
+
+	public void testEntropyCoded() throws IOException {
+		List<Game> games = games();
+		int[] frequencies = GameArchiveWriter.frequencies(games);
+		byte[] coded = write(games, frequencies);
+		assertRoundTrip(games, coded);
+		// frequencies from other games are less effective, but every index remains encodable
+		int[] skewed = new int[MoveGenerator.MAX_MOVES];
+		skewed[0] = 1000000;
+		assertRoundTrip(games, write(games, skewed));
+		assertTrue(coded.length < write(games, null).length);
+	}
+
+	public void testCompact() throws IOException {
+		List<Game> games = games();
+		int plies = 0;
+		for (Game game : games) plies += game.sequence().length() - 1;
+		byte[] plain = write(games, null);
+		byte[] tagless = write(games.stream().map(g -> new Game(g.tags.entrySet().stream().filter(e -> e.getKey().equals("SetUp") || e.getKey().equals("FEN")).collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue())), g.sequence())).collect(Collectors.toList()), null);
+		// little more than a byte for each ply
+		assertTrue(tagless.length < plies + 4 * games.size() + 200);
+		assertTrue(plain.length > tagless.length);
+	}
+
+	public void testStream() throws IOException {
+		List<Game> games = games();
+		try (GameArchiveReader reader = new GameArchiveReader(new ByteArrayInputStream(write(games, null)))) {
+			assertEquals(games.stream().map(Game::event).collect(Collectors.toList()), reader.stream().map(Game::event).collect(Collectors.toList()));
+		}
+	}
+
+	public void testInvalid() throws IOException {
+		try {
+			new GameArchiveReader(new ByteArrayInputStream(new byte[8]));
+			fail();
+		} catch (IOException e) {
+			/* expected */
+		}
+		byte[] bytes = write(games(), null);
+		try (GameArchiveReader reader = new GameArchiveReader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)))) {
+			for (@SuppressWarnings("unused") Game game : reader);
+			fail();
+		} catch (UncheckedIOException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.tomgibara.chess;
+
+import java.lang.management.ManagementFactory;
+
+public class MoveGeneratorProfilingTest {
+
+	public static void main(String[] args) {
+		int rounds = args.length == 0 ? 1000000 : Integer.parseInt(args[0]);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		int[] out = new int[MoveGenerator.MAX_MOVES];
+		for (String fen : MoveGeneratorTest.FENS) {
+			Position position = Notation.parseFENPosition(fen);
+			// warm up before timing
+			run(position, out, rounds / 10);
+			long bytes = bean.getThreadAllocatedBytes(id);
+			long start = System.nanoTime();
+			long check = run(position, out, rounds);
+			long time = System.nanoTime() - start;
+			bytes = bean.getThreadAllocatedBytes(id) - bytes;
+			System.out.println(fen);
+			System.out.println("  generate ns/call: " + String.format("%.1f", (double) time / rounds) + " bytes/call: " + String.format("%.3f", (double) bytes / rounds) + " check: " + check);
+			runCaptures(position, out, rounds / 10);
+			start = System.nanoTime();
+			check += runCaptures(position, out, rounds);
+			time = System.nanoTime() - start;
+			System.out.println("  generateCaptures ns/call: " + String.format("%.1f", (double) time / rounds));
+			PositionCursor cursor = new PositionCursor(position);
+			int count = cursor.generateCaptures(out, 0);
+			if (count > 0) {
+				runSee(cursor, out, count, rounds / 10);
+				start = System.nanoTime();
+				check += runSee(cursor, out, count, rounds);
+				time = System.nanoTime() - start;
+				System.out.println("  see ns/call: " + String.format("%.1f", (double) time / rounds / count));
+			}
+			start = System.nanoTime();
+			bytes = bean.getThreadAllocatedBytes(id);
+			for (int i = 0; i < rounds / 10; i++) {
+				check += position.computeMoves(Area.entire()).moveCount();
+			}
+			time = System.nanoTime() - start;
+			bytes = bean.getThreadAllocatedBytes(id) - bytes;
+			System.out.println("  computeMoves ns/call: " + String.format("%.1f", (double) time * 10 / rounds) + " bytes/call: " + String.format("%.3f", (double) bytes * 10 / rounds));
+		}
+	}
+
+	private static long run(Position position, int[] out, int rounds) {
+		long check = 0L;
+		for (int i = 0; i < rounds; i++) {
+			check += PositionMoves.generate(position, out, 0);
+		}
+		return check;
+	}
+
+	private static long runSee(PositionCursor cursor, int[] codes, int count, int rounds) {
+		long check = 0L;
+		for (int i = 0; i < rounds; i++) {
+			for (int j = 0; j < count; j++) {
+				check += cursor.see(codes[j]);
+			}
+		}
+		return check;
+	}
+
+	private static long runCaptures(Position position, int[] out, int rounds) {
+		long check = 0L;
+		for (int i = 0; i < rounds; i++) {
+			check += PositionMoves.generateCaptures(position, out, 0);
+		}
+		return check;
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.tomgibara.chess;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MoveGeneratorTest extends TestCase {
+
+	static final String[] FENS = {
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+		"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+	};
+
+	public void testMatchesPositionMoves() {
+		int[] out = new int[1024];
+		for (String fen : FENS) {
+			check(Notation.parseFENPosition(fen), out, 2);
+		}
+	}
+
+	private void check(Position position, int[] out, int depth) {
+		PositionMoves moves = position.moves();
+		int count = PositionMoves.generate(position, out, 100);
+		assertEquals(moves.moveCount(), count);
+		for (int i = 0; i < count; i++) {
+			assertEquals(PositionMoves.code(moves.move(i), moves.pieces(i)), out[100 + i]);
+		}
+		if (depth == 0) return;
+		for (int i = 0; i < moves.moveCount(); i++) {
+			Position child = moves.make(i);
+			check(child, out, depth - 1);
+			child.discard();
+		}
+	}
+
+	public void testCaptures() {
+		int[] out = new int[1024];
+		for (String fen : FENS) {
+			checkCaptures(Notation.parseFENPosition(fen), out, 2);
+		}
+		// includes en passant and quiet promotions, but never castling
+		checkCaptures(Notation.parseFENPosition("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1"), out, 1);
+	}
+
+	// captures must be exactly the noisy subset of all moves, ordered by victim, promotion and attacker
+	private void checkCaptures(Position position, int[] out, int depth) {
+		PositionMoves moves = position.moves();
+		int count = PositionMoves.generateCaptures(position, out, 10);
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < moves.moveCount(); i++) {
+			Move move = moves.move(i);
+			MovePieces pieces = moves.pieces(i);
+			if (PositionMoves.isCapture(move, pieces) || pieces.promotion != null) expected.add(PositionMoves.code(move, pieces));
+		}
+		List<Integer> actual = new ArrayList<>();
+		for (int i = 0; i < count; i++) actual.add(out[10 + i]);
+		assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+		assertEquals(expected.size(), actual.size());
+		for (int i = 1; i < count; i++) {
+			assertTrue(order(out[10 + i - 1]) >= order(out[10 + i]));
+		}
+		if (depth == 0) return;
+		for (int i = 0; i < moves.moveCount(); i++) {
+			Position child = moves.make(i);
+			checkCaptures(child, out, depth - 1);
+			child.discard();
+		}
+	}
+
+	// positions set up from a FEN may have more moves than any reachable position
+	public void testMaxMoves() {
+		Position position = Notation.parseFENPosition("3Q3k/Q4Q2/2Q5/1Q3Q2/1Q1QQ2Q/7Q/Q4Q1Q/K1QQ2Q1 w - - 0 1");
+		assertEquals(221, position.moves().moveCount());
+		int[] out = new int[MoveGenerator.MAX_MOVES];
+		assertEquals(221, PositionMoves.generate(position, out, 0));
+		assertEquals(221, new PositionCursor(position).generate(new int[PositionCursor.MAX_MOVES], 0));
+		assertEquals(out[220], MoveGenerator.select(position.activePieces(), position.toMove, position.castlingRights, position.enPassantFile, 220));
+		assertEquals(MoveGenerator.MAX_MOVES, Notation.parseFENPosition("1QQQQQQ1/QQ5Q/QQ3Q1Q/Q6Q/Q6Q/Q4Q1Q/Q6Q/KQQ1QQQk w - - 0 1").moves().moveCount());
+		// beyond the limit, the position is rejected rather than overrunning the buffer
+		Position excessive = Notation.parseFENPosition("QQQQQQQ1/n6Q/Q6Q/1Q5Q/3Q4/Q6Q/Q1Q3QQ/K1Q1QQ1k w - - 0 1");
+		try {
+			PositionMoves.generate(excessive, new int[MoveGenerator.MAX_MOVES * 2], 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testSelect() {
+		int[] out = new int[MoveGenerator.MAX_MOVES];
+		for (String fen : FENS) {
+			checkSelect(Notation.parseFENPosition(fen), out, 2);
+		}
+		// en passant and promotions, with and without captures
+		checkSelect(Notation.parseFENPosition("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1"), out, 1);
+	}
+
+	// selecting by index must agree with the codes generated
+	private void checkSelect(Position position, int[] out, int depth) {
+		Pieces pieces = position.activePieces();
+		int count = PositionMoves.generate(position, out, 0);
+		for (int i = 0; i < count; i++) {
+			assertEquals(out[i], MoveGenerator.select(pieces, position.toMove, position.castlingRights, position.enPassantFile, i));
+		}
+		assertEquals(PositionMoves.NO_CODE, MoveGenerator.select(pieces, position.toMove, position.castlingRights, position.enPassantFile, count));
+		assertEquals(PositionMoves.NO_CODE, MoveGenerator.select(pieces, position.toMove, position.castlingRights, position.enPassantFile, -1));
+		if (depth == 0) return;
+		PositionMoves moves = position.moves();
+		for (int i = 0; i < moves.moveCount(); i++) {
+			Position child = moves.make(i);
+			checkSelect(child, out, depth - 1);
+			child.discard();
+		}
+	}
+
+	private static int order(int code) {
+		Move move = PositionMoves.codeMove(code);
+		MovePieces pieces = PositionMoves.codePieces(code);
+		int victim = 0;
+		if (PositionMoves.isCapture(move, pieces)) victim = (pieces.captured == null ? PieceType.PAWN : pieces.captured).ordinal() + 1;
+		int promotion = pieces.promotion == null ? 0 : pieces.promotion.ordinal();
+		return (victim * 8 + promotion) * 8 + 7 - pieces.moved.ordinal();
+	}
+
+	public void testSorted() {
+		int[] out = new int[MoveGenerator.MAX_MOVES];
+		int count = PositionMoves.generate(Notation.parseFENPosition(FENS[1]), out, 0);
+		assertEquals(48, count);
+		int[] codes = Arrays.copyOf(out, count);
+		int[] sorted = codes.clone();
+		Arrays.sort(sorted);
+		assertTrue(Arrays.equals(sorted, codes));
+	}
+
+	public void testArguments() {
+		Position position = new Sequence().position();
+		try {
+			PositionMoves.generate(position, new int[100], 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			PositionMoves.generate(position, new int[MoveGenerator.MAX_MOVES], 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		assertEquals(20, PositionMoves.generate(position, new int[MoveGenerator.MAX_MOVES], 0));
+	}
+
+	public void testNoAllocation() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) return;
+		Position position = Notation.parseFENPosition(FENS[1]);
+		int[] out = new int[MoveGenerator.MAX_MOVES];
+		long id = Thread.currentThread().getId();
+		for (int i = 0; i < 10000; i++) {
+			PositionMoves.generate(position, out, 0);
+		}
+		long before = bean.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 10000; i++) {
+			PositionMoves.generate(position, out, 0);
+		}
+		long bytes = bean.getThreadAllocatedBytes(id) - before;
+		// allow for anything allocated by the measurement itself
+		assertTrue("allocated " + bytes + " bytes", bytes < 1024);
+	}
+
+}
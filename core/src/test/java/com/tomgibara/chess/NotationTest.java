@@ -46,7 +46,7 @@ public class NotationTest {
 	@Test
 	public void testGameSimple() throws IOException {
 		Game game = parse();
-		Assert.assertEquals(42 * 2 + 1 + 1, game.sequence.length() );
+		Assert.assertEquals(42 * 2 + 1 + 1, game.sequence().length() );
 		Assert.assertEquals("1992.11.04", game.date().toString());
 	}
 	
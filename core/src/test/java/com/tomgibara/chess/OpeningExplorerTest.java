@@ -0,0 +1,87 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class OpeningExplorerTest extends TestCase {
+
+	// maps keys to codes to counts of white wins, draws and black wins
+	private static Map<Long, TreeMap<Integer, int[]>> expected(List<Game> games, int plies) {
+		Map<Long, TreeMap<Integer, int[]>> map = new HashMap<>();
+		for (Game game : games) {
+			Game.Result result = game.result();
+			if (result == null || result == Game.Result.OTHER) continue;
+			Sequence sequence = game.sequence();
+			for (int i = 0; i < Math.min(plies, sequence.length() - 1); i++) {
+				int[] counts = map.computeIfAbsent(sequence.position(i).key(), k -> new TreeMap<>()).computeIfAbsent(sequence.position(i + 1).code, c -> new int[3]);
+				counts[result.ordinal()]++;
+			}
+		}
+		return map;
+	}
+
+	private static void assertExplorer(Map<Long, TreeMap<Integer, int[]>> expected, OpeningExplorer explorer) {
+		assertEquals(expected.size(), explorer.positionCount());
+		int continuations = 0;
+		for (Map.Entry<Long, TreeMap<Integer, int[]>> entry : expected.entrySet()) {
+			OpeningExplorer.Continuations c = explorer.continuations(entry.getKey());
+			assertEquals(entry.getValue().size(), c.size());
+			int i = 0;
+			for (Map.Entry<Integer, int[]> move : entry.getValue().entrySet()) {
+				int[] counts = move.getValue();
+				assertEquals(move.getKey().intValue(), c.code(i));
+				assertEquals(counts[0], c.whiteWins(i));
+				assertEquals(counts[2], c.draws(i));
+				assertEquals(counts[1], c.blackWins(i));
+				assertEquals(counts[0] + counts[1] + counts[2], c.games(i));
+				i++;
+			}
+			continuations += c.size();
+		}
+		assertEquals(continuations, explorer.continuationCount());
+	}
+
+	public void testBuild() throws IOException {
+		List<Game> games = GameArchiveTest.games();
+		for (int plies : new int[] {0, 1, 10, 1000}) {
+			Map<Long, TreeMap<Integer, int[]>> expected = expected(games, plies);
+			// small buffers exercise the merging of rows
+			for (int bufferSize : new int[] {1, 7, 1 << 16}) {
+				assertExplorer(expected, OpeningExplorer.build(games.stream(), plies, bufferSize));
+			}
+			assertExplorer(expected, OpeningExplorer.build(games.stream(), plies));
+		}
+	}
+
+	public void testInitialPosition() throws IOException {
+		List<Game> games = GameArchiveTest.games();
+		OpeningExplorer explorer = OpeningExplorer.build(games.stream(), 4);
+		Position initial = new Sequence().initialPosition();
+		OpeningExplorer.Continuations c = explorer.continuations(initial);
+		int played = 0;
+		for (Game game : games) {
+			if (game.sequence().initialPosition().key() != initial.key() || game.sequence().length() < 2) continue;
+			Game.Result result = game.result();
+			if (result != null && result != Game.Result.OTHER) played++;
+		}
+		assertEquals(played, c.games());
+		for (int i = 0; i < c.size(); i++) {
+			assertTrue(initial.moves().moveList().contains(c.move(i)));
+		}
+		assertEquals(0, explorer.continuations(0L).size());
+	}
+
+	public void testLazyGames() throws IOException {
+		List<Game> games = new ArrayList<>();
+		for (Game game : new PgnReader(new StringReader(GameArchiveTest.corpus()), PgnReader.ErrorPolicy.FAIL, false)) games.add(game);
+		assertExplorer(expected(GameArchiveTest.games(), 12), OpeningExplorer.build(games.stream(), 12));
+	}
+
+}
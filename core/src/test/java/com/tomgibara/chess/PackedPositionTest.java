@@ -0,0 +1,108 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class PackedPositionTest extends TestCase {
+
+	private static void assertPacked(Position position) {
+		PackedPosition packed = PackedPosition.from(position);
+		assertEquals(position.pieces(), packed.pieces());
+		assertEquals(position.toMove, packed.toMove());
+		assertEquals(position.castlingRights, packed.castlingRights());
+		assertEquals(position.enPassantFile, packed.enPassantFile());
+		assertEquals(position.moveNumber, packed.moveNumber());
+		assertEquals(position.stalemateClock, packed.stalemateClock());
+
+		Position unpacked = packed.toPosition();
+		assertEquals(position, unpacked);
+		assertEquals(position.key(), unpacked.key());
+		assertEquals(packed, PackedPosition.from(unpacked));
+
+		long[] words = new long[PackedPosition.WORDS + 1];
+		packed.writeTo(words, 1);
+		for (int i = 0; i < PackedPosition.WORDS; i++) assertEquals(packed.word(i), words[i + 1]);
+		PackedPosition read = PackedPosition.from(words, 1);
+		assertEquals(packed, read);
+		assertEquals(packed.hashCode(), read.hashCode());
+
+		ByteBuffer buffer = ByteBuffer.allocate(PackedPosition.BYTES);
+		packed.writeTo(buffer);
+		assertFalse(buffer.hasRemaining());
+		buffer.flip();
+		assertEquals(packed, PackedPosition.from(buffer));
+	}
+
+	public void testRoundTrip() throws IOException {
+		for (Game game : GameArchiveTest.games()) {
+			game.sequence().forEach(PackedPositionTest::assertPacked);
+		}
+		assertPacked(Notation.parseFENPosition("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"));
+		assertPacked(Notation.parseFENPosition("8/8/8/8/8/8/8/8 b - - 0 1"));
+		assertPacked(Notation.parseFENPosition("rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 3"));
+	}
+
+	public void testWithoutClocks() {
+		Pieces pieces = Board.initial().pieces;
+		PackedPosition a = PackedPosition.from(pieces, Colour.WHITE, CastlingRights.BG_BC_WG_WC, null, 12, 7);
+		PackedPosition b = PackedPosition.from(pieces, Colour.WHITE, CastlingRights.BG_BC_WG_WC, null, 3, 0);
+		assertFalse(a.equals(b));
+		assertEquals(a.withoutClocks(), b.withoutClocks());
+		assertEquals(0, a.withoutClocks().moveNumber());
+		assertEquals(0, a.withoutClocks().stalemateClock());
+		PackedPosition c = a.withoutClocks();
+		assertSame(c, c.withoutClocks());
+	}
+
+	public void testInvalid() {
+		Pieces pieces = new Pieces();
+		for (int i = 0; i < 33; i++) pieces.set(Square.at(i), Piece.WHITE_PAWN);
+		try {
+			PackedPosition.from(pieces, Colour.WHITE, CastlingRights.___________, null, 0, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			PackedPosition.from(Board.initial().pieces, Colour.WHITE, CastlingRights.___________, null, 0, PackedPosition.MAX_STALEMATE_CLOCK + 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		long[] words = new long[PackedPosition.WORDS];
+		PackedPosition.from(Notation.parseFENPieces("4k3/8/8/8/8/8/8/4K3"), Colour.WHITE, CastlingRights.___________, null, 0, 0).writeTo(words, 0);
+		// a piece code beyond the pieces
+		words[2] |= 1L << 60;
+		try {
+			PackedPosition.from(words, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testPositionSet() throws IOException {
+		Path dir = Files.createTempDirectory("positions");
+		try (PositionSet set = new PositionSet(PackedPosition.WORDS, 100, dir)) {
+			Set<PackedPosition> expected = new HashSet<>();
+			for (Game game : GameArchiveTest.games()) {
+				game.sequence().forEach(p -> {
+					set.add(p);
+					expected.add(PackedPosition.from(p).withoutClocks());
+				});
+			}
+			Set<PackedPosition> actual = new HashSet<>();
+			set.forEach(key -> actual.add(PackedPosition.from(key, 0)));
+			assertEquals(expected, actual);
+		} finally {
+			Files.delete(dir);
+		}
+	}
+
+}
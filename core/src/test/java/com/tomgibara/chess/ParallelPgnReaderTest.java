@@ -0,0 +1,115 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.tomgibara.chess.PgnReader.ErrorPolicy;
+import com.tomgibara.chess.PgnReader.GameError;
+
+import junit.framework.TestCase;
+
+public class ParallelPgnReaderTest extends TestCase {
+
+	private Path file;
+	private ForkJoinPool pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = Files.createTempFile("games", ".pgn");
+		pool = new ForkJoinPool(4);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		pool.shutdown();
+		Files.deleteIfExists(file);
+	}
+
+	private String write(String... invalid) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append(PgnReaderTest.corpus(i % 3 == 0 ? invalid : new String[0]));
+		}
+		String text = sb.toString();
+		Files.write(file, text.getBytes(StandardCharsets.ISO_8859_1));
+		return text;
+	}
+
+	private static List<String> sequential(String text, ErrorPolicy policy, List<String> errors) {
+		List<String> games = new ArrayList<>();
+		PgnReader reader = new PgnReader(new StringReader(text), policy);
+		try {
+			for (Game game : reader) games.add(describe(game));
+		} catch (IllegalArgumentException e) {
+			errors.add(e.getMessage());
+		}
+		for (GameError error : reader.errors()) errors.add(error.toString());
+		return games;
+	}
+
+	private List<String> parallel(ErrorPolicy policy, boolean ordered, int chunkBytes, List<String> errors) throws IOException {
+		List<String> games = new ArrayList<>();
+		ParallelPgnReader reader = new ParallelPgnReader(file, policy).withChunkBytes(chunkBytes);
+		try {
+			for (GameError error : reader.read(pool, ordered, g -> games.add(describe(g)))) errors.add(error.toString());
+		} catch (IllegalArgumentException e) {
+			errors.add(e.getMessage());
+		}
+		return games;
+	}
+
+	public void testOrdered() throws IOException {
+		String text = write();
+		List<String> expected = sequential(text, ErrorPolicy.FAIL, new ArrayList<>());
+		for (int chunkBytes : new int[] { 1, 1000, 10000, 1 << 20 }) {
+			List<String> errors = new ArrayList<>();
+			assertEquals(expected, parallel(ErrorPolicy.FAIL, true, chunkBytes, errors));
+			assertTrue(errors.isEmpty());
+		}
+	}
+
+	public void testUnordered() throws IOException {
+		String text = write();
+		List<String> expected = sequential(text, ErrorPolicy.FAIL, new ArrayList<>());
+		List<String> actual = parallel(ErrorPolicy.FAIL, false, 1000, new ArrayList<>());
+		Collections.sort(expected);
+		Collections.sort(actual);
+		assertEquals(expected, actual);
+	}
+
+	public void testCollect() throws IOException {
+		String text = write(PgnReaderTest.ILLEGAL_MOVE, PgnReaderTest.MISSING_MOVE);
+		List<String> expectedErrors = new ArrayList<>();
+		List<String> expected = sequential(text, ErrorPolicy.COLLECT, expectedErrors);
+		assertEquals(14, expectedErrors.size());
+		List<String> errors = new ArrayList<>();
+		assertEquals(expected, parallel(ErrorPolicy.COLLECT, true, 1000, errors));
+		assertEquals(expectedErrors, errors);
+		errors.clear();
+		assertTrue(parallel(ErrorPolicy.SKIP, true, 1000, errors).equals(expected));
+		assertTrue(errors.isEmpty());
+	}
+
+	public void testFail() throws IOException {
+		String text = write("", PgnReaderTest.ILLEGAL_MOVE);
+		List<String> expectedErrors = new ArrayList<>();
+		List<String> expected = sequential(text, ErrorPolicy.FAIL, expectedErrors);
+		for (int chunkBytes : new int[] { 1, 1 << 20 }) {
+			List<String> errors = new ArrayList<>();
+			assertEquals(expected, parallel(ErrorPolicy.FAIL, true, chunkBytes, errors));
+			assertEquals(expectedErrors, errors);
+		}
+	}
+
+	private static String describe(Game game) {
+		return game.tags + " " + game.sequence().finalPosition().pieces() + " " + game.sequence().length();
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.tomgibara.chess;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+public class PerftTest extends TestCase {
+
+	// reference counts from the chess programming wiki
+	private static final String INITIAL = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+	private static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+	private static final String PROMOTIONS = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+	private static final String CHECKS = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+
+	public void testInitial() {
+		Perft perft = Perft.fromFEN(INITIAL);
+		assertEquals(1L, perft.count(0));
+		assertEquals(20L, perft.count(1));
+		assertEquals(400L, perft.count(2));
+		assertEquals(8902L, perft.count(3));
+		assertEquals(197281L, perft.count(4));
+	}
+
+	public void testKiwipete() {
+		assertEquals(97862L, Perft.fromFEN(KIWIPETE).count(3));
+	}
+
+	public void testEndgame() {
+		assertEquals(43238L, Perft.fromFEN(ENDGAME).count(4));
+	}
+
+	public void testPromotions() {
+		assertEquals(9467L, Perft.fromFEN(PROMOTIONS).count(3));
+	}
+
+	public void testChecks() {
+		assertEquals(62379L, Perft.fromFEN(CHECKS).count(3));
+	}
+
+	public void testDivide() {
+		Perft.Result result = Perft.fromFEN(KIWIPETE).divide(2);
+		assertEquals(48, result.moveCount());
+		long total = 0L;
+		for (int i = 0; i < result.moveCount(); i++) {
+			total += result.nodes(i);
+		}
+		assertEquals(2039L, total);
+		assertEquals(2039L, result.nodes);
+	}
+
+	public void testParallel() {
+		ForkJoinPool pool = Perft.newPool(4);
+		try {
+			assertEquals(197281L, Perft.fromFEN(INITIAL).count(4, pool));
+			assertEquals(97862L, Perft.fromFEN(KIWIPETE).count(3, pool));
+			assertEquals(43238L, Perft.fromFEN(ENDGAME).count(4, pool));
+			Perft.Result sequential = Perft.fromFEN(PROMOTIONS).divide(3);
+			Perft.Result parallel = Perft.fromFEN(PROMOTIONS).divide(3, pool);
+			assertEquals(sequential.nodes, parallel.nodes);
+			assertEquals(sequential.moveCount(), parallel.moveCount());
+			for (int i = 0; i < sequential.moveCount(); i++) {
+				assertEquals(sequential.notation(i), parallel.notation(i));
+				assertEquals(sequential.nodes(i), parallel.nodes(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testSequenceUnchanged() {
+		Position position = new Sequence().position().makeMove("e4");
+		Sequence sequence = position.sequence;
+		new Perft(sequence.position(0)).count(3);
+		assertEquals(2, sequence.length());
+		assertEquals(Notation.parseFENPieces("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR"), position.pieces());
+	}
+
+}
@@ -0,0 +1,212 @@
+package com.tomgibara.chess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import com.tomgibara.chess.PgnReader.ErrorPolicy;
+
+import junit.framework.TestCase;
+
+public class PgnReaderTest extends TestCase {
+
+	static final String[] FILES = { "basic1.pgn", "basic2.pgn", "simple.pgn", "backslash.pgn", "rounds.pgn", "names.pgn" };
+
+	static final String ILLEGAL_MOVE =
+			"[Event \"Illegal\"]\n" +
+			"[White \"Nobody\"]\n" +
+			"\n" +
+			"1. e4 e5 2. Ke3 Nc6 1-0\n";
+
+	static final String MISSING_MOVE =
+			"[Event \"Missing\"]\n" +
+			"\n" +
+			"1. d4 d5 2.\n";
+
+	private static String resource(String fileName) throws IOException {
+		try (InputStream in = PgnReaderTest.class.getResourceAsStream(fileName)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) out.write(buffer, 0, n);
+			return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	// the test games with the supplied invalid games interleaved
+	static String corpus(String... invalid) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < FILES.length; i++) {
+			if (i < invalid.length) sb.append(invalid[i]).append("\n");
+			sb.append(resource(FILES[i]).trim()).append("\n\n");
+		}
+		return sb.toString();
+	}
+
+	private static List<String> events(Iterable<Game> games) {
+		List<String> events = new ArrayList<>();
+		for (Game game : games) events.add(game.event() + " " + game.sequence().length());
+		return events;
+	}
+
+	public void testMatchesNotation() throws IOException {
+		List<String> expected = new ArrayList<>();
+		for (String file : FILES) {
+			Game game = Notation.parse(new StringReader(resource(file)));
+			expected.add(game.event() + " " + game.sequence().length());
+		}
+		try (PgnReader reader = new PgnReader(new StringReader(corpus()))) {
+			assertEquals(expected, events(reader));
+			assertEquals(FILES.length, reader.gameCount());
+		}
+	}
+
+	public void testStream() throws IOException {
+		String corpus = corpus();
+		List<String> expected = events(new PgnReader(new StringReader(corpus)));
+		List<String> streamed = new PgnReader(new StringReader(corpus)).stream().map(g -> g.event() + " " + g.sequence().length()).collect(Collectors.toList());
+		assertEquals(expected, streamed);
+	}
+
+	public void testSkip() throws IOException {
+		List<String> expected = events(new PgnReader(new StringReader(corpus())));
+		PgnReader reader = new PgnReader(new StringReader(corpus(ILLEGAL_MOVE, MISSING_MOVE)), ErrorPolicy.SKIP);
+		assertEquals(expected, events(reader));
+		assertTrue(reader.errors().isEmpty());
+	}
+
+	public void testCollect() throws IOException {
+		List<String> expected = events(new PgnReader(new StringReader(corpus())));
+		String corpus = corpus(ILLEGAL_MOVE, MISSING_MOVE);
+		PgnReader reader = new PgnReader(new StringReader(corpus), ErrorPolicy.COLLECT);
+		assertEquals(expected, events(reader));
+		List<PgnReader.GameError> errors = reader.errors();
+		assertEquals(2, errors.size());
+		assertEquals(1, errors.get(0).line);
+		int line = errors.get(1).line;
+		assertTrue(corpus.split("\n", -1)[line - 1].equals("[Event \"Missing\"]"));
+	}
+
+	public void testTakeErrors() throws IOException {
+		String corpus = corpus(ILLEGAL_MOVE, MISSING_MOVE);
+		PgnReader reader = new PgnReader(new StringReader(corpus), ErrorPolicy.COLLECT);
+		List<PgnReader.GameError> taken = new ArrayList<>();
+		for (@SuppressWarnings("unused") Game game : reader) {
+			taken.addAll(reader.takeErrors());
+			// taken errors are no longer retained
+			assertTrue(reader.errors().isEmpty());
+		}
+		taken.addAll(reader.takeErrors());
+		assertEquals(2, taken.size());
+		assertEquals(1, taken.get(0).line);
+		assertTrue(reader.takeErrors().isEmpty());
+	}
+
+	public void testWithoutReplay() throws IOException {
+		String corpus = corpus(ILLEGAL_MOVE);
+		List<Game> games = new ArrayList<>();
+		for (Game game : new PgnReader(new StringReader(corpus), ErrorPolicy.FAIL, false)) games.add(game);
+		// the illegal move is only detected on replay
+		assertEquals(FILES.length + 1, games.size());
+		Game illegal = games.remove(0);
+		assertEquals("Illegal", illegal.event());
+		assertFalse(illegal.isReplayed());
+		for (int i = 0; i < 2; i++) {
+			try {
+				illegal.sequence();
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+		assertFalse(illegal.isReplayed());
+		Iterator<Game> expected = new PgnReader(new StringReader(corpus()), ErrorPolicy.FAIL).iterator();
+		for (Game game : games) {
+			Game eager = expected.next();
+			assertTrue(eager.isReplayed());
+			assertFalse(game.isReplayed());
+			assertEquals(eager.tags, game.tags);
+			assertEquals(eager.sequence().length(), game.sequence().length());
+			assertEquals(eager.sequence().finalPosition(), game.sequence().finalPosition());
+			assertTrue(game.isReplayed());
+			assertSame(game.sequence(), game.sequence());
+		}
+	}
+
+	public void testConcurrentReplay() throws Exception {
+		for (int round = 0; round < 50; round++) {
+			List<Game> games = new ArrayList<>();
+			for (Game game : new PgnReader(new StringReader(corpus()), ErrorPolicy.FAIL, false)) games.add(game);
+			// every thread requests every sequence at once, and all must see the same replayed sequence
+			int threads = 4;
+			Sequence[][] seen = new Sequence[threads][games.size()];
+			CountDownLatch start = new CountDownLatch(1);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < threads; t++) {
+					Sequence[] sequences = seen[t];
+					futures.add(executor.submit(() -> {
+						start.await();
+						for (int i = 0; i < sequences.length; i++) sequences[i] = games.get(i).sequence();
+						return null;
+					}));
+				}
+				start.countDown();
+				for (Future<?> future : futures) future.get();
+			} finally {
+				executor.shutdown();
+			}
+			for (int i = 0; i < games.size(); i++) {
+				assertNotNull(seen[0][i]);
+				for (int t = 1; t < threads; t++) assertSame(seen[0][i], seen[t][i]);
+			}
+		}
+	}
+
+	public void testFail() throws IOException {
+		Iterator<Game> it = new PgnReader(new StringReader(corpus("", ILLEGAL_MOVE))).iterator();
+		assertTrue(it.hasNext());
+		it.next();
+		try {
+			it.hasNext();
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("line"));
+		}
+		assertFalse(it.hasNext());
+	}
+
+	public void testEmpty() {
+		Iterator<Game> it = new PgnReader(new StringReader("\n% comment\n  \n")).iterator();
+		assertFalse(it.hasNext());
+		try {
+			it.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			/* expected */
+		}
+	}
+
+	public void testIteratedOnce() {
+		PgnReader reader = new PgnReader(new StringReader(""));
+		reader.iterator();
+		try {
+			reader.iterator();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+public class PgnTokenizerProfilingTest {
+
+	// tokenizes the named file, or the test games repeated, and compares game parsing with the reader
+	public static void main(String[] args) throws IOException {
+		ByteBuffer buffer;
+		if (args.length == 0) {
+			String corpus = PgnReaderTest.corpus();
+			StringBuilder sb = new StringBuilder();
+			while (sb.length() < 64 << 20) sb.append(corpus);
+			buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+		} else {
+			try (FileChannel channel = FileChannel.open(Paths.get(args[0]))) {
+				buffer = channel.map(MapMode.READ_ONLY, 0L, channel.size());
+			}
+		}
+		// warm up before timing
+		tokenize(buffer);
+
+		long start = System.nanoTime();
+		long check = tokenize(buffer);
+		long time = System.nanoTime() - start;
+		double mb = buffer.remaining() / (double) (1 << 20);
+		System.out.println("Tokenized MB: " + String.format("%.1f", mb) + " MB/s: " + String.format("%.1f", mb * 1e9 / time) + " tokens: " + check);
+
+		int limit = Math.min(buffer.remaining(), 4 << 20);
+		ByteBuffer sample = (ByteBuffer) buffer.duplicate().limit(buffer.position() + limit);
+		String text = StandardCharsets.ISO_8859_1.decode(sample.duplicate()).toString();
+		games(sample, true);
+		start = System.nanoTime();
+		int count = games(sample, true);
+		time = System.nanoTime() - start;
+		System.out.println("Tokenizer games: " + count + " us/game: " + String.format("%.1f", time / 1e3 / count));
+
+		games(sample, false);
+		start = System.nanoTime();
+		count = games(sample, false);
+		time = System.nanoTime() - start;
+		System.out.println("Tokenizer games without replay: " + count + " us/game: " + String.format("%.1f", time / 1e3 / count));
+
+		start = System.nanoTime();
+		count = 0;
+		try (PgnReader reader = new PgnReader(new StringReader(text), PgnReader.ErrorPolicy.SKIP)) {
+			for (Game game : reader) count++;
+		}
+		time = System.nanoTime() - start;
+		System.out.println("Reader games: " + count + " us/game: " + String.format("%.1f", time / 1e3 / count));
+	}
+
+	private static long tokenize(ByteBuffer buffer) {
+		long check = 0L;
+		PgnTokenizer tokenizer = new PgnTokenizer(buffer);
+		for (int type = tokenizer.next(); type != PgnTokenizer.END; type = tokenizer.next()) {
+			check += type;
+		}
+		return check;
+	}
+
+	private static int games(ByteBuffer buffer, boolean replay) {
+		PgnTokenizer tokenizer = new PgnTokenizer(buffer);
+		int count = 0;
+		while (true) {
+			try {
+				if (tokenizer.nextGame(replay) == null) return count;
+				count++;
+			} catch (IllegalArgumentException e) {
+				tokenizer.skipGame();
+			}
+		}
+	}
+
+}
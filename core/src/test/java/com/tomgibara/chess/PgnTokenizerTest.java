@@ -0,0 +1,114 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class PgnTokenizerTest extends TestCase {
+
+	static PgnTokenizer tokenizer(String str) {
+		return new PgnTokenizer(ByteBuffer.wrap(str.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	private static List<String> tokens(String str) {
+		PgnTokenizer tokenizer = tokenizer(str);
+		List<String> tokens = new ArrayList<>();
+		for (int type = tokenizer.next(); type != PgnTokenizer.END; type = tokenizer.next()) {
+			switch (type) {
+			case PgnTokenizer.TAG: tokens.add(tokenizer.tagName() + "=" + tokenizer.tagValue()); break;
+			case PgnTokenizer.NUMBER: tokens.add("#" + tokenizer.token()); break;
+			case PgnTokenizer.RESULT: tokens.add("!" + tokenizer.token()); break;
+			case PgnTokenizer.BLANK: tokens.add("/"); break;
+			default: tokens.add(tokenizer.token().toString());
+			}
+		}
+		return tokens;
+	}
+
+	public void testTokens() {
+		assertEquals(
+				"[Event=Test, White=A \\\"B\\\", /, #1, e4, e5, #2, Nf3, Nc6, #3, Bb5, a6, !1-0]",
+				tokens("[Event \"Test\"]\r\n[ White  \"A \\\"B\\\"\" ]\r\n\r\n\r\n1.e4 e5 2. Nf3 Nc6 3. Bb5 a6 1-0").toString()
+				);
+	}
+
+	public void testSkipped() {
+		assertEquals(
+				"[#1, e4, e5, #2, Nf3, #2, Nc6, f4, !*]",
+				tokens("% escaped\n1. e4 {a comment\n\nover lines} e5 $1 2. Nf3!? (2. f4 (2. d4) exf4) 2... Nc6 ; rest of line\nf4?! *").toString()
+				);
+	}
+
+	public void testNotBlank() {
+		// lines containing whitespace are not empty
+		assertEquals("[#1, e4, /, #2]", tokens("\n1. e4\n \n\t\n\n\n2.").toString());
+	}
+
+	public void testSlices() {
+		PgnTokenizer tokenizer = tokenizer("  Qxe8+ ");
+		assertEquals(PgnTokenizer.SAN, tokenizer.next());
+		CharSequence token = tokenizer.token();
+		assertEquals(2, tokenizer.start());
+		assertEquals(5, token.length());
+		assertEquals('x', token.charAt(1));
+		assertEquals("e8", token.subSequence(2, 4).toString());
+		assertEquals(PgnTokenizer.END, tokenizer.next());
+		try {
+			tokenizer.tagName();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+	public void testMatchesNotation() throws IOException {
+		String corpus = PgnReaderTest.corpus();
+		List<String> expected = new ArrayList<>();
+		for (Game game : new PgnReader(new StringReader(corpus))) expected.add(describe(game));
+		List<String> actual = new ArrayList<>();
+		PgnTokenizer tokenizer = tokenizer(corpus);
+		for (Game game = tokenizer.nextGame(); game != null; game = tokenizer.nextGame()) actual.add(describe(game));
+		assertEquals(expected, actual);
+	}
+
+	public void testWithoutReplay() throws IOException {
+		String corpus = "[Event \"Annotated\"]\n\n1.e4 {best by test} e5 (1... c5) 2. Nf3 $1 Nc6 *\n\n" + PgnReaderTest.corpus();
+		PgnTokenizer eager = tokenizer(corpus);
+		PgnTokenizer lazy = tokenizer(corpus);
+		int count = 0;
+		for (Game game = lazy.nextGame(false); game != null; game = lazy.nextGame(false), count++) {
+			assertFalse(game.isReplayed());
+			assertEquals(describe(eager.nextGame()), describe(game));
+		}
+		assertNull(eager.nextGame());
+		assertEquals(PgnReaderTest.FILES.length + 1, count);
+	}
+
+	public void testSkipGame() throws IOException {
+		String corpus = PgnReaderTest.corpus(PgnReaderTest.ILLEGAL_MOVE, "[Event \"Bad tag]\n[Site \"X\"]\n\n1. e4 *\n");
+		PgnTokenizer tokenizer = tokenizer(corpus);
+		int games = 0;
+		int errors = 0;
+		while (true) {
+			try {
+				if (tokenizer.nextGame() == null) break;
+				games++;
+			} catch (IllegalArgumentException e) {
+				errors++;
+				tokenizer.skipGame();
+			}
+		}
+		assertEquals(2, errors);
+		assertEquals(PgnReaderTest.FILES.length, games);
+	}
+
+	private static String describe(Game game) {
+		return game.tags + " " + game.sequence().finalPosition().pieces() + " " + game.sequence().length();
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.tomgibara.chess;
+
+import java.util.Random;
+
+public class PiecesProfilingTest {
+
+	private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+	public static void main(String[] args) {
+		int rounds = args.length == 0 ? 20000 : Integer.parseInt(args[0]);
+		Sequence sequence = randomGame(new Random(0L), 200);
+		Position position = Notation.parseFENPosition(KIWIPETE);
+		// warm up before timing
+		replay(sequence, rounds / 10);
+		generate(position, rounds / 10);
+		copy(position.pieces(), rounds / 10);
+
+		long start = System.nanoTime();
+		long check = replay(sequence, rounds);
+		long time = System.nanoTime() - start;
+		long plies = 2L * (sequence.length() - 1) * rounds;
+		System.out.println("Replay plies: " + plies + " ns/ply: " + String.format("%.1f", (double) time / plies) + " check: " + check);
+
+		start = System.nanoTime();
+		check = generate(position, rounds * 10);
+		time = System.nanoTime() - start;
+		System.out.println("Generate calls: " + rounds * 10 + " ns/call: " + String.format("%.1f", (double) time / (rounds * 10)) + " check: " + check);
+
+		start = System.nanoTime();
+		check = copy(position.pieces(), rounds * 10);
+		time = System.nanoTime() - start;
+		System.out.println("Copy, equals and hash: " + rounds * 10 + " ns/op: " + String.format("%.1f", (double) time / (rounds * 10)) + " check: " + check);
+	}
+
+	// random legal moves until the game ends or the length is reached
+	private static Sequence randomGame(Random r, int length) {
+		Position position = new Sequence().position();
+		for (int i = 0; i < length; i++) {
+			PositionMoves moves = position.moves();
+			if (moves.moveCount() == 0) break;
+			position = moves.make(r.nextInt(moves.moveCount()));
+		}
+		return position.sequence;
+	}
+
+	private static long replay(Sequence sequence, int rounds) {
+		long check = 0L;
+		int last = sequence.length() - 1;
+		for (int i = 0; i < rounds; i++) {
+			sequence.toIndex(0);
+			sequence.toIndex(last);
+			check += sequence.position().key();
+		}
+		return check;
+	}
+
+	private static long generate(Position position, int rounds) {
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		long check = 0L;
+		for (int i = 0; i < rounds; i++) {
+			check += PositionMoves.generate(position, codes, 0);
+		}
+		return check;
+	}
+
+	private static long copy(Pieces pieces, int rounds) {
+		long check = 0L;
+		for (int i = 0; i < rounds; i++) {
+			Pieces copy = pieces.mutableCopy();
+			if (copy.equals(pieces)) check += copy.hashCode();
+		}
+		return check;
+	}
+
+}
@@ -3,6 +3,11 @@ package com.tomgibara.chess;
 import static com.tomgibara.chess.Colour.BLACK;
 import static com.tomgibara.chess.Colour.WHITE;
 import static com.tomgibara.chess.Square.at;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
 import junit.framework.TestCase;
 
 public class PiecesTest extends TestCase {
@@ -52,9 +57,68 @@ public class PiecesTest extends TestCase {
 			pieces.make(colour, m, p);
 			String desc = "Move: " + m + " Pieces: " + p;
 			assertFalse(desc, pieces.equals(initial));
+			assertFalse(desc, pieces.key() == initial.key());
+			assertMasks(desc, pieces);
 			pieces.takeBack(colour, m, p);
 			assertEquals(desc, initial, pieces);
+			assertEquals(desc, initial.key(), pieces.key());
+			assertMasks(desc, pieces);
 		});
 	}
+
+	public void testMasks() {
+		Pieces pieces = Board.initial().pieces;
+		assertMasks("initial", pieces);
+		assertEquals(0xffffL, pieces.mask(WHITE));
+		assertEquals(0x1000000000000000L, pieces.mask(Piece.BLACK_KING));
+		Pieces copy = pieces.mutableCopy();
+		assertMasks("copy", copy);
+		copy.clear();
+		assertEquals(0L, copy.mask(BLACK));
+		copy.set(at("d4"), Piece.WHITE_QUEEN);
+		assertEquals(at("d4").mask, copy.mask(Piece.WHITE_QUEEN));
+		copy.set(at("d4"), Piece.BLACK_QUEEN);
+		assertEquals(0L, copy.mask(WHITE));
+		assertMasks("replaced", copy);
+		assertMasks("immutable", copy.immutable());
+	}
+
+	public void testMapContract() {
+		Pieces pieces = Notation.parseFENPieces("4k3/8/8/q7/8/r3b3/3PP3/R3Kb1r");
+		Map<Square, Piece> map = new HashMap<>(pieces);
+		assertEquals(map, pieces);
+		assertEquals(pieces, map);
+		assertEquals(map.hashCode(), pieces.hashCode());
+		assertEquals(map.entrySet(), pieces.entrySet());
+		assertEquals(pieces.hashCode(), pieces.mutableCopy().hashCode());
+		assertTrue(pieces.containsValue(Piece.BLACK_QUEEN));
+		assertFalse(pieces.containsValue(Piece.WHITE_QUEEN));
+		Pieces copy = pieces.mutableCopy();
+		for (Iterator<Map.Entry<Square, Piece>> i = copy.entrySet().iterator(); i.hasNext(); ) {
+			if (i.next().getValue().colour == BLACK) i.remove();
+		}
+		assertEquals(pieces.mask(WHITE), copy.keySet().mask());
+		assertMasks("removed", copy);
+		try {
+			pieces.immutable().put(at("a1"), Piece.WHITE_KING);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+	// the maintained masks must agree with a scan of the squares
+	private void assertMasks(String desc, Pieces pieces) {
+		long[] masks = new long[Piece.COUNT];
+		pieces.forEach((s, p) -> masks[p.ordinal()] |= s.mask);
+		for (Piece piece : Piece.values()) {
+			assertEquals(desc + " " + piece, masks[piece.ordinal()], pieces.mask(piece));
+		}
+		for (Colour colour : Colour.values()) {
+			long mask = 0L;
+			for (Piece piece : Piece.piecesColoured(colour)) mask |= masks[piece.ordinal()];
+			assertEquals(desc + " " + colour, mask, pieces.mask(colour));
+		}
+	}
 	
 }
@@ -0,0 +1,151 @@
+package com.tomgibara.chess;
+
+import junit.framework.TestCase;
+
+public class PositionCursorTest extends TestCase {
+
+	private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+	public void testMatchesPositions() {
+		Position position = Notation.parseFENPosition(KIWIPETE);
+		check(new PositionCursor(position), position, new int[3 * MoveGenerator.MAX_MOVES], 0, 2);
+	}
+
+	// every cursor state must agree with the position reached by making the same moves
+	private void check(PositionCursor cursor, Position position, int[] stack, int offset, int depth) {
+		assertEquals(position.key(), cursor.key());
+		assertEquals(position.toMove, cursor.toMove());
+		assertEquals(position.castlingRights, cursor.castlingRights());
+		assertEquals(position.enPassantFile, cursor.enPassantFile());
+		assertEquals(position.moveNumber, cursor.moveNumber());
+		assertEquals(position.stalemateClock, cursor.stalemateClock());
+		assertEquals(position.pieces(), cursor.pieces());
+		if (depth == 0) return;
+		int count = cursor.generate(stack, offset);
+		PositionMoves moves = position.moves();
+		assertEquals(moves.moveCount(), count);
+		int before = cursor.depth();
+		for (int i = 0; i < count; i++) {
+			cursor.push(stack[offset + i]);
+			assertEquals(before + 1, cursor.depth());
+			Position child = moves.make(i);
+			check(cursor, child, stack, offset + count, depth - 1);
+			child.discard();
+			cursor.pop();
+			assertEquals(position.key(), cursor.key());
+		}
+	}
+
+	public void testToPosition() {
+		Position position = new Sequence().position().makeMove("e4").makeMove("c5").makeMove("e5").makeMove("d5");
+		PositionCursor cursor = new PositionCursor(new Sequence().position());
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		for (String san : new String[] {"e4", "c5", "e5", "d5"}) {
+			Position current = cursor.toPosition();
+			int index = current.moves().indexOfCode(current.moves().codeMatching(san));
+			cursor.generate(codes, 0);
+			cursor.push(codes[index]);
+		}
+		Position converted = cursor.toPosition();
+		assertEquals(position, converted);
+		assertEquals(File.FL_D, converted.enPassantFile);
+		assertEquals(position.moves().moveCount(), converted.moves().moveCount());
+		assertEquals(4, cursor.depth());
+	}
+
+	public void testCopy() {
+		PositionCursor cursor = new PositionCursor(new Sequence().position());
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		cursor.generate(codes, 0);
+		cursor.push(codes[0]);
+		PositionCursor copy = cursor.copy();
+		assertEquals(cursor.key(), copy.key());
+		assertEquals(codes[0], copy.code(0));
+		cursor.pop();
+		assertEquals(1, copy.depth());
+		assertFalse(cursor.key() == copy.key());
+		copy.pop();
+		assertEquals(cursor.key(), copy.key());
+	}
+
+	public void testPopEmpty() {
+		Position position = new Sequence().position();
+		PositionCursor cursor = new PositionCursor(position);
+		try {
+			cursor.pop();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		// the position's sequence is never affected by the cursor
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		cursor.generate(codes, 0);
+		cursor.push(codes[0]);
+		assertEquals(Board.initial().pieces, position.pieces());
+		assertEquals(1, position.sequence.length());
+	}
+
+	public void testCaptures() {
+		PositionCursor cursor = new PositionCursor(Notation.parseFENPosition(KIWIPETE));
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		int count = cursor.generateCaptures(codes, 0);
+		assertEquals(8, count);
+		// the bishop is the most valuable victim, and the queen the most valuable of the attackers of pawns
+		assertEquals(PositionMoves.code(Move.move("e2-a6"), MovePieces.regular(PieceType.BISHOP, PieceType.BISHOP)), codes[0]);
+		assertEquals(PositionMoves.code(Move.move("f3-f6"), MovePieces.regular(PieceType.QUEEN, PieceType.KNIGHT)), codes[1]);
+		assertEquals(PositionMoves.code(Move.move("f3-h3"), MovePieces.regular(PieceType.QUEEN, PieceType.PAWN)), codes[count - 1]);
+	}
+
+	public void testSee() {
+		PositionCursor cursor = new PositionCursor(Notation.parseFENPosition(KIWIPETE));
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		int count = cursor.generateCaptures(codes, 0);
+		Board board = cursor.pieces().newBoard();
+		for (int i = 0; i < count; i++) {
+			assertEquals(board.see(PositionMoves.codeMove(codes[i])), cursor.see(codes[i]));
+		}
+		// the bishop is taken free, but the queen is lost for the knight
+		assertEquals(300, cursor.see(codes[0]));
+		assertEquals(-600, cursor.see(codes[1]));
+		// the promotion is that of the code
+		cursor = new PositionCursor(Notation.parseFENPosition("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1"));
+		assertEquals(200, cursor.see(PositionMoves.code(Move.move("b7-b8"), MovePieces.promotion(null, PieceType.KNIGHT))));
+		assertEquals(800, cursor.see(PositionMoves.code(Move.move("b7-b8"), MovePieces.promotion(null, PieceType.QUEEN))));
+	}
+
+	public void testNullMove() {
+		Position position = new Sequence().position().makeMove("e4").makeMove("Nf6").makeMove("e5").makeMove("d5");
+		PositionCursor cursor = new PositionCursor(position);
+		cursor.pushNull();
+		Position passed = Notation.parseFENPosition("rnbqkb1r/ppp1pppp/5n2/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 1 3");
+		assertEquals(passed.key(), cursor.key());
+		assertEquals(Colour.BLACK, cursor.toMove());
+		assertNull(cursor.enPassantFile());
+		assertEquals(PositionMoves.NO_CODE, cursor.code(0));
+		cursor.pop();
+		assertEquals(position.key(), cursor.key());
+		assertEquals(File.FL_D, cursor.enPassantFile());
+		assertEquals(position.stalemateClock, cursor.stalemateClock());
+		assertEquals(position.pieces(), cursor.pieces());
+	}
+
+	public void testCheck() {
+		assertFalse(new PositionCursor(Notation.parseFENPosition(KIWIPETE)).isCheck());
+		PositionCursor cursor = new PositionCursor(Notation.parseFENPosition("4k3/8/8/8/8/8/8/4K2R w - - 0 1"));
+		assertFalse(cursor.isCheck());
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		int count = cursor.generate(codes, 0);
+		int checks = 0;
+		for (int i = 0; i < count; i++) {
+			cursor.push(codes[i]);
+			if (cursor.isCheck()) checks++;
+			cursor.pop();
+		}
+		// only Rh8 gives check, the king blocking the rook from the e-file
+		assertEquals(1, checks);
+		assertEquals(1L << 7, cursor.mask(Piece.WHITE_ROOK));
+		assertEquals(1L << 4 | 1L << 7, cursor.mask(Colour.WHITE));
+		assertEquals(1L << 4 | 1L << 7 | 1L << 60, cursor.occupied());
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class PositionIndexProfilingTest {
+
+	// builds an index over the lazily parsed corpus, repeated, and times lookups of every position
+	public static void main(String[] args) throws IOException {
+		int rounds = args.length == 0 ? 2000 : Integer.parseInt(args[0]);
+		StringBuilder sb = new StringBuilder();
+		String corpus = GameArchiveTest.corpus();
+		for (int i = 0; i < rounds; i++) sb.append(corpus);
+		List<Game> games = new ArrayList<>();
+		for (Game game : new PgnReader(new StringReader(sb.toString()), PgnReader.ErrorPolicy.FAIL, false)) games.add(game);
+		List<Position> positions = new ArrayList<>();
+		for (Game game : GameArchiveTest.games()) game.sequence().forEach(positions::add);
+
+		Path path = Files.createTempFile("positions", ".idx");
+		try {
+			long start = System.nanoTime();
+			PositionIndex index = PositionIndex.build(games, path, ForkJoinPool.commonPool());
+			long time = System.nanoTime() - start;
+			System.out.println("Games: " + index.gameCount() + " positions: " + index.positionCount() + " bytes: " + Files.size(path) + " build ms: " + time / 1000000);
+			for (int pass = 0; pass < 4; pass++) {
+				long ids = 0L;
+				start = System.nanoTime();
+				for (Position position : positions) ids += index.games(position).length;
+				time = System.nanoTime() - start;
+				if (pass == 3) System.out.println("Lookups: " + positions.size() + " ids: " + ids + " us/lookup: " + String.format("%.1f", time / 1e3 / positions.size()));
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+}
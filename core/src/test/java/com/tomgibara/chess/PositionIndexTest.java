@@ -0,0 +1,127 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+public class PositionIndexTest extends TestCase {
+
+	private Path dir;
+	private ForkJoinPool pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("index");
+		pool = new ForkJoinPool(2);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		pool.shutdown();
+		try (Stream<Path> paths = Files.list(dir)) {
+			for (Path path : (Iterable<Path>) paths::iterator) Files.delete(path);
+		}
+		Files.delete(dir);
+	}
+
+	private static Map<Long, TreeSet<Integer>> expected(List<Game> games) {
+		Map<Long, TreeSet<Integer>> map = new HashMap<>();
+		for (int i = 0; i < games.size(); i++) {
+			int id = i;
+			games.get(i).sequence().forEach(p -> map.computeIfAbsent(p.key(), k -> new TreeSet<>()).add(id));
+		}
+		return map;
+	}
+
+	private static void assertIndex(Map<Long, TreeSet<Integer>> expected, int gameCount, PositionIndex index) {
+		assertEquals(gameCount, index.gameCount());
+		assertEquals(expected.size(), index.positionCount());
+		for (Map.Entry<Long, TreeSet<Integer>> entry : expected.entrySet()) {
+			int[] ids = index.games(entry.getKey());
+			assertEquals(entry.getValue().size(), ids.length);
+			int i = 0;
+			for (int id : entry.getValue()) assertEquals(id, ids[i++]);
+		}
+	}
+
+	public void testBuild() throws IOException {
+		List<Game> games = GameArchiveTest.games();
+		Map<Long, TreeSet<Integer>> expected = expected(games);
+		Path path = dir.resolve("games.idx");
+		// small runs exercise the merge
+		for (int runGames : new int[] {1, 3, 1000}) {
+			assertIndex(expected, games.size(), PositionIndex.build(games, path, pool, runGames));
+		}
+		assertIndex(expected, games.size(), PositionIndex.open(path));
+		// only the index remains
+		try (Stream<Path> paths = Files.list(dir)) {
+			assertEquals(1L, paths.count());
+		}
+	}
+
+	public void testLookup() throws IOException {
+		List<Game> games = GameArchiveTest.games();
+		PositionIndex index = PositionIndex.build(games, dir.resolve("games.idx"), pool, 2);
+		// every game but the one set up starts from the initial position
+		int[] ids = index.games(new Sequence().initialPosition());
+		assertEquals(games.size() - 1, ids.length);
+		for (int i = 0; i < games.size(); i++) {
+			Position last = games.get(i).sequence().finalPosition();
+			boolean found = false;
+			for (int id : index.games(last)) found |= id == i;
+			assertTrue(found);
+		}
+		long key = 0L;
+		while (expected(games).containsKey(key)) key++;
+		assertEquals(0, index.games(key).length);
+	}
+
+	public void testLazyGames() throws IOException {
+		List<Game> games = new ArrayList<>();
+		for (Game game : new PgnReader(new StringReader(GameArchiveTest.corpus()), PgnReader.ErrorPolicy.FAIL, false)) games.add(game);
+		PositionIndex index = PositionIndex.build(games, dir.resolve("games.idx"), pool, 2);
+		assertIndex(expected(GameArchiveTest.games()), games.size(), index);
+	}
+
+	public void testEmpty() throws IOException {
+		PositionIndex index = PositionIndex.build(new ArrayList<Game>(), dir.resolve("games.idx"), pool);
+		assertEquals(0, index.gameCount());
+		assertEquals(0L, index.positionCount());
+		assertEquals(0, index.games(new Sequence().initialPosition()).length);
+	}
+
+	public void testInvalid() throws IOException {
+		Path path = dir.resolve("games.idx");
+		Files.write(path, new byte[64]);
+		try {
+			PositionIndex.open(path);
+			fail();
+		} catch (IOException e) {
+			/* expected */
+		}
+		List<Game> games = new ArrayList<>();
+		for (Game game : new PgnReader(new StringReader(PgnReaderTest.corpus(PgnReaderTest.ILLEGAL_MOVE)), PgnReader.ErrorPolicy.FAIL, false)) games.add(game);
+		try {
+			PositionIndex.build(games, dir.resolve("invalid.idx"), pool, 2);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		Files.deleteIfExists(dir.resolve("invalid.idx"));
+		// no runs are left behind
+		try (Stream<Path> paths = Files.list(dir)) {
+			assertEquals(1L, paths.count());
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.tomgibara.chess;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -30,6 +31,80 @@ public class PositionMovesTest extends TestCase {
 		assertEquals(8, notation.size());
 	}
 
+	public void testResolve() {
+		String[] fens = Arrays.copyOf(MoveGeneratorTest.FENS, MoveGeneratorTest.FENS.length + 2);
+		fens[fens.length - 2] = "6bR/5k2/8/8/8/8/N4p2/KN4bR w - - 0 1";
+		fens[fens.length - 1] = "kn6/P6P/8/8/8/b1n5/8/K7 w - - 0 1";
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		for (String fen : fens) {
+			Position position = Notation.parseFENPosition(fen);
+			PositionMoves moves = position.moves();
+			int count = PositionMoves.generate(position, codes, 0);
+			assertEquals(moves.moveCount(), count);
+			for (int i = 0; i < count; i++) {
+				String san = " " + moves.notation(i) + "+! ";
+				assertEquals(san, codes[i], PositionMoves.resolve(codes, 0, count, san, 1, san.length() - 2));
+			}
+		}
+	}
+
+	public void testResolveStatus() {
+		Position position = Notation.parseFENPosition("6bR/5k2/8/8/8/8/N4p2/KN4bR w - - 0 1");
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		int count = PositionMoves.generate(position, codes, 0);
+		assertEquals(PositionMoves.AMBIGUOUS_CODE, resolve(codes, count, "Nc3"));
+		assertEquals(PositionMoves.AMBIGUOUS_CODE, resolve(codes, count, "Rh7"));
+		assertEquals(PositionMoves.NO_CODE, resolve(codes, count, "Nd3"));
+		assertEquals(PositionMoves.NO_CODE, resolve(codes, count, "Rg8"));
+		assertEquals(PositionMoves.NO_CODE, resolve(codes, count, "O-O"));
+		assertEquals(PositionMoves.MALFORMED_CODE, resolve(codes, count, ""));
+		assertEquals(PositionMoves.MALFORMED_CODE, resolve(codes, count, "+"));
+		assertEquals(PositionMoves.MALFORMED_CODE, resolve(codes, count, "Ni9"));
+		assertEquals(PositionMoves.MALFORMED_CODE, resolve(codes, count, "Rxg8=Q"));
+		assertEquals(PositionMoves.MALFORMED_CODE, resolve(codes, count, "O-O-"));
+		assertEquals(PositionMoves.MALFORMED_CODE, resolve(codes, count, "xg8"));
+
+		position = Notation.parseFENPosition("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		count = PositionMoves.generate(position, codes, 0);
+		assertEquals(PositionMoves.code(Move.move("e1-g1"), MovePieces.regular(PieceType.KING, null)), resolve(codes, count, "0-0"));
+		assertEquals(PositionMoves.code(Move.move("e1-c1"), MovePieces.regular(PieceType.KING, null)), resolve(codes, count, "O-O-O"));
+		assertEquals(PositionMoves.code(Move.move("d5-e6"), MovePieces.regular(PieceType.PAWN, PieceType.PAWN)), resolve(codes, count, "dxe6"));
+		assertEquals(PositionMoves.NO_CODE, resolve(codes, count, "de6"));
+		assertEquals(PositionMoves.NO_CODE, resolve(codes, count, "Nd7"));
+	}
+
+	public void testResolveWithoutAllocating() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) return;
+		Position position = Notation.parseFENPosition("6bR/5k2/8/8/8/8/N4p2/KN4bR w - - 0 1");
+		int[] codes = new int[MoveGenerator.MAX_MOVES];
+		int count = PositionMoves.generate(position, codes, 0);
+		String text = "1. Nac3 Rxg8 R8h7+ f1=Q Nd3";
+		long id = Thread.currentThread().getId();
+		long check = 0L;
+		for (int i = 0; i < 10000; i++) check += resolveAll(codes, count, text);
+		long before = bean.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 10000; i++) check += resolveAll(codes, count, text);
+		long bytes = bean.getThreadAllocatedBytes(id) - before;
+		// allow for anything allocated by the measurement itself
+		assertTrue("allocated " + bytes + " bytes", bytes < 1024);
+		assertTrue(check != 0L);
+	}
+
+	private static int resolve(int[] codes, int count, String san) {
+		return PositionMoves.resolve(codes, 0, count, san, 0, san.length());
+	}
+
+	private static long resolveAll(int[] codes, int count, String text) {
+		long sum = 0L;
+		for (int i = 0, j = text.indexOf(' '); i < text.length(); i = j + 1, j = text.indexOf(' ', i)) {
+			if (j < 0) j = text.length();
+			sum += PositionMoves.resolve(codes, 0, count, text, i, j - i);
+		}
+		return sum;
+	}
+
 	private static Set<String> notation(String str) {
 		return new HashSet<>(Arrays.asList(str.split(",")));
 	}
@@ -0,0 +1,183 @@
+package com.tomgibara.chess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+public class PositionSetTest extends TestCase {
+
+	private Path dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("positions");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Files.delete(dir);
+	}
+
+	// random keys drawn from a small range so that many repeat
+	private static long[][] keys(int count, int words, int distinct, long seed) {
+		Random r = new Random(seed);
+		long[][] keys = new long[count][];
+		for (int i = 0; i < count; i++) {
+			long[] key = new long[words];
+			int k = r.nextInt(distinct);
+			for (int j = 0; j < words; j++) key[j] = k * 0x5851f42d4c957f2dL + j - (j == 0 && k % 3 == 0 ? Long.MIN_VALUE : 0L);
+			keys[i] = key;
+		}
+		return keys;
+	}
+
+	private static Map<List<Long>, Long> expected(long[][] keys) {
+		Map<List<Long>, Long> map = new HashMap<>();
+		for (long[] key : keys) {
+			List<Long> list = new ArrayList<>();
+			for (long word : key) list.add(word);
+			map.merge(list, (long) key.length, Long::sum);
+		}
+		return map;
+	}
+
+	private static Map<List<Long>, Long> contents(PositionMap map) throws IOException {
+		Map<List<Long>, Long> contents = new HashMap<>();
+		long[] previous = new long[map.keyWords()];
+		long count = map.forEach((key, value) -> {
+			if (!contents.isEmpty()) assertTrue(OffHeapTable.compare(previous, key, key.length) < 0);
+			System.arraycopy(key, 0, previous, 0, key.length);
+			List<Long> list = new ArrayList<>();
+			for (long word : key) list.add(word);
+			assertNull(contents.put(list, value));
+		});
+		assertEquals(contents.size(), count);
+		return contents;
+	}
+
+	public void testSet() throws IOException {
+		for (int capacity : new int[] {100, 1000, 100000}) {
+			long[][] keys = keys(5000, 3, 700, capacity);
+			try (PositionSet set = new PositionSet(3, capacity, dir)) {
+				for (long[] key : keys) set.add(key);
+				List<long[]> visited = new ArrayList<>();
+				long count = set.forEach(key -> visited.add(key.clone()));
+				assertEquals(expected(keys).size(), count);
+				assertEquals(expected(keys).size(), visited.size());
+				// ordered across the whole set, not only within each stripe
+				for (int i = 1; i < visited.size(); i++) {
+					assertTrue(OffHeapTable.compare(visited.get(i - 1), visited.get(i), 3) < 0);
+				}
+				// traversal may be repeated
+				assertEquals(count, set.forEach(key -> {}));
+				if (capacity < 700) assertTrue(set.runCount() > 0);
+				if (capacity == 100000) {
+					assertEquals(0, set.runCount());
+					assertEquals(count, set.memorySize());
+				}
+			}
+			try (Stream<Path> paths = Files.list(dir)) {
+				assertEquals(0L, paths.count());
+			}
+		}
+	}
+
+	// a small capacity spills very many runs, which are merged down before they are traversed
+	public void testManyRuns() throws IOException {
+		long[][] keys = keys(8000, 2, 4000, 7L);
+		try (PositionMap map = new PositionMap(2, 100, dir)) {
+			for (long[] key : keys) map.add(key, 1L);
+			assertTrue(map.runCount() > OffHeapTable.MAX_FAN_IN * OffHeapTable.MAX_FAN_IN);
+			Map<List<Long>, Long> expected = new HashMap<>();
+			for (Map.Entry<List<Long>, Long> entry : expected(keys).entrySet()) expected.put(entry.getKey(), entry.getValue() / 2);
+			assertEquals(expected, contents(map));
+			assertTrue(map.runCount() <= OffHeapTable.MAX_FAN_IN);
+			// merging has not changed the contents
+			assertEquals(expected, contents(map));
+			try (Stream<Path> paths = Files.list(dir)) {
+				assertEquals(map.runCount(), paths.count());
+			}
+		}
+	}
+
+	public void testAdd() throws IOException {
+		try (PositionSet set = new PositionSet(2, 100, dir)) {
+			set.add(new long[] {1L, 2L});
+			set.add(new long[] {1L, 2L});
+			set.add(new long[] {2L, 1L});
+			// only the leading words are used
+			set.add(new long[] {2L, 1L, 3L});
+			assertEquals(2L, set.memorySize());
+			assertEquals(2L, set.forEach(key -> {}));
+			try {
+				set.add(new long[] {1L});
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+			try {
+				set.add(new Sequence().initialPosition());
+				fail();
+			} catch (IllegalStateException e) {
+				/* expected */
+			}
+		}
+	}
+
+	public void testMap() throws IOException {
+		for (int capacity : new int[] {50, 100000}) {
+			long[][] keys = keys(3000, 2, 400, capacity);
+			try (PositionMap map = new PositionMap(2, capacity, dir)) {
+				for (long[] key : keys) map.add(key, key.length);
+				assertEquals(expected(keys), contents(map));
+			}
+		}
+	}
+
+	public void testPositions() throws IOException {
+		List<Game> games = GameArchiveTest.games();
+		Map<List<Long>, Long> expected = new HashMap<>();
+		try (PositionMap map = new PositionMap(1, 64, dir)) {
+			for (Game game : games) {
+				game.sequence().forEach(p -> {
+					map.add(p, 1L);
+					expected.merge(Collections.singletonList(p.key()), 1L, Long::sum);
+				});
+			}
+			assertEquals(expected, contents(map));
+		}
+	}
+
+	public void testConcurrent() throws Exception {
+		int threads = 4;
+		long[][] keys = keys(40000, 4, 5000, 0L);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (PositionMap map = new PositionMap(4, 2000, dir)) {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int from = t * keys.length / threads;
+				int to = (t + 1) * keys.length / threads;
+				futures.add(executor.submit(() -> {
+					for (int i = from; i < to; i++) map.add(keys[i], keys[i].length);
+				}));
+			}
+			for (Future<?> future : futures) future.get();
+			assertEquals(expected(keys), contents(map));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.tomgibara.chess;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PositionTest extends TestCase {
+
+	public void testKeyTranspositions() {
+		Position p1 = new Sequence().position().makeMove("Nf3").makeMove("Nf6").makeMove("Nc3").makeMove("Nc6");
+		Position p2 = new Sequence().position().makeMove("Nc3").makeMove("Nc6").makeMove("Nf3").makeMove("Nf6");
+		assertEquals(p1.key(), p2.key());
+		assertEquals(p1, p2);
+		assertEquals(p1.hashCode(), p2.hashCode());
+	}
+
+	// discarded positions are compared by the pieces they had, as keys alone may collide
+	public void testDiscardedEquals() {
+		Sequence sequence = new Sequence();
+		Position nf3 = sequence.position().makeMove("Nf3");
+		Position nf6 = nf3.makeMove("Nf6");
+		Position nc3 = nf6.makeMove("Nc3");
+		Position nc6 = nc3.makeMove("Nc6");
+		Position other = new Sequence().position().makeMove("Nc3").makeMove("Nc6").makeMove("Nf3").makeMove("Nf6");
+		// discarded while the sequence is in an earlier state
+		sequence.initialPosition();
+		sequence.setLength(2);
+		assertEquals(nc6, other);
+		assertFalse(nc3.equals(other));
+		assertFalse(other.equals(nc3));
+		assertEquals(nf6, new Sequence().position().makeMove("Nf3").makeMove("Nf6"));
+		// and discarded singly, from the last position
+		nf3.discard();
+		assertEquals(nf3, new Sequence().position().makeMove("Nf3"));
+		assertFalse(nf3.equals(nf6));
+		assertFalse(nf3.equals(sequence.position()));
+	}
+
+	public void testKeyState() {
+		Position initial = new Sequence().position();
+		Position returned = initial.makeMove("Nf3").makeMove("Nf6").makeMove("Ng1").makeMove("Ng8");
+		// same pieces, castling rights and side to move
+		assertEquals(initial.key(), returned.key());
+		// differ only in the side to move
+		assertFalse(Notation.parseFENPosition("4k3/8/8/8/8/8/8/4K3 w - - 0 1").key() == Notation.parseFENPosition("4k3/8/8/8/8/8/8/4K3 b - - 0 1").key());
+		// differ only in castling rights
+		assertFalse(Notation.parseFENPosition("r3k3/8/8/8/8/8/8/4K3 b q - 0 1").key() == Notation.parseFENPosition("r3k3/8/8/8/8/8/8/4K3 b - - 0 1").key());
+		// differ only in en-passant file
+		Position passant = initial.makeMove("e4").makeMove("Nf6").makeMove("e5").makeMove("d5");
+		assertEquals(File.FL_D, passant.enPassantFile);
+		assertFalse(passant.key() == Notation.parseFENPosition("rnbqkb1r/ppp1pppp/5n2/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq - 0 3").key());
+		assertEquals(passant.key(), Notation.parseFENPosition("rnbqkb1r/ppp1pppp/5n2/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3").key());
+		// an en-passant file on which no pawn can capture is not retained
+		assertNull(initial.makeMove("e4").enPassantFile);
+		assertEquals(initial.makeMove("e4").key(), Notation.parseFENPosition("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1").key());
+		assertEquals(initial.makeMove("e4").key(), Notation.parseFENPosition("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1").key());
+		// nor is one on which the only capture would expose the king
+		Position pinned = Notation.parseFENPosition("8/8/8/8/k2Pp2Q/8/8/4K3 b - d3 0 1");
+		assertNull(pinned.enPassantFile);
+		assertNotNull(Notation.parseFENPosition("8/8/8/8/k2Pp3/8/8/4K2Q b - d3 0 1").enPassantFile);
+	}
+
+	public void testKeyIncremental() {
+		Random r = new Random(0L);
+		for (int j = 0; j < 100; j++) {
+			Position position = new Sequence().position();
+			for (int i = 0; i < 60; i++) {
+				int count = position.moves().moveCount();
+				if (count == 0) break;
+				position = position.moves().make(r.nextInt(count));
+				Position fresh = position.pieces().newPositionFor(position.toMove, position.castlingRights, position.enPassantFile);
+				assertEquals(fresh.key(), position.key());
+			}
+		}
+	}
+
+}
@@ -1,10 +1,10 @@
 package com.tomgibara.chess;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.file.Paths;
+import java.util.List;
+
+import com.tomgibara.chess.PgnReader.ErrorPolicy;
 
 public class ProfilingTest {
 	
@@ -13,57 +13,29 @@ public class ProfilingTest {
 	}
 	
 	private static void test(String fileName) throws IOException {
-		int gameCount = 0;
-		int lineCount = 0;
+		int errorCount = 0;
 		String lastDetails = null;
-		try (BR br = new BR( new InputStreamReader( new FileInputStream(fileName)))) {
+		try (PgnReader reader = PgnReader.open(Paths.get(fileName), ErrorPolicy.COLLECT)) {
 			long start = System.currentTimeMillis();
-			while (!br.eof) {
-				Game game = null;
-				try {
-					game = Notation.parse(br);
-				} catch (RuntimeException e) {
-					System.err.println("Line of errored game: " + lineCount);
-					System.err.println("Previous game: " + lastDetails);
-					e.printStackTrace();
-					// find a first move
-					for (String line = br.readLine(); line != null && !line.startsWith("1."); line = br.readLine());
-					// find a blank line
-					for (String line = br.readLine(); line != null && !line.isEmpty(); line = br.readLine());
-				}
-				if (game != null) {
-					gameCount++;
-					lineCount = br.lineCount;
+			try {
+				for (Game game : reader) {
+					// taking the errors keeps memory bounded over large files
+					for (PgnReader.GameError error : reader.takeErrors()) {
+						errorCount++;
+						System.err.println("Line of errored game: " + error.line);
+						error.exception.printStackTrace();
+					}
 					lastDetails = "Event: " + game.event() + " White: " + game.white() + " Black: " + game.black();
-					if ((gameCount % 1000) == 0) {
+					if ((reader.gameCount() % 1000) == 0) {
 						long time = System.currentTimeMillis() - start;
-						System.out.println("Games processed: " + gameCount + " Lines processed: " + lineCount + " Seconds: " + (time / 1000.0));
+						System.out.println("Games processed: " + reader.gameCount() + " Lines processed: " + reader.lineCount() + " Seconds: " + (time / 1000.0));
 					}
 				}
+			} finally {
+				System.out.println("Parsed: " + reader.gameCount() + " to line " + reader.lineCount() + " with " + (errorCount + reader.errors().size()) + " errors");
+				System.out.println(lastDetails);
 			}
-		} finally {
-			System.out.println("Parsed: " + gameCount + " to line " + lineCount);
-			System.out.println(lastDetails);
-		}
-	}
-	
-	private static class BR extends BufferedReader {
-		
-		int lineCount = 0;
-		boolean eof;
-		
-		BR(Reader reader) {
-			super(reader);
-		}
-		
-		@Override
-		public String readLine() throws IOException {
-			String line = super.readLine();
-			eof = line == null;
-			if (!eof) lineCount ++;
-			return line;
 		}
-		
 	}
 	
 }
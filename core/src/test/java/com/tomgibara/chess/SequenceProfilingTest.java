@@ -0,0 +1,39 @@
+package com.tomgibara.chess;
+
+import java.util.Random;
+
+public class SequenceProfilingTest {
+
+	// times random access to the pieces of positions by game length and checkpoint interval
+	public static void main(String[] args) {
+		int accesses = args.length == 0 ? 100000 : Integer.parseInt(args[0]);
+		int[] lengths = {50, 100, 200, 300, 600};
+		int[] intervals = {0, 4, 16, 64};
+		Random r = new Random(0L);
+		for (int length : lengths) {
+			// random games may end early, so keep the longest of several attempts
+			Sequence sequence = SequenceTest.randomSequence(r, length);
+			for (int i = 0; i < 20 && sequence.length() <= length; i++) {
+				Sequence candidate = SequenceTest.randomSequence(r, length);
+				if (candidate.length() > sequence.length()) sequence = candidate;
+			}
+			StringBuilder sb = new StringBuilder("Plies: " + (sequence.length() - 1));
+			for (int interval : intervals) {
+				sequence.setCheckpointInterval(interval);
+				long time = 0L;
+				// the early passes warm up
+				for (int pass = 0; pass < 3; pass++) {
+					Random indices = new Random(pass);
+					long start = System.nanoTime();
+					for (int i = 0; i < accesses; i++) {
+						sequence.position(indices.nextInt(sequence.length())).activePieces();
+					}
+					time = System.nanoTime() - start;
+				}
+				sb.append(" interval ").append(interval).append(": ").append(String.format("%.0f", (double) time / accesses)).append("ns");
+			}
+			System.out.println(sb);
+		}
+	}
+
+}
@@ -2,6 +2,8 @@ package com.tomgibara.chess;
 
 import static com.tomgibara.chess.Move.move;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -72,7 +74,119 @@ public class SequenceTest extends TestCase {
 		assertEquals(kiaExpected(), position);
 	}
 	
+	public void testCastlingRights() {
+		Position position = Notation.parseFENPosition("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		assertEquals(CastlingRights.BG_BC_WG___, position.makeMove("Rb1").castlingRights);
+		assertEquals(CastlingRights.BG_BC____WC, position.makeMove("Rg1").castlingRights);
+		assertEquals(CastlingRights.___BC____WC, position.makeMove("Rxh8").castlingRights);
+		assertEquals(CastlingRights.BG_BC______, position.makeMove("Kd1").castlingRights);
+	}
+
 	private Position kiaExpected() {
 		return Notation.parseFENPosition("r1bq1rk1/pp2bppp/2n1pn2/2pp4/4P3/3P1NP1/PPPN1PBP/R1BQ1RK1 w - - 5 8");
 	}
+	// a random game of up to the given number of plies
+	static Sequence randomSequence(Random r, int plies) {
+		Sequence sequence = new Sequence();
+		Position position = sequence.position();
+		for (int i = 0; i < plies; i++) {
+			int count = position.moves().moveCount();
+			if (count == 0) break;
+			position = position.moves().make(r.nextInt(count));
+		}
+		return sequence;
+	}
+
+	public void testCheckpoints() {
+		Random r = new Random(0L);
+		for (int interval : new int[] {1, 7, 32}) {
+			Sequence sequence = randomSequence(r, 300);
+			List<Pieces> expected = new ArrayList<>();
+			sequence.forEach(p -> expected.add(p.pieces()));
+			sequence.setCheckpointInterval(interval);
+			assertEquals(interval, sequence.checkpointInterval());
+			for (int i = 0; i < 2000; i++) {
+				int index = r.nextInt(sequence.length());
+				assertEquals(expected.get(index), sequence.position(index).pieces());
+			}
+			// discarded checkpoints are not restored
+			int length = sequence.length() / 2;
+			sequence.setLength(length);
+			Position position = sequence.finalPosition();
+			for (int i = 0; i < 40; i++) {
+				int count = position.moves().moveCount();
+				if (count == 0) break;
+				position = position.moves().make(r.nextInt(count));
+			}
+			List<Pieces> replaced = new ArrayList<>();
+			sequence.forEach(p -> replaced.add(p.pieces()));
+			for (int i = 0; i < 2000; i++) {
+				int index = r.nextInt(sequence.length());
+				assertEquals(replaced.get(index), sequence.position(index).pieces());
+			}
+			for (int i = 0; i < length; i++) assertEquals(expected.get(i), replaced.get(i));
+		}
+	}
+
+	public void testCheckpointsShared() {
+		Sequence sequence = randomSequence(new Random(1L), 100);
+		Sequence copy = sequence.immutable();
+		copy.setCheckpointInterval(10);
+		assertEquals(10, sequence.checkpointInterval());
+		assertEquals(sequence.position(50).pieces(), copy.position(50).pieces());
+	}
+
+	public void testEndPositions() {
+		Sequence sequence = new Sequence().position()
+				.makeMove("e4").makeMove("e5")
+				.makeMove("Nf3").makeMove("Nc6")
+				.sequence;
+		assertEquals(Board.initial().pieces, sequence.initialPosition().pieces());
+		assertEquals(Notation.parseFENPieces("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R"), sequence.finalPosition().pieces());
+		sequence.initialPosition();
+		assertEquals(Notation.parseFENPieces("rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R"), sequence.position(3).pieces());
+	}
+
+	public void testRepetition() {
+		Position position = new Sequence().position().makeMove("Nc3").makeMove("Nc6");
+		assertFalse(position.isRepetition(2));
+		assertTrue(position.isRepetition(1));
+		for (int i = 0; i < 2; i++) {
+			position = position.makeMove("Nf3").makeMove("Nf6").makeMove("Ng1").makeMove("Ng8");
+		}
+		Sequence sequence = position.sequence;
+		assertTrue(sequence.position(6).isRepetition(2));
+		assertFalse(sequence.position(6).isRepetition(3));
+		assertTrue(sequence.position(10).isRepetition(3));
+		assertFalse(sequence.position(10).isRepetition(4));
+		assertFalse(sequence.position(3).isRepetition(2));
+		// continuations inherit the keys of the positions that precede them
+		Position continued = sequence.position(6).makeMove("Nf3");
+		assertNotSame(sequence, continued.sequence);
+		assertTrue(continued.isRepetition(2));
+		continued = continued.makeMove("Nf6").makeMove("Ng1").makeMove("Ng8");
+		assertTrue(continued.isRepetition(3));
+		assertTrue(sequence.immutable().position(10).isRepetition(3));
+		// positions before an irreversible move cannot recur
+		position = position.makeMove("d4");
+		assertTrue(position.isRepetition(1));
+		assertFalse(position.isRepetition(2));
+		// a double pawn push that no pawn can capture en passant repeats as any other move
+		position = new Sequence().position().makeMove("e4");
+		for (int i = 0; i < 2; i++) {
+			position = position.makeMove("Nf6").makeMove("Nf3").makeMove("Ng8").makeMove("Ng1");
+		}
+		assertTrue(position.isRepetition(3));
+	}
+
+	public void testFiftyMoveDraw() {
+		Position position = Notation.parseFENPosition("4k3/8/8/8/8/8/8/4K1N1 w - - 98 80");
+		assertFalse(position.isFiftyMoveDraw());
+		position = position.makeMove("Nf3");
+		assertFalse(position.isFiftyMoveDraw());
+		position = position.makeMove("Kd7");
+		assertTrue(position.isFiftyMoveDraw());
+		position = Notation.parseFENPosition("4k3/8/8/8/8/8/4P3/4K3 w - - 99 80").makeMove("e3");
+		assertFalse(position.isFiftyMoveDraw());
+	}
 }
@@ -0,0 +1,48 @@
+package com.tomgibara.chess;
+
+import java.util.Random;
+
+public class SlidingAttacksProfilingTest {
+
+	private static final int OCCUPANCIES = 4096;
+
+	public static void main(String[] args) {
+		int rounds = args.length == 0 ? 2000 : Integer.parseInt(args[0]);
+		long[] occupancies = occupancies(new Random(0L));
+		// warm up all backends before timing any of them
+		for (SlidingAttacks attacks : SlidingAttacks.values()) {
+			run(attacks, occupancies, rounds / 10);
+		}
+		System.out.println("Selected: " + SlidingAttacks.selected());
+		for (SlidingAttacks attacks : SlidingAttacks.values()) {
+			long start = System.nanoTime();
+			long check = run(attacks, occupancies, rounds);
+			long time = System.nanoTime() - start;
+			long lookups = 2L * 64 * OCCUPANCIES * rounds;
+			System.out.println(attacks + " lookups: " + lookups + " ns/lookup: " + String.format("%.2f", (double) time / lookups) + " check: " + Long.toHexString(check));
+		}
+	}
+
+	// sparse random boards, roughly as populated as a middle game
+	private static long[] occupancies(Random r) {
+		long[] occupancies = new long[OCCUPANCIES];
+		for (int i = 0; i < OCCUPANCIES; i++) {
+			occupancies[i] = r.nextLong() & r.nextLong();
+		}
+		return occupancies;
+	}
+
+	private static long run(SlidingAttacks attacks, long[] occupancies, int rounds) {
+		long check = 0L;
+		for (int round = 0; round < rounds; round++) {
+			for (long occupied : occupancies) {
+				for (int ordinal = 0; ordinal < 64; ordinal++) {
+					check ^= attacks.bishop(ordinal, occupied);
+					check += attacks.rook(ordinal, occupied);
+				}
+			}
+		}
+		return check;
+	}
+
+}
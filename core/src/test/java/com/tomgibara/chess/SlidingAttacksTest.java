@@ -0,0 +1,60 @@
+package com.tomgibara.chess;
+
+import static com.tomgibara.chess.Square.at;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SlidingAttacksTest extends TestCase {
+
+	public void testBackendsAgree() {
+		Random r = new Random(0L);
+		for (int i = 0; i < 1000; i++) {
+			long occupied = r.nextLong() & r.nextLong();
+			for (int ordinal = 0; ordinal < 64; ordinal++) {
+				long bishop = SlidingAttacks.RAY.bishop(ordinal, occupied);
+				long rook = SlidingAttacks.RAY.rook(ordinal, occupied);
+				for (SlidingAttacks attacks : SlidingAttacks.values()) {
+					assertEquals(attacks.toString(), bishop, attacks.bishop(ordinal, occupied));
+					assertEquals(attacks.toString(), rook, attacks.rook(ordinal, occupied));
+				}
+			}
+		}
+	}
+
+	public void testExhaustive() {
+		// every blocker arrangement on the rays of every square, so any destructive table collision is exposed
+		for (SlidingAttacks attacks : SlidingAttacks.values()) {
+			if (attacks == SlidingAttacks.RAY) continue;
+			for (int ordinal = 0; ordinal < 64; ordinal++) {
+				long mask = SlidingAttacks.RAY.rook(ordinal, 0L);
+				long occupied = 0L;
+				do {
+					assertEquals(attacks.toString(), SlidingAttacks.RAY.rook(ordinal, occupied), attacks.rook(ordinal, occupied));
+					occupied = (occupied - mask) & mask;
+				} while (occupied != 0L);
+				mask = SlidingAttacks.RAY.bishop(ordinal, 0L);
+				do {
+					assertEquals(attacks.toString(), SlidingAttacks.RAY.bishop(ordinal, occupied), attacks.bishop(ordinal, occupied));
+					occupied = (occupied - mask) & mask;
+				} while (occupied != 0L);
+			}
+		}
+	}
+
+	public void testBlockers() {
+		Squares occupied = Squares.immutable(at("d4"), at("d6"), at("f4"), at("b2"), at("g7"));
+		for (SlidingAttacks attacks : SlidingAttacks.values()) {
+			assertEquals(
+					Squares.immutable(at("d5"), at("d6"), at("d3"), at("d2"), at("d1"), at("e4"), at("f4"), at("c4"), at("b4"), at("a4")),
+					attacks.rookAttacks(at("d4"), occupied)
+					);
+			assertEquals(
+					Squares.immutable(at("e5"), at("f6"), at("g7"), at("c5"), at("b6"), at("a7"), at("e3"), at("f2"), at("g1"), at("c3"), at("b2")),
+					attacks.bishopAttacks(at("d4"), occupied)
+					);
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.tomgibara.chess;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+public class TranspositionTableTest extends TestCase {
+
+	public void testSize() {
+		TranspositionTable table = new TranspositionTable(1);
+		assertEquals(1, table.megabytes());
+		assertEquals(65536L, table.capacity());
+		// rounded down to a power of two
+		assertEquals(2, new TranspositionTable(3).megabytes());
+		try {
+			new TranspositionTable(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testStoreAndProbe() {
+		TranspositionTable table = new TranspositionTable(1);
+		Random r = new Random(0L);
+		long key = r.nextLong();
+		assertEquals(0L, table.probe(key));
+		table.store(key, 0, 0L);
+		long data = table.probe(key);
+		assertTrue(data != 0L);
+		assertEquals(0, TranspositionTable.depth(data));
+		assertEquals(0L, TranspositionTable.payload(data));
+		table.store(key, TranspositionTable.MAX_DEPTH, TranspositionTable.MAX_PAYLOAD);
+		data = table.probe(key);
+		assertEquals(TranspositionTable.MAX_DEPTH, TranspositionTable.depth(data));
+		assertEquals(TranspositionTable.MAX_PAYLOAD, TranspositionTable.payload(data));
+		table.clear();
+		assertEquals(0L, table.probe(key));
+	}
+
+	public void testDepthPreferred() {
+		TranspositionTable table = new TranspositionTable(1);
+		long key = 12345L;
+		table.store(key, 10, 50L);
+		// much shallower bounds for the same key are ignored
+		table.store(key, 3, 30L, false);
+		assertEquals(50L, TranspositionTable.payload(table.probe(key)));
+		// but not exact results, nor bounds of similar depth
+		table.store(key, 3, 30L, true);
+		assertEquals(30L, TranspositionTable.payload(table.probe(key)));
+		table.store(key, 2, 20L, false);
+		assertEquals(20L, TranspositionTable.payload(table.probe(key)));
+		table.store(key, 6, 60L);
+		assertEquals(60L, TranspositionTable.payload(table.probe(key)));
+
+		// fill the bucket, then displace its shallowest entry
+		long stride = table.capacity() / 4;
+		for (int i = 1; i < 4; i++) {
+			table.store(key + i * stride, 6 + i, i);
+		}
+		table.store(key + 4 * stride, 1, 4L);
+		assertEquals(0L, table.probe(key));
+		for (int i = 1; i <= 4; i++) {
+			assertEquals(i, TranspositionTable.payload(table.probe(key + i * stride)));
+		}
+	}
+
+	public void testGenerations() {
+		TranspositionTable table = new TranspositionTable(1);
+		long key = 12345L;
+		table.store(key, 20, 50L, false);
+		table.nextGeneration();
+		// a deep bound from an earlier search does not block a newer one
+		table.store(key, 3, 30L, false);
+		assertEquals(30L, TranspositionTable.payload(table.probe(key)));
+		assertEquals(3, TranspositionTable.depth(table.probe(key)));
+
+		// entries of earlier searches are displaced before shallower entries of this one
+		long stride = table.capacity() / 4;
+		for (int i = 1; i < 4; i++) {
+			table.store(key + i * stride, 6 + i, i);
+		}
+		table.nextGeneration();
+		table.store(key, 1, 10L);
+		table.store(key + 4 * stride, 2, 4L);
+		assertEquals(10L, TranspositionTable.payload(table.probe(key)));
+		assertEquals(0L, table.probe(key + stride));
+		for (int i = 2; i <= 4; i++) {
+			assertEquals(i, TranspositionTable.payload(table.probe(key + i * stride)));
+		}
+	}
+
+	public void testPosition() {
+		TranspositionTable table = new TranspositionTable(1);
+		Position position = new Sequence().position();
+		table.store(position, 2, 400L);
+		Position transposed = position.makeMove("Nf3").makeMove("Nf6").makeMove("Ng1").makeMove("Ng8");
+		assertEquals(400L, TranspositionTable.payload(table.probe(transposed)));
+	}
+
+	public void testConcurrent() throws InterruptedException {
+		// a small table so that threads constantly overwrite each other's entries
+		TranspositionTable table = new TranspositionTable(1);
+		Thread[] threads = new Thread[4];
+		boolean[] failed = new boolean[1];
+		for (int t = 0; t < threads.length; t++) {
+			long seed = t;
+			threads[t] = new Thread(() -> {
+				Random r = new Random(seed);
+				for (int i = 0; i < 200000; i++) {
+					long key = r.nextLong() & 0xfffffL;
+					long data = table.probe(key);
+					// payloads are derived from keys, so any hit must be consistent
+					if (data != 0L && TranspositionTable.payload(data) != key * 3) failed[0] = true;
+					table.store(key, (int) (key & 0xff) % 100, key * 3);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed[0]);
+	}
+
+	public void testPerft() {
+		TranspositionTable table = new TranspositionTable(4);
+		String kiwipete = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+		Perft perft = Perft.fromFEN(kiwipete).withTable(table);
+		assertEquals(97862L, perft.count(3));
+		// second count is served largely from the table
+		assertEquals(97862L, perft.count(3));
+		assertEquals(197281L, Perft.fromFEN("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1").withTable(table).count(4));
+		ForkJoinPool pool = Perft.newPool(4);
+		try {
+			table.clear();
+			assertEquals(4085603L, perft.count(4, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.tomgibara.chess.engine;
+
+import com.tomgibara.chess.Colour;
+import com.tomgibara.chess.Piece;
+import com.tomgibara.chess.PieceType;
+import com.tomgibara.chess.PositionCursor;
+
+// a static evaluation from material and piece-square tables, tapered between the middle game and the end game
+// scores are in centipawns from the perspective of the side to move
+final class Evaluation {
+
+	private static final Piece[] PIECES = Piece.values();
+
+	static final int[] VALUES = { 100, 320, 330, 500, 900, 0 };
+
+	// the contribution of each type to the game phase, which starts at the total
+	private static final int[] PHASES = { 0, 1, 1, 2, 4, 0 };
+	private static final int TOTAL_PHASE = 24;
+
+	// laid out as seen from white, with the eighth rank first
+	private static final int[][] TABLES = {
+		{
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			 50,  50,  50,  50,  50,  50,  50,  50,
+			 10,  10,  20,  30,  30,  20,  10,  10,
+			  5,   5,  10,  25,  25,  10,   5,   5,
+			  0,   0,   0,  20,  20,   0,   0,   0,
+			  5,  -5, -10,   0,   0, -10,  -5,   5,
+			  5,  10,  10, -20, -20,  10,  10,   5,
+			  0,   0,   0,   0,   0,   0,   0,   0,
+		}, {
+			-50, -40, -30, -30, -30, -30, -40, -50,
+			-40, -20,   0,   0,   0,   0, -20, -40,
+			-30,   0,  10,  15,  15,  10,   0, -30,
+			-30,   5,  15,  20,  20,  15,   5, -30,
+			-30,   0,  15,  20,  20,  15,   0, -30,
+			-30,   5,  10,  15,  15,  10,   5, -30,
+			-40, -20,   0,   5,   5,   0, -20, -40,
+			-50, -40, -30, -30, -30, -30, -40, -50,
+		}, {
+			-20, -10, -10, -10, -10, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,  10,  10,   5,   0, -10,
+			-10,   5,   5,  10,  10,   5,   5, -10,
+			-10,   0,  10,  10,  10,  10,   0, -10,
+			-10,  10,  10,  10,  10,  10,  10, -10,
+			-10,   5,   0,   0,   0,   0,   5, -10,
+			-20, -10, -10, -10, -10, -10, -10, -20,
+		}, {
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			  5,  10,  10,  10,  10,  10,  10,   5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			  0,   0,   0,   5,   5,   0,   0,   0,
+		}, {
+			-20, -10, -10,  -5,  -5, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,   5,   5,   5,   0, -10,
+			 -5,   0,   5,   5,   5,   5,   0,  -5,
+			  0,   0,   5,   5,   5,   5,   0,  -5,
+			-10,   5,   5,   5,   5,   5,   0, -10,
+			-10,   0,   5,   0,   0,   0,   0, -10,
+			-20, -10, -10,  -5,  -5, -10, -10, -20,
+		}, {
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-20, -30, -30, -40, -40, -30, -30, -20,
+			-10, -20, -20, -20, -20, -20, -20, -10,
+			 20,  20,   0,   0,   0,   0,  20,  20,
+			 20,  30,  10,   0,   0,  10,  30,  20,
+		},
+	};
+
+	// only the king is placed differently once the pieces come off
+	private static final int[] KING_END_TABLE = {
+		-50, -40, -30, -20, -20, -30, -40, -50,
+		-30, -20, -10,   0,   0, -10, -20, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -30,   0,   0,   0,   0, -30, -30,
+		-50, -30, -30, -30, -30, -30, -30, -50,
+	};
+
+	// indexed by piece ordinal and square ordinal, material included and signed so that white is positive
+	private static final int[][] MIDDLE = new int[Piece.COUNT][64];
+	private static final int[][] END = new int[Piece.COUNT][64];
+
+	static {
+		for (Piece piece : PIECES) {
+			int type = piece.type.ordinal();
+			boolean white = piece.colour.white;
+			int sign = white ? 1 : -1;
+			for (int s = 0; s < 64; s++) {
+				// tables are listed from the eighth rank, so white squares are flipped and black squares mirrored
+				int t = white ? s ^ 56 : s;
+				MIDDLE[piece.ordinal()][s] = sign * (VALUES[type] + TABLES[type][t]);
+				END[piece.ordinal()][s] = sign * (VALUES[type] + (piece.type == PieceType.KING ? KING_END_TABLE : TABLES[type])[t]);
+			}
+		}
+	}
+
+	static int evaluate(PositionCursor cursor) {
+		int middle = 0;
+		int end = 0;
+		int phase = 0;
+		for (Piece piece : PIECES) {
+			int[] middleTable = MIDDLE[piece.ordinal()];
+			int[] endTable = END[piece.ordinal()];
+			long bits = cursor.mask(piece);
+			phase += PHASES[piece.type.ordinal()] * Long.bitCount(bits);
+			for (; bits != 0L; bits &= bits - 1) {
+				int s = Long.numberOfTrailingZeros(bits);
+				middle += middleTable[s];
+				end += endTable[s];
+			}
+		}
+		// promotions may take the phase beyond its starting value
+		phase = Math.min(phase, TOTAL_PHASE);
+		int score = (middle * phase + end * (TOTAL_PHASE - phase)) / TOTAL_PHASE;
+		return cursor.toMove() == Colour.WHITE ? score : -score;
+	}
+
+	// whether the side to move has a piece other than pawns and its king, without which null moves are unsafe
+	static boolean hasPieces(PositionCursor cursor) {
+		Colour colour = cursor.toMove();
+		long pawnsAndKing = cursor.mask(PieceType.PAWN.coloured(colour)) | cursor.mask(PieceType.KING.coloured(colour));
+		return (cursor.mask(colour) & ~pawnsAndKing) != 0L;
+	}
+
+	private Evaluation() { }
+
+}
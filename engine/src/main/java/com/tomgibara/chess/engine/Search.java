@@ -0,0 +1,174 @@
+package com.tomgibara.chess.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import com.tomgibara.chess.Move;
+import com.tomgibara.chess.Notation;
+import com.tomgibara.chess.Position;
+import com.tomgibara.chess.PositionCursor;
+import com.tomgibara.chess.PositionMoves;
+import com.tomgibara.chess.TranspositionTable;
+
+// finds the best move in a position by iterative deepening of a principal variation alpha-beta search
+// scores are in centipawns from the perspective of the side to move; a mate scores MATE less the plies to reach it
+public final class Search {
+
+	public static final int MAX_DEPTH = 64;
+	public static final int MATE = 30000;
+
+	private static final int DEFAULT_MEGABYTES = 16;
+
+	public static Search fromFEN(String fen) {
+		if (fen == null) throw new IllegalArgumentException("null fen");
+		return new Search(Notation.parseFENPosition(fen));
+	}
+
+	public final Position position;
+	// retains its entries between runs, so later searches of related positions benefit from earlier ones
+	// each run starts a new generation of the table, so entries it no longer reaches are soon replaced
+	private final TranspositionTable table;
+
+	public Search(Position position) {
+		this(position, new TranspositionTable(DEFAULT_MEGABYTES));
+	}
+
+	public Search(Position position, TranspositionTable table) {
+		if (position == null) throw new IllegalArgumentException("null position");
+		if (table == null) throw new IllegalArgumentException("null table");
+		this.position = position;
+		this.table = table;
+	}
+
+	public Search withTable(TranspositionTable table) {
+		return table == this.table ? this : new Search(position, table);
+	}
+
+	public Result run(int depth) {
+		return run(depth, 0L, null);
+	}
+
+	// searches to the depth, or until the time has elapsed if millis is positive, and reports each completed depth to the listener, if any
+	// the first depth is always completed; the result is that of the deepest completed depth
+	public Result run(int depth, long millis, Consumer<Result> listener) {
+		if (depth < 1 || depth > MAX_DEPTH) throw new IllegalArgumentException("invalid depth");
+		if (millis < 0L) throw new IllegalArgumentException("negative millis");
+		table.nextGeneration();
+		return new Searcher(position, table).iterate(depth, millis, listener);
+	}
+
+	// as above, but the calling thread is joined by a helper for each thread of the pool (lazy SMP)
+	// every helper searches its own copy of the position, sharing only the table through which it speeds the main search
+	// helpers are stopped and awaited before the result is returned; its node count includes theirs
+	public Result run(int depth, long millis, Consumer<Result> listener, ForkJoinPool pool) {
+		if (depth < 1 || depth > MAX_DEPTH) throw new IllegalArgumentException("invalid depth");
+		if (millis < 0L) throw new IllegalArgumentException("negative millis");
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		table.nextGeneration();
+		Searcher main = new Searcher(position, table);
+		int count = pool.getParallelism();
+		Searcher[] helpers = new Searcher[count];
+		for (int i = 0; i < count; i++) helpers[i] = main.helper(i + 1);
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+		Result result;
+		try {
+			for (Searcher helper : helpers) tasks.add(pool.submit(() -> helper.help(depth)));
+			result = main.iterate(depth, millis, listener);
+		} finally {
+			main.stopHelpers();
+			for (ForkJoinTask<?> task : tasks) task.join();
+		}
+		long nodes = result.nodes;
+		for (Searcher helper : helpers) nodes += helper.nodes();
+		return new Result(position, result.depth, result.score, nodes, result.nanos, result.codes);
+	}
+
+	public static final class Result {
+
+		public final int depth;
+		public final int score;
+		public final long nodes;
+		public final long nanos;
+		private final Position position;
+		private final int[] codes;
+
+		Result(Position position, int depth, int score, long nodes, long nanos, int[] codes) {
+			this.position = position;
+			this.depth = depth;
+			this.score = score;
+			this.nodes = nodes;
+			this.nanos = nanos;
+			this.codes = codes;
+		}
+
+		public double nodesPerSecond() {
+			return nanos == 0L ? 0.0 : nodes * 1000000000.0 / nanos;
+		}
+
+		public boolean isMate() {
+			return Math.abs(score) > MATE - Searcher.MAX_PLY;
+		}
+
+		// the number of moves to mate, negative when the side to move is mated, else zero
+		public int mateIn() {
+			if (!isMate()) return 0;
+			int plies = MATE - Math.abs(score);
+			return score > 0 ? (plies + 1) / 2 : -plies / 2;
+		}
+
+		// the length of the principal variation, which is zero only when there are no legal moves
+		public int pvLength() {
+			return codes.length;
+		}
+
+		public int code(int index) {
+			if (index < 0 || index >= codes.length) throw new IndexOutOfBoundsException();
+			return codes[index];
+		}
+
+		public Move move(int index) {
+			return PositionMoves.codeMove(code(index));
+		}
+
+		// the best move, or null if there are no legal moves
+		public Move bestMove() {
+			return codes.length == 0 ? null : move(0);
+		}
+
+		// the principal variation in algebraic notation, separated by spaces
+		public String pv() {
+			StringBuilder sb = new StringBuilder();
+			// moves are made on a separate sequence, so the searched position's sequence is never extended
+			Position p = new PositionCursor(position).toPosition();
+			for (int code : codes) {
+				PositionMoves moves = p.moves();
+				int index = moves.indexOfCode(code);
+				if (sb.length() > 0) sb.append(' ');
+				sb.append(moves.notation(index));
+				p = moves.make(index);
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Depth: ").append(depth);
+			if (isMate()) {
+				sb.append(" Mate: ").append(mateIn());
+			} else {
+				sb.append(" Score: ").append(score);
+			}
+			sb.append(" Nodes: ").append(nodes);
+			sb.append(" Seconds: ").append(nanos / 1000000000.0);
+			sb.append(" Nodes/second: ").append(Math.round(nodesPerSecond()));
+			sb.append(" PV: ").append(pv());
+			return sb.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,440 @@
+package com.tomgibara.chess.engine;
+
+import static com.tomgibara.chess.PositionMoves.NO_CODE;
+import static com.tomgibara.chess.engine.Search.MATE;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.tomgibara.chess.MovePieces;
+import com.tomgibara.chess.PieceType;
+import com.tomgibara.chess.Position;
+import com.tomgibara.chess.PositionCursor;
+import com.tomgibara.chess.PositionMoves;
+import com.tomgibara.chess.TranspositionTable;
+
+// the state of a single search: a cursor on which moves are made, the move stack, and the heuristics that order moves
+// not safe for concurrent use; helpers have their own state and share only the transposition table and a stop signal
+final class Searcher {
+
+	static final int MAX_PLY = 128;
+
+	private static final int INFINITY = MATE + 1;
+	// scores beyond which a mate has been found
+	private static final int MATE_BOUND = MATE - MAX_PLY;
+
+	// nodes between checks of the time, less one
+	private static final int CHECK_MASK = 1023;
+
+	private static final int ASPIRATION_DEPTH = 4;
+	private static final int ASPIRATION_WINDOW = 25;
+	private static final int NULL_MOVE_DEPTH = 3;
+	private static final int REDUCTION_DEPTH = 3;
+	private static final int REDUCTION_MOVES = 3;
+
+	// move ordering classes, above which history scores never rise
+	private static final int ORDER_TABLE = 1 << 30;
+	private static final int ORDER_CAPTURE = 1 << 28;
+	private static final int ORDER_KILLER = 1 << 27;
+
+	// payloads pack the move code (offset by one so that zero is no move), the bound and the offset score
+	private static final int EXACT = 0;
+	private static final int LOWER = 1;
+	private static final int UPPER = 2;
+	private static final int CODE_BITS = 19;
+	private static final int BOUND_BITS = 2;
+	private static final int SCORE_OFFSET = 1 << 15;
+
+	// late move reductions grow with both the remaining depth and the number of moves already searched
+	private static final int[][] REDUCTIONS = new int[MAX_PLY][64];
+
+	static {
+		for (int depth = 1; depth < MAX_PLY; depth++) {
+			for (int moves = 1; moves < 64; moves++) {
+				REDUCTIONS[depth][moves] = (int) (0.75 + Math.log(depth) * Math.log(moves) / 2.25);
+			}
+		}
+	}
+
+	private final Position position;
+	private final TranspositionTable table;
+	// zero for the main searcher, which alone reports results, and positive for its helpers
+	private final int id;
+	private final Control control;
+	private final PositionCursor cursor;
+	private final int[] moves = new int[MAX_PLY * PositionCursor.MAX_MOVES];
+	private final int[] orders = new int[MAX_PLY * PositionCursor.MAX_MOVES];
+	// a triangular table of principal variations by ply
+	private final int[][] pvs = new int[MAX_PLY][MAX_PLY];
+	private final int[] pvLengths = new int[MAX_PLY];
+	private final int[] killers = new int[MAX_PLY * 2];
+	// indexed by colour, origin and destination
+	private final int[] history = new int[2 * 64 * 64];
+	// the keys of the positions on the current line, preceded by earlier positions that may yet be repeated
+	private final long[] keys;
+	private final int earlier;
+
+	private long nodes = 0L;
+	private long deadline = Long.MAX_VALUE;
+	private boolean stopped = false;
+	// the score of the last depth completed
+	private int rootScore = 0;
+
+	Searcher(Position position, TranspositionTable table) {
+		this.position = position;
+		this.table = table;
+		id = 0;
+		control = new Control();
+		cursor = new PositionCursor(position);
+		long[] previous = new long[position.stalemateClock];
+		int count = 0;
+		for (Position p = position; count < previous.length; ) {
+			try {
+				p = p.previous();
+			} catch (NoSuchElementException e) {
+				break;
+			}
+			previous[count++] = p.key();
+		}
+		keys = new long[count + MAX_PLY];
+		for (int i = 0; i < count; i++) keys[count - 1 - i] = previous[i];
+		earlier = count;
+	}
+
+	// the cursor is copied because the position's sequence must not be used by more than one thread
+	private Searcher(Searcher main, int id) {
+		position = main.position;
+		table = main.table;
+		this.id = id;
+		control = main.control;
+		cursor = main.cursor.copy();
+		keys = main.keys.clone();
+		earlier = main.earlier;
+	}
+
+	// must be called before the searcher runs
+	Searcher helper(int id) {
+		if (id < 1) throw new IllegalArgumentException("invalid id");
+		return new Searcher(this, id);
+	}
+
+	// the nodes searched by this searcher; read from other threads, the count is only exact once it has finished
+	long nodes() {
+		return nodes;
+	}
+
+	// signals the helpers to finish
+	void stopHelpers() {
+		control.stopped = true;
+	}
+
+	Search.Result iterate(int maxDepth, long millis, Consumer<Search.Result> listener) {
+		long start = System.nanoTime();
+		if (cursor.generate(moves, 0) == 0) {
+			return new Search.Result(position, 0, cursor.isCheck() ? -MATE : 0, 1L, System.nanoTime() - start, new int[0]);
+		}
+		int completed = 0;
+		int[] pv = null;
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			if (!deepen(depth)) break;
+			completed = depth;
+			pv = Arrays.copyOf(pvs[0], pvLengths[0]);
+			if (listener != null) listener.accept(new Search.Result(position, depth, rootScore, nodes + control.helperNodes.sum(), System.nanoTime() - start, pv.clone()));
+			// deeper searches cannot find a shorter mate
+			if (Math.abs(rootScore) > MATE_BOUND && MATE - Math.abs(rootScore) <= depth) break;
+			if (depth == 1 && millis > 0L) deadline = start + millis * 1000000L;
+		}
+		return new Search.Result(position, completed, rootScore, nodes, System.nanoTime() - start, pv);
+	}
+
+	// searches on behalf of the main searcher, only through the table, until it is done or the depth is reached
+	// half of the helpers begin a depth ahead so that the threads are spread over neighbouring depths
+	void help(int maxDepth) {
+		if (cursor.generate(moves, 0) == 0) return;
+		for (int depth = 1 + (id & 1); depth <= maxDepth && !control.stopped; depth++) {
+			if (!deepen(depth)) break;
+		}
+	}
+
+	// searches the depth in a window about the previous score, returning false if the search was stopped
+	private boolean deepen(int depth) {
+		int delta = ASPIRATION_WINDOW;
+		int alpha = depth < ASPIRATION_DEPTH ? -INFINITY : Math.max(rootScore - delta, -INFINITY);
+		int beta = depth < ASPIRATION_DEPTH ? INFINITY : Math.min(rootScore + delta, INFINITY);
+		while (true) {
+			int s = search(depth, alpha, beta, 0, false);
+			if (stopped) return false;
+			// the window widens on the failing side until the score falls within it
+			if (s <= alpha) {
+				delta *= 2;
+				alpha = Math.max(s - delta, -INFINITY);
+			} else if (s >= beta) {
+				delta *= 2;
+				beta = Math.min(s + delta, INFINITY);
+			} else {
+				rootScore = s;
+				return true;
+			}
+		}
+	}
+
+	// called periodically while searching
+	private void poll() {
+		if (id > 0) control.helperNodes.add(CHECK_MASK + 1);
+		if (control.stopped || System.nanoTime() > deadline) stopped = true;
+	}
+
+	private int search(int depth, int alpha, int beta, int ply, boolean nullAllowed) {
+		pvLengths[ply] = 0;
+		if ((++nodes & CHECK_MASK) == 0L) poll();
+		if (stopped) return 0;
+		long key = cursor.key();
+		keys[earlier + ply] = key;
+		if (ply > 0 && isDraw(ply)) return 0;
+		if (ply == MAX_PLY - 1) return Evaluation.evaluate(cursor);
+		if (depth <= 0) return quiesce(alpha, beta, ply);
+
+		boolean pv = beta - alpha > 1;
+		int tableCode = NO_CODE;
+		long data = table.probe(key);
+		if (data != 0L) {
+			long payload = TranspositionTable.payload(data);
+			tableCode = (int) (payload & (1 << CODE_BITS) - 1) - 1;
+			if (!pv && TranspositionTable.depth(data) >= depth) {
+				int bound = (int) (payload >> CODE_BITS) & (1 << BOUND_BITS) - 1;
+				int score = fromTable((int) (payload >> CODE_BITS + BOUND_BITS) - SCORE_OFFSET, ply);
+				if (bound == EXACT || bound == LOWER && score >= beta || bound == UPPER && score <= alpha) return score;
+			}
+		}
+
+		boolean check = cursor.isCheck();
+		// passing is assumed to be worse than any move, so a reduced search that still fails high after it is trusted
+		if (nullAllowed && !pv && !check && depth >= NULL_MOVE_DEPTH && Evaluation.hasPieces(cursor) && Evaluation.evaluate(cursor) >= beta) {
+			int reduction = depth >= 6 ? 3 : 2;
+			cursor.pushNull();
+			int score = -search(depth - 1 - reduction, -beta, -beta + 1, ply + 1, false);
+			cursor.pop();
+			if (stopped) return 0;
+			// unproven mates are not returned
+			if (score >= beta) return score > MATE_BOUND ? beta : score;
+		}
+
+		int offset = ply * PositionCursor.MAX_MOVES;
+		int count = cursor.generate(moves, offset);
+		if (count == 0) return check ? ply - MATE : 0;
+		order(offset, count, tableCode, ply);
+
+		int originalAlpha = alpha;
+		int best = -INFINITY;
+		int bestCode = NO_CODE;
+		for (int i = 0; i < count; i++) {
+			int code = select(offset + i, offset + count);
+			boolean quiet = isQuiet(code);
+			cursor.push(code);
+			// checks are extended so that they are never left unanswered at the horizon
+			boolean checks = cursor.isCheck();
+			int next = checks ? depth : depth - 1;
+			int score;
+			if (i == 0) {
+				score = -search(next, -beta, -alpha, ply + 1, true);
+			} else {
+				int reduction = 0;
+				if (depth >= REDUCTION_DEPTH && i >= REDUCTION_MOVES && quiet && !check && !checks && !isKiller(code, ply)) {
+					reduction = Math.min(REDUCTIONS[Math.min(depth, MAX_PLY - 1)][Math.min(i, 63)], depth - 2);
+				}
+				// later moves are expected to fail low, and are only searched fully if they do not
+				score = -search(next - reduction, -alpha - 1, -alpha, ply + 1, true);
+				if (score > alpha && reduction > 0) score = -search(next, -alpha - 1, -alpha, ply + 1, true);
+				if (score > alpha && score < beta) score = -search(next, -beta, -alpha, ply + 1, true);
+			}
+			cursor.pop();
+			if (stopped) return 0;
+			if (score > best) {
+				best = score;
+				bestCode = code;
+				if (score > alpha) {
+					alpha = score;
+					updatePv(ply, code);
+					if (score >= beta) {
+						if (quiet) reward(code, ply, depth);
+						break;
+					}
+				}
+			}
+		}
+		int bound = best >= beta ? LOWER : best > originalAlpha ? EXACT : UPPER;
+		store(key, depth, best, bound, bestCode, ply);
+		return best;
+	}
+
+	// resolves captures and promotions beyond the horizon so that positions are only evaluated when quiet
+	// the side to move may stand pat on the evaluation, unless in check, when every evasion is searched
+	private int quiesce(int alpha, int beta, int ply) {
+		if (ply == MAX_PLY - 1) return Evaluation.evaluate(cursor);
+		boolean check = cursor.isCheck();
+		int best = -INFINITY;
+		int offset = ply * PositionCursor.MAX_MOVES;
+		int count;
+		if (check) {
+			count = cursor.generate(moves, offset);
+			if (count == 0) return ply - MATE;
+			order(offset, count, NO_CODE, ply);
+		} else {
+			best = Evaluation.evaluate(cursor);
+			if (best >= beta) return best;
+			if (best > alpha) alpha = best;
+			// captures are generated in the order they are searched
+			count = cursor.generateCaptures(moves, offset);
+		}
+		for (int i = 0; i < count; i++) {
+			int code = check ? select(offset + i, offset + count) : moves[offset + i];
+			// captures that lose material cannot raise the score beyond standing pat
+			if (!check && exchange(code) < 0) continue;
+			cursor.push(code);
+			if ((++nodes & CHECK_MASK) == 0L) poll();
+			int score = -quiesce(-beta, -alpha, ply + 1);
+			cursor.pop();
+			if (stopped) return 0;
+			if (score > best) {
+				best = score;
+				if (score > alpha) {
+					alpha = score;
+					if (score >= beta) break;
+				}
+			}
+		}
+		return best;
+	}
+
+	// the position is drawn by the fifty-move rule or by repeating a position on the line or in the game that preceded it
+	private boolean isDraw(int ply) {
+		int clock = cursor.stalemateClock();
+		if (clock >= 100) return true;
+		int i = earlier + ply;
+		long key = keys[i];
+		int earliest = Math.max(i - clock, 0);
+		for (int j = i - 4; j >= earliest; j -= 2) {
+			if (keys[j] == key) return true;
+		}
+		return false;
+	}
+
+	private void order(int offset, int count, int tableCode, int ply) {
+		int colour = cursor.toMove().ordinal() << 12;
+		int killer0 = killers[ply * 2];
+		int killer1 = killers[ply * 2 + 1];
+		for (int i = offset; i < offset + count; i++) {
+			int code = moves[i];
+			int order;
+			if (code == tableCode) {
+				order = ORDER_TABLE;
+			} else if (!isQuiet(code)) {
+				// most valuable victim, then least valuable attacker, except that losing captures follow the quiet moves
+				int exchange = exchange(code);
+				if (exchange < 0) {
+					orders[i] = exchange;
+					continue;
+				}
+				MovePieces pieces = PositionMoves.codePieces(code);
+				int victim = pieces.captured == null ? 0 : pieces.captured.ordinal() + 1;
+				if (pieces.promotion == PieceType.QUEEN) victim += PieceType.QUEEN.ordinal() + 1;
+				order = ORDER_CAPTURE + victim * 8 - pieces.moved.ordinal();
+			} else if (code == killer0) {
+				order = ORDER_KILLER + 1;
+			} else if (code == killer1) {
+				order = ORDER_KILLER;
+			} else {
+				order = history[colour | code >> 6 & 0xfff];
+				// helpers perturb the order of quiet moves so that their searches diverge from the main search
+				if (id > 0) order += (code ^ id) * 0x9e3779b9 >>> 28;
+			}
+			orders[i] = order;
+		}
+	}
+
+	// moves the best ordered of the remaining moves to the front and returns it
+	private int select(int from, int to) {
+		int best = from;
+		for (int i = from + 1; i < to; i++) {
+			if (orders[i] > orders[best]) best = i;
+		}
+		int code = moves[best];
+		if (best != from) {
+			int order = orders[best];
+			moves[best] = moves[from];
+			orders[best] = orders[from];
+			moves[from] = code;
+			orders[from] = order;
+		}
+		return code;
+	}
+
+	private boolean isQuiet(int code) {
+		MovePieces pieces = PositionMoves.codePieces(code);
+		return pieces.promotion == null && !PositionMoves.isCapture(PositionMoves.codeMove(code), pieces);
+	}
+
+	// the material won by the exchange a capture or promotion starts, or zero if it cannot lose
+	private int exchange(int code) {
+		MovePieces pieces = PositionMoves.codePieces(code);
+		// taking a piece worth at least the capturer never loses
+		if (pieces.promotion == null && pieces.captured != null && Evaluation.VALUES[pieces.captured.ordinal()] >= Evaluation.VALUES[pieces.moved.ordinal()]) return 0;
+		return cursor.see(code);
+	}
+
+	private boolean isKiller(int code, int ply) {
+		return code == killers[ply * 2] || code == killers[ply * 2 + 1];
+	}
+
+	// records a quiet move that caused a cutoff
+	private void reward(int code, int ply, int depth) {
+		if (killers[ply * 2] != code) {
+			killers[ply * 2 + 1] = killers[ply * 2];
+			killers[ply * 2] = code;
+		}
+		int index = cursor.toMove().ordinal() << 12 | code >> 6 & 0xfff;
+		history[index] += depth * depth;
+		// history is aged to remain below the killers
+		if (history[index] >= ORDER_KILLER) {
+			for (int i = 0; i < history.length; i++) history[i] >>= 1;
+		}
+	}
+
+	private void updatePv(int ply, int code) {
+		int[] pv = pvs[ply];
+		pv[0] = code;
+		int length = pvLengths[ply + 1];
+		System.arraycopy(pvs[ply + 1], 0, pv, 1, length);
+		pvLengths[ply] = length + 1;
+	}
+
+	private void store(long key, int depth, int score, int bound, int code, int ply) {
+		long payload = code + 1 | (long) bound << CODE_BITS | (long) (toTable(score, ply) + SCORE_OFFSET) << CODE_BITS + BOUND_BITS;
+		table.store(key, Math.min(depth, TranspositionTable.MAX_DEPTH), payload, bound == EXACT);
+	}
+
+	// mate scores are stored relative to the position, not the root
+	private static int toTable(int score, int ply) {
+		if (score > MATE_BOUND) return score + ply;
+		if (score < -MATE_BOUND) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score > MATE_BOUND) return score - ply;
+		if (score < -MATE_BOUND) return score + ply;
+		return score;
+	}
+
+	// shared by a searcher and its helpers
+	private static final class Control {
+
+		volatile boolean stopped = false;
+		// approximate while the helpers are searching
+		final LongAdder helperNodes = new LongAdder();
+
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.tomgibara.chess.engine;
+
+import java.util.concurrent.ForkJoinPool;
+
+import com.tomgibara.chess.TranspositionTable;
+
+public class SearchProfilingTest {
+
+	// a fixed suite of openings, middle games and endings; the total node count changes only when the search does
+	private static final String[] POSITIONS = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pn1P2PP/R2Q1RK1 w kq - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+			"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+			"r1bq1rk1/pp2ppbp/2np1np1/8/3NP3/2N1BP2/PPPQ2PP/R3KB1R w KQ - 3 9",
+			"2r3k1/1q1nbppp/r3p3/3pP3/pPpP4/P1Q2N2/2RN1PPP/2R4K b - - 0 1",
+			"8/8/1p1k4/p1p1p3/P1P1P3/1P1K4/8/8 w - - 0 1",
+			"6k1/5pp1/7p/8/8/2R5/5PPP/6K1 w - - 0 1",
+	};
+
+	// searches every position of the suite to a fixed depth, with a cleared table, and reports the speed
+	// the time to reach the depth is then compared with doubling numbers of threads, up to the processors available
+	public static void main(String[] args) {
+		int depth = args.length == 0 ? 9 : Integer.parseInt(args[0]);
+		int maxThreads = args.length < 2 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(args[1]);
+		TranspositionTable table = new TranspositionTable(64);
+		long single = 0L;
+		for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(threads * 2, maxThreads)) {
+			ForkJoinPool pool = threads == 1 ? null : new ForkJoinPool(threads - 1);
+			try {
+				long time = 0L;
+				long nodes = 0L;
+				// the first pass warms up
+				for (int pass = 0; pass < 2; pass++) {
+					time = 0L;
+					nodes = 0L;
+					for (String fen : POSITIONS) {
+						table.clear();
+						Search search = Search.fromFEN(fen).withTable(table);
+						Search.Result result = pool == null ? search.run(depth) : search.run(depth, 0L, null, pool);
+						time += result.nanos;
+						nodes += result.nodes;
+						if (pass == 1 && pool == null) System.out.println(result);
+					}
+				}
+				if (pool == null) single = time;
+				System.out.println("Threads: " + threads + " Depth: " + depth + " Nodes: " + nodes + " Seconds: " + time / 1000000000.0 + " Nodes/second: " + Math.round(nodes * 1000000000.0 / time) + " Speedup: " + String.format("%.2f", (double) single / time));
+			} finally {
+				if (pool != null) pool.shutdown();
+			}
+		}
+	}
+
+}
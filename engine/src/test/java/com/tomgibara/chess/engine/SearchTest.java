@@ -0,0 +1,198 @@
+package com.tomgibara.chess.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.tomgibara.chess.Move;
+import com.tomgibara.chess.Notation;
+import com.tomgibara.chess.Position;
+import com.tomgibara.chess.PositionCursor;
+import com.tomgibara.chess.Sequence;
+
+import junit.framework.TestCase;
+
+public class SearchTest extends TestCase {
+
+	public void testMateInOne() {
+		Search.Result result = Search.fromFEN("6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1").run(4);
+		assertTrue(result.isMate());
+		assertEquals(1, result.mateIn());
+		assertEquals(Move.move("d1-d8"), result.bestMove());
+		assertEquals("Rd8", result.pv());
+	}
+
+	public void testMateInTwo() {
+		Search search = Search.fromFEN("k7/8/2K5/8/8/8/8/7R w - - 0 1");
+		Search.Result result = search.run(6);
+		assertEquals(2, result.mateIn());
+		assertEquals(Search.MATE - 3, result.score);
+		assertMate(search.position, result);
+	}
+
+	public void testWinsMaterial() {
+		Search.Result result = Search.fromFEN("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1").run(5);
+		assertEquals(Move.move("d1-d5"), result.bestMove());
+		assertTrue(result.score > 300);
+	}
+
+	public void testQuiescence() {
+		// at the horizon, the pawn appears free unless the recapture is searched
+		Search.Result result = Search.fromFEN("4k3/2p5/3p4/8/8/8/8/3QK3 w - - 0 1").run(1);
+		assertFalse(Move.move("d1-d6").equals(result.bestMove()));
+		assertTrue(result.score > 500);
+	}
+
+	public void testNoMoves() {
+		Search.Result stalemate = Search.fromFEN("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1").run(3);
+		assertEquals(0, stalemate.score);
+		assertEquals(0, stalemate.pvLength());
+		assertNull(stalemate.bestMove());
+		assertFalse(stalemate.isMate());
+		Search.Result mated = Search.fromFEN("3R2k1/5ppp/8/8/8/8/8/6K1 b - - 0 1").run(3);
+		assertEquals(-Search.MATE, mated.score);
+		assertTrue(mated.isMate());
+		assertNull(mated.bestMove());
+	}
+
+	public void testFiftyMoveRule() {
+		// a rook ahead, but every move reaches the hundredth ply without a capture or pawn move
+		String placement = "4k3/8/8/8/8/8/8/R3K3 w - - ";
+		assertEquals(0, Search.fromFEN(placement + "99 80").run(4).score);
+		assertTrue(Search.fromFEN(placement + "0 80").run(4).score > 400);
+	}
+
+	public void testRepetitionHistory() {
+		// black is a queen down, but the earlier positions of the game allow a third repetition
+		Position position = Notation.parseFENPosition("rnb1kbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+		position = position.makeMove("Nf3").makeMove("Nf6").makeMove("Ng1").makeMove("Ng8");
+		position = position.makeMove("Nf3").makeMove("Nf6").makeMove("Ng1");
+		Search.Result result = new Search(position).run(4);
+		assertEquals(0, result.score);
+		assertEquals(Move.move("f6-g8"), result.bestMove());
+		// without the history, there is no draw
+		assertTrue(new Search(new PositionCursor(position).toPosition()).run(4).score < -500);
+	}
+
+	public void testListener() {
+		Search search = Search.fromFEN("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		List<Search.Result> results = new ArrayList<>();
+		Search.Result result = search.run(5, 0L, results::add);
+		assertEquals(5, results.size());
+		long nodes = 0L;
+		for (int i = 0; i < results.size(); i++) {
+			Search.Result r = results.get(i);
+			assertEquals(i + 1, r.depth);
+			assertTrue(r.nodes > nodes);
+			assertTrue(r.pvLength() > 0);
+			nodes = r.nodes;
+		}
+		assertEquals(5, result.depth);
+		assertEquals(results.get(4).score, result.score);
+		assertEquals(results.get(4).pv(), result.pv());
+		assertTrue(result.nodes >= nodes);
+	}
+
+	public void testPvIsLegal() {
+		Position position = new Sequence().position().makeMove("e4").makeMove("e5");
+		Search.Result result = new Search(position).run(6);
+		assertTrue(result.pvLength() > 1);
+		PositionCursor cursor = new PositionCursor(position);
+		int[] codes = new int[PositionCursor.MAX_MOVES];
+		for (int i = 0; i < result.pvLength(); i++) {
+			int count = cursor.generate(codes, 0);
+			boolean found = false;
+			for (int j = 0; j < count && !found; j++) found = codes[j] == result.code(i);
+			assertTrue(found);
+			cursor.push(result.code(i));
+		}
+		// searching never extends the sequence of the searched position
+		assertEquals(3, position.sequence.length());
+	}
+
+	public void testTimeLimit() {
+		long start = System.currentTimeMillis();
+		Search.Result result = new Search(new Sequence().position()).run(Search.MAX_DEPTH, 100L, null);
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(result.depth >= 1);
+		assertTrue(result.depth < Search.MAX_DEPTH);
+		assertTrue(result.pvLength() > 0);
+		assertTrue(elapsed < 5000L);
+	}
+
+	public void testParallel() {
+		Position position = Notation.parseFENPosition("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			Search search = new Search(position);
+			List<Search.Result> results = new ArrayList<>();
+			Search.Result result = search.run(6, 0L, results::add, pool);
+			assertEquals(6, result.depth);
+			assertEquals(6, results.size());
+			assertEquals(results.get(5).pv(), result.pv());
+			assertTrue(result.nodes >= results.get(5).nodes);
+			assertTrue(pool.awaitQuiescence(1L, TimeUnit.SECONDS));
+			// mates are still found exactly
+			Search mate = Search.fromFEN("k7/8/2K5/8/8/8/8/7R w - - 0 1");
+			assertEquals(Search.MATE - 3, mate.run(8, 0L, null, pool).score);
+			// the position's sequence is untouched by the helpers
+			assertEquals(1, position.sequence.length());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testParallelTimeLimit() {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			long start = System.currentTimeMillis();
+			Search.Result result = new Search(new Sequence().position()).run(Search.MAX_DEPTH, 100L, null, pool);
+			long elapsed = System.currentTimeMillis() - start;
+			assertTrue(result.depth >= 1);
+			assertTrue(result.depth < Search.MAX_DEPTH);
+			assertTrue(elapsed < 5000L);
+			// every helper has finished
+			assertTrue(pool.awaitQuiescence(1L, TimeUnit.SECONDS));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testInvalid() {
+		Search search = new Search(new Sequence().position());
+		try {
+			search.run(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			search.run(1, -1L, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			search.run(1, 0L, null, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			new Search(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	// the principal variation must end with the side to move mated
+	private static void assertMate(Position position, Search.Result result) {
+		PositionCursor cursor = new PositionCursor(position);
+		for (int i = 0; i < result.pvLength(); i++) cursor.push(result.code(i));
+		assertTrue(cursor.isCheck());
+		assertEquals(0, cursor.generate(new int[PositionCursor.MAX_MOVES], 0));
+	}
+
+}